@@ -0,0 +1,201 @@
+package net.vivin.qunit;
+
+import org.testng.*;
+import org.testng.internal.InvokedMethod;
+import org.testng.internal.ResultMap;
+import org.testng.internal.TestResult;
+import org.testng.xml.XmlClass;
+import org.testng.xml.XmlSuite;
+import org.testng.xml.XmlTest;
+
+import java.io.*;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.charset.Charset;
+import java.util.*;
+
+/**
+ * Synthetic data for the benchmarks. Every suite is shaped the same way: modules of ten tests, tests of ten assertions,
+ * and one failing assertion in every hundred, which is roughly what a large real-world run looks like.
+ */
+final class QUnitBenchmarkData {
+
+    static final int ASSERTIONS_PER_TEST = 10;
+    static final int TESTS_PER_MODULE = 10;
+    static final int ASSERTIONS_PER_SUITE = 1000;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private QUnitBenchmarkData() {
+    }
+
+    /**
+     * Returns what QUnitTestDriver.js would write to STDOUT for a single suite with the given number of assertions
+     */
+    static byte[] createDriverOutput(int assertions) {
+        StringBuilder output = new StringBuilder(assertions * 160);
+
+        for (int assertion = 0; assertion < assertions; assertion++) {
+            int test = assertion / ASSERTIONS_PER_TEST;
+            int module = test / TESTS_PER_MODULE;
+            boolean failure = assertion % 100 == 99;
+
+            output.append("{\"type\":\"log\",\"module\":\"Module ").append(module)
+                    .append("\",\"name\":\"Test ").append(test)
+                    .append("\",\"testNumber\":").append(assertion + 1)
+                    .append(",\"message\":\"assertion ").append(assertion)
+                    .append("\",\"expected\":\"").append(assertion)
+                    .append("\",\"actual\":\"").append(failure ? assertion + 1 : assertion)
+                    .append("\",\"source\":\"    at file:///tests/module").append(module).append(".js:").append(test)
+                    .append("\",\"failure\":").append(failure).append("}\n");
+
+            if (assertion % ASSERTIONS_PER_TEST == ASSERTIONS_PER_TEST - 1 || assertion == assertions - 1) {
+                output.append("{\"type\":\"testDone\",\"module\":\"Module ").append(module)
+                        .append("\",\"name\":\"Test ").append(test).append("\",\"duration\":12}\n");
+
+                if (test % TESTS_PER_MODULE == TESTS_PER_MODULE - 1 || assertion == assertions - 1) {
+                    output.append("{\"type\":\"moduleDone\",\"module\":\"Module ").append(module).append("\",\"duration\":125}\n");
+                }
+            }
+        }
+
+        output.append("{\"type\":\"done\",\"failed\":true}\n");
+        return output.toString().getBytes(UTF_8);
+    }
+
+    static QUnitTestSuiteResult parse(QUnitResultStreamParser parser, byte[] driverOutput) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new ByteArrayInputStream(driverOutput), UTF_8));
+
+        QUnitTestSuiteResult suiteResult = new QUnitTestSuiteResult();
+        parser.parse(reader, suiteResult);
+
+        return suiteResult;
+    }
+
+    /**
+     * Returns the results of a run with the given number of assertions in total, split into suites of a thousand. The
+     * values of passing assertions are kept, as they are by default.
+     */
+    static List<QUnitTestSuiteResult> createSuiteResults(int assertions) throws IOException {
+        QUnitResultStreamParser parser = new QUnitResultStreamParser(new QUnitStringPool(), true);
+        List<QUnitTestSuiteResult> suiteResults = new ArrayList<QUnitTestSuiteResult>();
+
+        byte[] fullSuite = createDriverOutput(ASSERTIONS_PER_SUITE);
+        for (int remaining = assertions; remaining > 0; remaining -= ASSERTIONS_PER_SUITE) {
+            byte[] driverOutput = remaining >= ASSERTIONS_PER_SUITE ? fullSuite : createDriverOutput(remaining);
+            QUnitTestSuiteResult suiteResult = parse(parser, driverOutput);
+            suiteResult.setPath("suites/suite" + suiteResults.size() + "Test.html");
+            suiteResults.add(suiteResult);
+        }
+
+        return suiteResults;
+    }
+
+    /**
+     * Returns what TestNG hands to a reporter once it has run the given tests through {@link QUnitPipelinedTest}: a
+     * single test method with one result per assertion, and one invoked method per result
+     */
+    static List<ISuite> createTestNGSuites(Object[] tests) {
+        final ITestNGMethod method = (ITestNGMethod) createProxy(ITestNGMethod.class, new HashMap<String, Object>() {{
+            put("getMethodName", "assertion");
+            put("getDescription", null);
+        }});
+
+        ResultMap passed = new ResultMap();
+        ResultMap failed = new ResultMap();
+        final List<IInvokedMethod> invokedMethods = new ArrayList<IInvokedMethod>(tests.length);
+
+        long time = System.currentTimeMillis();
+        for (Object test : tests) {
+            QUnitTest qUnitTest = (QUnitTest) test;
+
+            TestResult result = new TestResult();
+            result.setMethod(method);
+            result.setParameters(new Object[]{qUnitTest});
+            result.setEndMillis(time);
+
+            try {
+                qUnitTest.assertion();
+                result.setStatus(ITestResult.SUCCESS);
+                passed.addResult(result, method);
+            } catch (AssertionError e) {
+                result.setStatus(ITestResult.FAILURE);
+                result.setThrowable(e);
+                failed.addResult(result, method);
+            }
+
+            invokedMethods.add(new InvokedMethod(null, method, new Object[]{qUnitTest}, true, false, time, result));
+        }
+
+        final Map<String, Object> contextValues = new HashMap<String, Object>();
+        contextValues.put("getName", "QUnit");
+        contextValues.put("getPassedTests", passed);
+        contextValues.put("getFailedTests", failed);
+        contextValues.put("getSkippedTests", new ResultMap());
+        contextValues.put("getFailedConfigurations", new ResultMap());
+        contextValues.put("getSkippedConfigurations", new ResultMap());
+        contextValues.put("getStartDate", new Date(time));
+        contextValues.put("getEndDate", new Date(time));
+        final ITestContext testContext = (ITestContext) createProxy(ITestContext.class, contextValues);
+
+        final ISuiteResult suiteResult = (ISuiteResult) createProxy(ISuiteResult.class, new HashMap<String, Object>() {{
+            put("getTestContext", testContext);
+        }});
+
+        final XmlSuite xmlSuite = new XmlSuite();
+        xmlSuite.setName("QUnit");
+        XmlTest xmlTest = new XmlTest(xmlSuite);
+        xmlTest.setName("QUnit");
+        xmlTest.getXmlClasses().add(new XmlClass(QUnitPipelinedTest.class));
+
+        ISuite suite = (ISuite) createProxy(ISuite.class, new HashMap<String, Object>() {{
+            put("getName", "QUnit");
+            put("getXmlSuite", xmlSuite);
+            put("getResults", Collections.singletonMap("QUnit", suiteResult));
+            put("getAllInvokedMethods", invokedMethods);
+        }});
+
+        return Collections.singletonList(suite);
+    }
+
+    /**
+     * Implements just enough of a TestNG interface for the reporters: the given methods return the given values, and
+     * everything else returns an empty value of the right type
+     */
+    private static Object createProxy(Class<?> type, final Map<String, Object> values) {
+        return Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                String name = method.getName();
+
+                if ("equals".equals(name)) {
+                    return proxy == args[0];
+                } else if ("hashCode".equals(name)) {
+                    return System.identityHashCode(proxy);
+                } else if ("toString".equals(name)) {
+                    return values.containsKey("getName") ? String.valueOf(values.get("getName")) : "proxy";
+                } else if (values.containsKey(name)) {
+                    return values.get(name);
+                }
+
+                Class<?> returnType = method.getReturnType();
+                if (returnType == boolean.class) {
+                    return false;
+                } else if (returnType == int.class) {
+                    return 0;
+                } else if (returnType == long.class) {
+                    return 0L;
+                } else if (returnType == String[].class) {
+                    return new String[0];
+                } else if (returnType == Collection.class || returnType == List.class) {
+                    return Collections.emptyList();
+                } else if (returnType == Map.class) {
+                    return Collections.emptyMap();
+                }
+
+                return null;
+            }
+        });
+    }
+}
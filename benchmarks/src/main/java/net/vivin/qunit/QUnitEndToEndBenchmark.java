@@ -0,0 +1,116 @@
+package net.vivin.qunit;
+
+import org.apache.commons.io.FileUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.*;
+
+/**
+ * Runs {@link QUnitTestSuiteRunner#getTestResults()} end to end against {@link QUnitStandInBrowser} and reports how
+ * many suites it gets through per second, and the median and 99th percentile time per suite, for each number of
+ * threads, with and without persistent workers.
+ *
+ * Usage: java -cp target/benchmarks.jar net.vivin.qunit.QUnitEndToEndBenchmark [suites] [runs] [threads,...]
+ *
+ * The defaults are 100 suites, 3 measured runs (after one warm-up run), and 1,2,4,8 threads. The stand-in is tuned with
+ * the same -Dqunit.standin.* properties it takes itself; they are passed along to every process that is started.
+ */
+public class QUnitEndToEndBenchmark {
+
+    private static final String STAND_IN_PROPERTY_PREFIX = "qunit.standin.";
+
+    public static void main(String[] args) throws IOException {
+        int suites = args.length > 0 ? Integer.parseInt(args[0]) : 100;
+        int runs = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+        String threadCounts = args.length > 2 ? args[2] : "1,2,4,8";
+
+        File directory = Files.createTempDirectory("qunit-end-to-end").toFile();
+        try {
+            File root = createSuites(new File(directory, "tests"), suites);
+            File standIn = createStandInScript(directory);
+
+            System.setProperty(QUnitConfiguration.PHANTOMJS_PATH, standIn.getPath());
+            System.setProperty(QUnitConfiguration.ROOT, root.getPath());
+            System.setProperty(QUnitConfiguration.HISTORY_FILE, new File(directory, "history.json").getPath());
+
+            System.out.println(String.format("%-10s %8s %12s %10s %10s", "workers", "threads", "suites/s", "p50 (ms)", "p99 (ms)"));
+
+            for (boolean persistent : new boolean[]{false, true}) {
+                for (String threadCount : threadCounts.split(",")) {
+                    System.setProperty(QUnitConfiguration.PERSISTENT_WORKERS, String.valueOf(persistent));
+                    System.setProperty(QUnitConfiguration.THREADS, threadCount.trim());
+
+                    //Warm up the runner and the file system cache before we measure anything
+                    QUnitTestSuiteRunner.getTestResults();
+
+                    List<Long> durations = new ArrayList<Long>();
+                    long elapsed = 0;
+
+                    for (int run = 0; run < runs; run++) {
+                        long start = System.nanoTime();
+                        List<QUnitTestSuiteResult> suiteResults = QUnitTestSuiteRunner.getTestResults();
+                        elapsed += System.nanoTime() - start;
+
+                        for (QUnitTestSuiteResult suiteResult : suiteResults) {
+                            durations.add(suiteResult.getDuration());
+                        }
+                    }
+
+                    Collections.sort(durations);
+                    double suitesPerSecond = durations.size() / (elapsed / 1e9);
+
+                    System.out.println(String.format("%-10s %8s %12.1f %10d %10d", persistent ? "persistent" : "per-suite", threadCount.trim(),
+                            suitesPerSecond, percentile(durations, 50), percentile(durations, 99)));
+                }
+            }
+        } finally {
+            FileUtils.deleteQuietly(directory);
+        }
+    }
+
+    private static File createSuites(File root, int suites) throws IOException {
+        for (int suite = 0; suite < suites; suite++) {
+            FileUtils.writeStringToFile(new File(root, String.format("suite%04d/Test.html", suite)), "<html><body></body></html>", "UTF-8");
+        }
+
+        return root;
+    }
+
+    /**
+     * Writes a script that starts the stand-in with this JVM's classpath and -Dqunit.standin.* properties
+     */
+    private static File createStandInScript(File directory) throws IOException {
+        StringBuilder command = new StringBuilder("#!/bin/sh\nexec \"")
+                .append(System.getProperty("java.home")).append(File.separator).append("bin").append(File.separator).append("java\"")
+                .append(" -XX:TieredStopAtLevel=1 -Xshare:auto");
+
+        for (String name : System.getProperties().stringPropertyNames()) {
+            if (name.startsWith(STAND_IN_PROPERTY_PREFIX)) {
+                command.append(" '-D").append(name).append("=").append(System.getProperty(name)).append("'");
+            }
+        }
+
+        command.append(" -cp '").append(System.getProperty("java.class.path")).append("' ")
+                .append(QUnitStandInBrowser.class.getName()).append(" \"$@\"\n");
+
+        File script = new File(directory, "stand-in-browser");
+        FileUtils.writeStringToFile(script, command.toString(), "UTF-8");
+        script.setExecutable(true);
+
+        return script;
+    }
+
+    /**
+     * Nearest-rank percentile of a sorted list
+     */
+    private static long percentile(List<Long> sorted, int percentile) {
+        if (sorted.isEmpty()) {
+            return 0;
+        }
+
+        int rank = (int) Math.ceil(percentile / 100.0 * sorted.size());
+        return sorted.get(Math.max(rank, 1) - 1);
+    }
+}
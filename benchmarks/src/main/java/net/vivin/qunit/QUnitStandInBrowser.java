@@ -0,0 +1,130 @@
+package net.vivin.qunit;
+
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.Charset;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Stands in for PhantomJS running QUnitTestDriver.js, so that the runner can be load-tested on a machine without a
+ * browser. It takes the same arguments (the driver script, which is ignored, and either the path to a QUnit HTML file
+ * or --worker) and writes exactly what the driver would, but the suites are synthetic: the HTML file is never read.
+ *
+ * How it behaves is controlled with system properties:
+ *
+ * qunit.standin.startupLatency: milliseconds from process launch until the first suite starts, like a browser would
+ * take (default 200). The JVM's own startup counts towards it, so it can't be made shorter than that.
+ * qunit.standin.assertionLatency: microseconds each assertion takes (default 100)
+ * qunit.standin.assertions: assertions in every suite (default 100)
+ * qunit.standin.messageSize: characters in each assertion message (default 32)
+ * qunit.standin.failureRate: chance that an assertion fails, between 0 and 1 (default 0.01)
+ * qunit.standin.crashRate: chance that the process dies in the middle of a suite, between 0 and 1 (default 0)
+ * qunit.standin.seed: seed for the failures and crashes; the same seed and path always give the same suite (default 0)
+ */
+public class QUnitStandInBrowser {
+
+    private static final String WORKER_FLAG = "--worker";
+
+    private static final int ASSERTIONS_PER_TEST = 10;
+    private static final int TESTS_PER_MODULE = 10;
+
+    private final long assertionLatencyInNanos = TimeUnit.MICROSECONDS.toNanos(Long.getLong("qunit.standin.assertionLatency", 100));
+    private final int assertions = Integer.getInteger("qunit.standin.assertions", 100);
+    private final String message = createMessage(Integer.getInteger("qunit.standin.messageSize", 32));
+    private final double failureRate = Double.parseDouble(System.getProperty("qunit.standin.failureRate", "0.01"));
+    private final double crashRate = Double.parseDouble(System.getProperty("qunit.standin.crashRate", "0"));
+    private final long seed = Long.getLong("qunit.standin.seed", 0);
+
+    private final PrintStream out = new PrintStream(new BufferedOutputStream(new FileOutputStream(FileDescriptor.out), 1 << 16), false);
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length < 2) {
+            System.out.println("Syntax: stand-in-browser <driver> </path/to/qunit-test.html> | " + WORKER_FLAG);
+            System.exit(1);
+        }
+
+        //The JVM has already spent some of the latency starting up
+        long startupLatency = Long.getLong("qunit.standin.startupLatency", 200) - ManagementFactory.getRuntimeMXBean().getUptime();
+        if (startupLatency > 0) {
+            Thread.sleep(startupLatency);
+        }
+
+        QUnitStandInBrowser browser = new QUnitStandInBrowser();
+        if (WORKER_FLAG.equals(args[1])) {
+            BufferedReader input = new BufferedReader(new InputStreamReader(System.in, Charset.defaultCharset()));
+
+            String line;
+            while ((line = input.readLine()) != null) {
+                if (!line.trim().isEmpty()) {
+                    browser.run(line.trim());
+                }
+            }
+
+            System.exit(0);
+        }
+
+        System.exit(browser.run(args[1]) ? 1 : 0);
+    }
+
+    /**
+     * Writes the events for one suite, and returns true if any assertion failed. Exits the process if the suite is
+     * meant to crash.
+     */
+    private boolean run(String path) {
+        Random random = new Random(seed ^ path.hashCode());
+        int crashAt = random.nextDouble() < crashRate ? random.nextInt(assertions) : -1;
+
+        boolean failed = false;
+        long owedLatency = 0;
+
+        for (int assertion = 0; assertion < assertions; assertion++) {
+            if (assertion == crashAt) {
+                out.flush();
+                System.exit(139);
+            }
+
+            owedLatency += assertionLatencyInNanos;
+            if (owedLatency >= TimeUnit.MILLISECONDS.toNanos(1)) {
+                LockSupport.parkNanos(owedLatency);
+                owedLatency = 0;
+            }
+
+            int test = assertion / ASSERTIONS_PER_TEST;
+            int module = test / TESTS_PER_MODULE;
+            boolean failure = random.nextDouble() < failureRate;
+            failed |= failure;
+
+            out.print("{\"type\":\"log\",\"module\":\"Module " + module + "\",\"name\":\"Test " + test + "\",\"testNumber\":" + (assertion + 1) +
+                    ",\"message\":\"" + message + "\",\"expected\":\"true\",\"actual\":\"" + !failure + "\",\"source\":\"    at " + path + ":" + test +
+                    "\",\"failure\":" + failure + "}\n");
+
+            if (assertion % ASSERTIONS_PER_TEST == ASSERTIONS_PER_TEST - 1 || assertion == assertions - 1) {
+                long testDuration = TimeUnit.NANOSECONDS.toMillis(assertionLatencyInNanos * ASSERTIONS_PER_TEST);
+                out.print("{\"type\":\"testDone\",\"module\":\"Module " + module + "\",\"name\":\"Test " + test + "\",\"duration\":" + testDuration + "}\n");
+
+                if (test % TESTS_PER_MODULE == TESTS_PER_MODULE - 1 || assertion == assertions - 1) {
+                    out.print("{\"type\":\"moduleDone\",\"module\":\"Module " + module + "\",\"duration\":" + testDuration * TESTS_PER_MODULE + "}\n");
+                }
+
+                //The driver writes every line as it happens; flushing per test is close enough and keeps this cheap
+                out.flush();
+            }
+        }
+
+        out.print("{\"type\":\"done\",\"failed\":" + failed + "}\n");
+        out.flush();
+
+        return failed;
+    }
+
+    private static String createMessage(int size) {
+        StringBuilder message = new StringBuilder(size);
+        for (int i = 0; i < size; i++) {
+            message.append((char) ('a' + i % 26));
+        }
+
+        return message.toString();
+    }
+}
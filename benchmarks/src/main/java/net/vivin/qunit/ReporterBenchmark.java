@@ -0,0 +1,76 @@
+package net.vivin.qunit;
+
+import net.vivin.qunit.reporter.QUnitDataReporter;
+import net.vivin.qunit.reporter.QUnitEmailableReporter;
+import net.vivin.qunit.reporter.QUnitJUnitXMLReporter;
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.*;
+import org.testng.ISuite;
+import org.testng.xml.XmlSuite;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * How fast the reporters write their reports for a run. The reports are written to a temporary directory, so this
+ * includes the cost of writing them out.
+ *
+ * TestNG records an invoked method for every result, and the reporters look at all of them, so the larger sizes take a
+ * while; use -p assertions=1000 for a quick run.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class ReporterBenchmark {
+
+    @Param({"1000", "100000", "1000000"})
+    public int assertions;
+
+    private List<ISuite> suites;
+    private List<XmlSuite> xmlSuites;
+    private File outputDirectory;
+
+    @Setup
+    public void createSuites() throws IOException {
+        suites = QUnitBenchmarkData.createTestNGSuites(QUnitTestSuiteRunner.toTests(QUnitBenchmarkData.createSuiteResults(assertions)));
+        xmlSuites = Collections.singletonList(suites.get(0).getXmlSuite());
+        outputDirectory = Files.createTempDirectory("qunit-reporter-benchmark").toFile();
+    }
+
+    @TearDown
+    public void deleteOutputDirectory() {
+        FileUtils.deleteQuietly(outputDirectory);
+    }
+
+    @Benchmark
+    public void junitXml() {
+        new QUnitJUnitXMLReporter().generateReport(xmlSuites, suites, outputDirectory.getPath());
+    }
+
+    @Benchmark
+    public void junitXmlPerFile() {
+        System.setProperty(QUnitConfiguration.JUNIT_SPLIT, "file");
+        try {
+            new QUnitJUnitXMLReporter().generateReport(xmlSuites, suites, outputDirectory.getPath());
+        } finally {
+            System.clearProperty(QUnitConfiguration.JUNIT_SPLIT);
+        }
+    }
+
+    @Benchmark
+    public void emailable() {
+        new QUnitEmailableReporter().generateReport(xmlSuites, suites, outputDirectory.getPath());
+    }
+
+    @Benchmark
+    public void data() {
+        new QUnitDataReporter().generateReport(xmlSuites, suites, outputDirectory.getPath());
+    }
+}
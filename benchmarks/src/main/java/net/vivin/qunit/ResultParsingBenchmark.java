@@ -0,0 +1,39 @@
+package net.vivin.qunit;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * How fast the runner turns the driver's output into a {@link QUnitTestSuiteResult}
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class ResultParsingBenchmark {
+
+    @Param({"1000", "100000", "1000000"})
+    public int assertions;
+
+    //Whether the expected and actual values of passing assertions are kept, which they are unless
+    //QUnitConfiguration.DROP_PASSING_VALUES is set
+    @Param({"true", "false"})
+    public boolean retainPassingValues;
+
+    private byte[] driverOutput;
+
+    @Setup
+    public void createDriverOutput() {
+        driverOutput = QUnitBenchmarkData.createDriverOutput(assertions);
+    }
+
+    @Benchmark
+    public QUnitTestSuiteResult parse() throws IOException {
+        //A fresh parser every time, since the string pool lives for exactly one run
+        return QUnitBenchmarkData.parse(new QUnitResultStreamParser(new QUnitStringPool(), retainPassingValues), driverOutput);
+    }
+}
@@ -0,0 +1,34 @@
+package net.vivin.qunit;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * How fast {@link QUnitTestSuiteRunner#run()} turns suite results into one QUnitTest per assertion
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class TestFlatteningBenchmark {
+
+    @Param({"1000", "100000", "1000000"})
+    public int assertions;
+
+    private List<QUnitTestSuiteResult> suiteResults;
+
+    @Setup
+    public void createSuiteResults() throws IOException {
+        suiteResults = QUnitBenchmarkData.createSuiteResults(assertions);
+    }
+
+    @Benchmark
+    public Object[] flatten() {
+        return QUnitTestSuiteRunner.toTests(suiteResults);
+    }
+}
@@ -0,0 +1,40 @@
+package net.vivin.qunit;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Runs QUnit HTML test files in some kind of browser. The runner starts the engine once per run, hands it suites from
+ * as many threads as it has been configured with, and closes it once the run is over, so implementations must be safe
+ * to call concurrently.
+ *
+ * Engines are chosen with {@link QUnitConfiguration#ENGINE}. Besides the built-in ones, any class that implements this
+ * interface and has a public no-argument constructor can be named there.
+ */
+public interface QUnitBrowserEngine extends Closeable {
+
+    /**
+     * Called once, before any suite is run
+     */
+    void start(QUnitBrowserEngineContext context) throws IOException;
+
+    /**
+     * Identifies the engine and the version of it. This is part of the key of every cached result, so that results are
+     * never replayed for a different browser than the one that produced them. It is only asked for when results are
+     * cached, so it may be worked out on first use.
+     */
+    String getIdentity() throws IOException;
+
+    /**
+     * Runs the suite, adding its results to the given suite result as they are reported. If the suite isn't done by
+     * the deadline (in milliseconds since the epoch; zero or less for none), it must be stopped. Whenever a suite
+     * doesn't run to completion, the engine adds a global failure that says why.
+     */
+    void runTestSuite(String absolutePath, long deadline, QUnitTestSuiteResult suiteResult) throws IOException, InterruptedException;
+
+    /**
+     * Stops everything the engine started. Suites that are still running are abandoned.
+     */
+    @Override
+    void close();
+}
@@ -0,0 +1,63 @@
+package net.vivin.qunit;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+
+/**
+ * What the runner gives a {@link QUnitBrowserEngine} to work with
+ */
+public class QUnitBrowserEngineContext {
+
+    private final String pathToTestDriver;
+    private final QUnitResultStreamParser parser;
+    private final QUnitProcessWatchdog watchdog;
+    private final QUnitTestSuiteExecution execution;
+    private final QUnitFailFast failFast;
+
+    QUnitBrowserEngineContext(String pathToTestDriver, QUnitResultStreamParser parser, QUnitProcessWatchdog watchdog, QUnitTestSuiteExecution execution, QUnitFailFast failFast) {
+        this.pathToTestDriver = pathToTestDriver;
+        this.parser = parser;
+        this.watchdog = watchdog;
+        this.execution = execution;
+        this.failFast = failFast;
+    }
+
+    /**
+     * Returns the path to QUnitTestDriver.js, which is always a file on disk (QUnitTestSuite.js is right next to it)
+     */
+    public String getTestDriverPath() {
+        return pathToTestDriver;
+    }
+
+    /**
+     * Reads the events that QUnitTestDriver.js writes into the suite result, until the suite is done or the output
+     * ends. Returns false in the latter case, which means that the results are incomplete.
+     */
+    public boolean streamResults(BufferedReader output, QUnitTestSuiteResult suiteResult) throws IOException {
+        return parser.parse(output, suiteResult);
+    }
+
+    /**
+     * Returns the message to report for a suite that was stopped because it ran past its deadline, or because the run
+     * was aborted
+     */
+    public String getDeadlineMessage(String absolutePath) {
+        return execution.getDeadlineMessage(absolutePath);
+    }
+
+    QUnitResultStreamParser getParser() {
+        return parser;
+    }
+
+    QUnitProcessWatchdog getWatchdog() {
+        return watchdog;
+    }
+
+    /**
+     * Returns what aborts the run on the first failure, or null if the run isn't fail-fast. Engines that don't run
+     * suites in a process of their own have to watch it themselves, since the watchdog can only kill processes.
+     */
+    QUnitFailFast getFailFast() {
+        return failFast;
+    }
+}
@@ -0,0 +1,440 @@
+package net.vivin.qunit;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Central place for the knobs that control how QUnit test suites are run. Everything is read from system properties so
+ * that it can be configured from the command line or from the surefire configuration without having to touch the
+ * factory class that calls {@link QUnitTestSuiteRunner#run()}.
+ */
+public final class QUnitConfiguration {
+
+    /**
+     * Number of test suites (HTML files) that are run at the same time. Defaults to the number of available processors.
+     * Setting this to 1 runs the suites one after the other.
+     */
+    public static final String THREADS = "qunit.threads";
+
+    /**
+     * When true, suites are handed to a small pool of long-lived PhantomJS processes instead of starting a new process
+     * for every HTML file. The pool has as many workers as {@link #THREADS}. This is the same as setting
+     * {@link #ENGINE} to pooled, and is ignored if the engine is set.
+     */
+    public static final String PERSISTENT_WORKERS = "qunit.workers.persistent";
+
+    /**
+     * Number of suites a persistent worker runs before it is replaced with a fresh process. Defaults to 25.
+     */
+    public static final String WORKER_RECYCLE_AFTER = "qunit.workers.recycleAfter";
+
+    /**
+     * When true, the result of a suite is stored in a local cache keyed by a hash of the HTML file, everything it
+     * references, and the driver. Suites whose key has not changed are replayed from the cache instead of being run.
+     */
+    public static final String CACHE_ENABLED = "qunit.cache.enabled";
+
+    /**
+     * Directory that holds cached results. Defaults to .qunit-testng/cache in the user's home directory.
+     */
+    public static final String CACHE_DIRECTORY = "qunit.cache.dir";
+
+    /**
+     * Maximum size of the cache directory in megabytes. The least recently used entries are evicted first. Defaults to
+     * 256.
+     */
+    public static final String CACHE_MAX_SIZE = "qunit.cache.maxSize";
+
+    /**
+     * When true, every suite is run even if it has a cached result; the cache is refreshed with the new results.
+     */
+    public static final String CACHE_REFRESH = "qunit.cache.refresh";
+
+    /**
+     * When true, the expected and actual values of passing assertions are dropped as soon as an assertion has been
+     * parsed. They are never reported, so this saves memory on large runs. By default they are kept.
+     */
+    public static final String DROP_PASSING_VALUES = "qunit.results.dropPassingValues";
+
+    /**
+     * Comma-separated globs that select the QUnit HTML test files, relative to the test classpath root. Defaults to
+     * **&#47;*Test.html.
+     */
+    public static final String INCLUDES = "qunit.include";
+
+    /**
+     * Comma-separated globs for files and directories to leave out, relative to the test classpath root. Directories
+     * that match are not walked at all. Empty by default.
+     */
+    public static final String EXCLUDES = "qunit.exclude";
+
+    /**
+     * Path to a discovery manifest. When set, the list of test files is stored there and reused by later runs for as
+     * long as none of the directories it was built from have been modified.
+     */
+    public static final String DISCOVERY_MANIFEST = "qunit.discovery.manifest";
+
+    /**
+     * Hard limit, in seconds, on how long a single suite may run. A suite that is still running when it passes is
+     * killed and reported as a failure, and the run carries on with the other suites. Defaults to 300; 0 disables it.
+     */
+    public static final String SUITE_TIMEOUT = "qunit.suite.timeout";
+
+    /**
+     * Hard limit, in seconds, on the whole run. Once it passes, suites that are still running are killed and suites
+     * that haven't started yet are reported as not run. Disabled (0) by default.
+     */
+    public static final String RUN_TIMEOUT = "qunit.run.timeout";
+
+    /**
+     * Zero-based index of the shard that this node runs. Defaults to 0.
+     */
+    public static final String SHARD_INDEX = "qunit.shard.index";
+
+    /**
+     * Number of shards that the suites are split into, one per node. Every node must see the same test files for the
+     * shards to add up to the whole run. Shards are only balanced by duration when {@link #HISTORY_FILE} is set, and
+     * then every node must be given the same file. Defaults to 1, which runs everything.
+     */
+    public static final String SHARD_COUNT = "qunit.shard.count";
+
+    /**
+     * File that holds per-suite timings and outcomes from earlier runs. It is used to order suites (see
+     * {@link #SCHEDULE}) and, when set, to balance shards by duration. A run that isn't sharded updates it with the
+     * suites it executed; a shard writes them to a copy named after the shard instead, so the file that the shards are
+     * balanced with stays the same on every node. Defaults to qunit-history.json next to the test classpath root.
+     */
+    public static final String HISTORY_FILE = "qunit.history.file";
+
+    /**
+     * The order in which suites are started: discovery, longest-first, or failed-first (see
+     * {@link QUnitSchedulingPolicy}). Results are reported in discovery order regardless, except when they are streamed
+     * (see {@link QUnitTestSuiteRunner#stream()}). Defaults to discovery.
+     */
+    public static final String SCHEDULE = "qunit.schedule";
+
+    /**
+     * Path to the PhantomJS executable, or to anything that behaves like it (that is, anything that runs
+     * QUnitTestDriver.js and writes the same output). Defaults to the bundled binary for the current platform.
+     */
+    public static final String PHANTOMJS_PATH = "qunit.phantomjs.path";
+
+    /**
+     * Directory that is searched for QUnit HTML test files. Defaults to the root of the test classpath.
+     */
+    public static final String ROOT = "qunit.root";
+
+    /**
+     * The {@link QUnitBrowserEngine} that runs the suites: phantomjs (a PhantomJS process per suite, the default),
+     * pooled (long-lived PhantomJS processes), or the fully-qualified name of a class that implements the interface.
+     */
+    public static final String ENGINE = "qunit.engine";
+
+    /**
+     * Comma-separated globs, relative to {@link #ROOT}, of suites that don't need a DOM and are run inside the JVM by
+     * {@link QUnitJvmEngine} instead of on the configured engine. Suites can also opt in from their HTML file. Empty by
+     * default.
+     */
+    public static final String JVM_INCLUDES = "qunit.jvm.includes";
+
+    /**
+     * How the JUnit XML report is split: none (a single file for the whole run, the default), file (a file for every
+     * HTML file), or module (a file for every QUnit module).
+     */
+    public static final String JUNIT_SPLIT = "qunit.junit.split";
+
+    /**
+     * Comma-separated {@link QUnitResultListener}s that are told about results as they come in: console (see
+     * {@link QUnitConsoleProgressListener}), or the fully-qualified name of a class that implements the interface.
+     * Empty by default.
+     */
+    public static final String LISTENERS = "qunit.listeners";
+
+    /**
+     * File to which the {@link QUnitMetrics} of the run are written. Defaults to qunit-metrics.json (with the shard
+     * suffix, if any) next to the test classpath root.
+     */
+    public static final String METRICS_FILE = "qunit.metrics.file";
+
+    /**
+     * File to which a timeline of the run is written in the Chrome trace-event format (see {@link QUnitTrace}). The run
+     * is only traced if this is set.
+     */
+    public static final String TRACE_FILE = "qunit.trace.file";
+
+    /**
+     * When true, the run is aborted on the first failing assertion (see {@link QUnitFailFast}). Suites that are still
+     * running are killed, suites that haven't started are not run, and a failure that says so is reported along with
+     * the results gathered so far. With {@link #RERUN_FAILURES}, the run is only aborted once a suite still fails after
+     * its last attempt. Defaults to false.
+     */
+    public static final String FAIL_FAST = "qunit.failFast";
+
+    /**
+     * How many more times the failing tests of a suite are run before their failures are reported. Only the tests that
+     * failed are run again, and their last results are the ones that are reported, along with how many attempts they
+     * took. Defaults to 0.
+     */
+    public static final String RERUN_FAILURES = "qunit.rerunFailures";
+
+    /**
+     * Comma-separated globs for the QUnit modules whose tests are run; tests outside of any module belong to "global".
+     * Tests in other modules are left out in the page, before they run (see {@link QUnitTestSelection}), and HTML files
+     * that can't contain a matching module aren't run at all (see {@link QUnitModuleIndex}). Empty by default, which
+     * runs every module.
+     */
+    public static final String MODULES = "qunit.modules";
+
+    /**
+     * Comma-separated globs for the names of the QUnit tests that are run. Tests with other names are left out in the
+     * page, before they run. Empty by default, which runs every test.
+     */
+    public static final String TESTS = "qunit.tests";
+
+    /**
+     * File in which the modules of every HTML file are kept between runs (see {@link QUnitModuleIndex}). Defaults to
+     * qunit-module-index.json next to the test classpath root.
+     */
+    public static final String MODULE_INDEX_FILE = "qunit.moduleIndex.file";
+
+    private QUnitConfiguration() {
+    }
+
+    public static int getThreadCount() {
+        return getPositiveInt(THREADS, Runtime.getRuntime().availableProcessors());
+    }
+
+    public static boolean isPersistentWorkers() {
+        return Boolean.getBoolean(PERSISTENT_WORKERS);
+    }
+
+    public static int getWorkerRecycleAfter() {
+        return getPositiveInt(WORKER_RECYCLE_AFTER, 25);
+    }
+
+    public static boolean isCacheEnabled() {
+        return Boolean.getBoolean(CACHE_ENABLED);
+    }
+
+    public static File getCacheDirectory() {
+        String directory = System.getProperty(CACHE_DIRECTORY);
+        if (directory == null || directory.trim().isEmpty()) {
+            return new File(System.getProperty("user.home"), ".qunit-testng" + File.separator + "cache");
+        }
+
+        return new File(directory.trim());
+    }
+
+    public static long getCacheMaxSizeInBytes() {
+        return getPositiveInt(CACHE_MAX_SIZE, 256) * 1024L * 1024L;
+    }
+
+    public static boolean isCacheRefresh() {
+        return Boolean.getBoolean(CACHE_REFRESH);
+    }
+
+    public static boolean isDropPassingValues() {
+        return Boolean.getBoolean(DROP_PASSING_VALUES);
+    }
+
+    public static List<String> getIncludes() {
+        List<String> includes = getList(INCLUDES);
+        if (includes.isEmpty()) {
+            includes.add("**/*Test.html");
+        }
+
+        return includes;
+    }
+
+    public static List<String> getExcludes() {
+        return getList(EXCLUDES);
+    }
+
+    public static File getDiscoveryManifest() {
+        return getFile(DISCOVERY_MANIFEST);
+    }
+
+    public static int getSuiteTimeoutInSeconds() {
+        return getNonNegativeInt(SUITE_TIMEOUT, 300);
+    }
+
+    public static int getRunTimeoutInSeconds() {
+        return getNonNegativeInt(RUN_TIMEOUT, 0);
+    }
+
+    public static int getShardCount() {
+        return getPositiveInt(SHARD_COUNT, 1);
+    }
+
+    public static int getShardIndex() {
+        int shardIndex = getNonNegativeInt(SHARD_INDEX, 0);
+        if (shardIndex >= getShardCount()) {
+            throw new IllegalArgumentException(SHARD_INDEX + " must be less than " + SHARD_COUNT + ", but was " + shardIndex);
+        }
+
+        return shardIndex;
+    }
+
+    /**
+     * Returns what reporters add to the names of the files they write, so that the reports of different shards can be
+     * collected in one place and merged. Empty when the run isn't sharded.
+     */
+    public static String getShardSuffix() {
+        if (getShardCount() == 1) {
+            return "";
+        }
+
+        return "-shard-" + getShardIndex() + "-of-" + getShardCount();
+    }
+
+    /**
+     * Returns the history file, or null if it hasn't been set and the default location should be used
+     */
+    public static File getHistoryFile() {
+        return getFile(HISTORY_FILE);
+    }
+
+    public static QUnitSchedulingPolicy getSchedulingPolicy() {
+        String schedule = System.getProperty(SCHEDULE);
+        if (schedule == null || schedule.trim().isEmpty()) {
+            return QUnitSchedulingPolicy.DISCOVERY;
+        }
+
+        return QUnitSchedulingPolicy.forName(schedule);
+    }
+
+    public static String getEngine() {
+        String engine = System.getProperty(ENGINE);
+        if (engine == null || engine.trim().isEmpty()) {
+            return isPersistentWorkers() ? "pooled" : "phantomjs";
+        }
+
+        return engine.trim();
+    }
+
+    public static List<String> getJvmIncludes() {
+        return getList(JVM_INCLUDES);
+    }
+
+    public static List<String> getListeners() {
+        return getList(LISTENERS);
+    }
+
+    /**
+     * Returns the metrics file, or null if it hasn't been set and the default location should be used
+     */
+    public static File getMetricsFile() {
+        return getFile(METRICS_FILE);
+    }
+
+    public static boolean isFailFast() {
+        return Boolean.getBoolean(FAIL_FAST);
+    }
+
+    public static List<String> getModules() {
+        return getList(MODULES);
+    }
+
+    public static List<String> getTests() {
+        return getList(TESTS);
+    }
+
+    /**
+     * Returns the module index file, or null if it hasn't been set and the default location should be used
+     */
+    public static File getModuleIndexFile() {
+        return getFile(MODULE_INDEX_FILE);
+    }
+
+    public static int getRerunFailures() {
+        return getNonNegativeInt(RERUN_FAILURES, 0);
+    }
+
+    public static File getTraceFile() {
+        return getFile(TRACE_FILE);
+    }
+
+    public static String getJUnitSplit() {
+        String split = System.getProperty(JUNIT_SPLIT);
+        if (split == null || split.trim().isEmpty()) {
+            return "none";
+        }
+
+        split = split.trim().toLowerCase(Locale.ENGLISH);
+        if (!split.equals("none") && !split.equals("file") && !split.equals("module")) {
+            throw new IllegalArgumentException(JUNIT_SPLIT + " must be one of none, file, module, but was " + System.getProperty(JUNIT_SPLIT));
+        }
+
+        return split;
+    }
+
+    public static File getPhantomJSPath() {
+        return getFile(PHANTOMJS_PATH);
+    }
+
+    public static File getRoot() {
+        return getFile(ROOT);
+    }
+
+    static List<String> getList(String property) {
+        List<String> values = new ArrayList<String>();
+
+        String value = System.getProperty(property);
+        if (value != null) {
+            for (String element : value.split(",")) {
+                if (!element.trim().isEmpty()) {
+                    values.add(element.trim());
+                }
+            }
+        }
+
+        return values;
+    }
+
+    static File getFile(String property) {
+        String value = System.getProperty(property);
+        if (value == null || value.trim().isEmpty()) {
+            return null;
+        }
+
+        return new File(value.trim());
+    }
+
+    static int getNonNegativeInt(String property, int defaultValue) {
+        String value = System.getProperty(property);
+        if (value == null || value.trim().isEmpty()) {
+            return defaultValue;
+        }
+
+        try {
+            int parsed = Integer.parseInt(value.trim());
+            if (parsed < 0) {
+                throw new IllegalArgumentException(property + " must not be negative, but was " + value);
+            }
+
+            return parsed;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(property + " must be a number, but was " + value, e);
+        }
+    }
+
+    static int getPositiveInt(String property, int defaultValue) {
+        String value = System.getProperty(property);
+        if (value == null || value.trim().isEmpty()) {
+            return defaultValue;
+        }
+
+        try {
+            int parsed = Integer.parseInt(value.trim());
+            if (parsed < 1) {
+                throw new IllegalArgumentException(property + " must be a positive number, but was " + value);
+            }
+
+            return parsed;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(property + " must be a positive number, but was " + value, e);
+        }
+    }
+}
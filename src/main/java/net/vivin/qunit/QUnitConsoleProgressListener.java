@@ -0,0 +1,124 @@
+package net.vivin.qunit;
+
+import java.io.PrintStream;
+import java.util.*;
+
+/**
+ * Prints how far the run has got every couple of seconds: how many suites are done, how many suites and assertions are
+ * done every second, how long the rest of the run should take at that rate, and which of the suites that are still
+ * running have been running longest. Enable it with {@code -Dqunit.listeners=console}.
+ */
+public class QUnitConsoleProgressListener implements QUnitResultListener {
+
+    private static final long INTERVAL_IN_MILLISECONDS = 2000;
+
+    //How many of the suites that are still running are named
+    private static final int SLOWEST_SHOWN = 3;
+
+    private final PrintStream out;
+
+    //Suites that are running, by when they started, oldest first
+    private final Map<String, Long> running = new LinkedHashMap<String, Long>();
+
+    private long start;
+    private int suiteCount;
+    private int suitesDone;
+    private int assertions;
+    private int failures;
+    private Timer timer;
+
+    public QUnitConsoleProgressListener() {
+        this(System.out);
+    }
+
+    QUnitConsoleProgressListener(PrintStream out) {
+        this.out = out;
+    }
+
+    @Override
+    public synchronized void runStarted(int suiteCount) {
+        this.start = System.currentTimeMillis();
+        this.suiteCount = suiteCount;
+
+        //A suite that hangs sends no events, which is exactly when progress is worth seeing, so it's printed on a timer
+        timer = new Timer("qunit-progress", true);
+        timer.scheduleAtFixedRate(new TimerTask() {
+            @Override
+            public void run() {
+                out.println(getProgress(System.currentTimeMillis()));
+            }
+        }, INTERVAL_IN_MILLISECONDS, INTERVAL_IN_MILLISECONDS);
+    }
+
+    @Override
+    public synchronized void suiteStarted(String path) {
+        running.put(path, System.currentTimeMillis());
+    }
+
+    @Override
+    public synchronized void assertion(String path, String moduleName, String testName, QUnitTestResult result) {
+        assertions++;
+        if (result.isFailure()) {
+            failures++;
+        }
+    }
+
+    @Override
+    public void testDone(String path, String moduleName, String testName, long duration) {
+    }
+
+    @Override
+    public synchronized void suiteDone(String path, QUnitTestSuiteResult suiteResult) {
+        running.remove(path);
+        suitesDone++;
+    }
+
+    @Override
+    public synchronized void suiteError(String path, Throwable error) {
+        running.remove(path);
+        suitesDone++;
+
+        out.println("QUnit: " + path + " could not be run: " + error);
+    }
+
+    @Override
+    public synchronized void runDone() {
+        if (timer != null) {
+            timer.cancel();
+        }
+
+        out.println(String.format(Locale.ENGLISH, "QUnit: ran %d suites with %d assertions (%d failed) in %s", suitesDone, assertions, failures,
+                formatDuration(System.currentTimeMillis() - start)));
+    }
+
+    synchronized String getProgress(long now) {
+        double elapsedInSeconds = Math.max(now - start, 1) / 1000.0;
+        double suitesPerSecond = suitesDone / elapsedInSeconds;
+
+        String eta = suitesDone == 0 ? "unknown" : formatDuration((long) ((suiteCount - suitesDone) / suitesPerSecond * 1000));
+
+        StringBuilder progress = new StringBuilder(String.format(Locale.ENGLISH, "QUnit: %d/%d suites, %.1f suites/s, %.0f assertions/s, %d failed, ETA %s",
+                suitesDone, suiteCount, suitesPerSecond, assertions / elapsedInSeconds, failures, eta));
+
+        int shown = 0;
+        for (Map.Entry<String, Long> suite : running.entrySet()) {
+            if (shown == SLOWEST_SHOWN) {
+                break;
+            }
+
+            progress.append(shown == 0 ? "; running longest: " : ", ").append(suite.getKey()).append(" (").append(formatDuration(now - suite.getValue())).append(")");
+            shown++;
+        }
+
+        return progress.toString();
+    }
+
+    private static String formatDuration(long milliseconds) {
+        long seconds = Math.max(milliseconds, 0) / 1000;
+        if (seconds < 60) {
+            return seconds + "s";
+        }
+
+        return (seconds / 60) + "m" + String.format("%02d", seconds % 60) + "s";
+    }
+}
@@ -0,0 +1,43 @@
+package net.vivin.qunit;
+
+import org.testng.log4testng.Logger;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Aborts a run as soon as any suite reports a failing assertion (see {@link QUnitConfiguration#FAIL_FAST}). Every
+ * PhantomJS process that is still running is killed, suites running in the JVM are stopped by {@link QUnitJvmEngine},
+ * and the execution stops starting new suites.
+ */
+class QUnitFailFast {
+
+    private static final Logger logger = Logger.getLogger(QUnitFailFast.class);
+
+    private final QUnitProcessWatchdog watchdog;
+    private final AtomicReference<String> firstFailure = new AtomicReference<String>();
+
+    QUnitFailFast(QUnitProcessWatchdog watchdog) {
+        this.watchdog = watchdog;
+    }
+
+    /**
+     * Reports a failure in the suite at the given path. Only the first one aborts the run; the rest are ignored.
+     */
+    void failed(String path) {
+        if (firstFailure.compareAndSet(null, path)) {
+            logger.info("Aborting the QUnit run after the first failure, in " + path);
+            watchdog.killAll();
+        }
+    }
+
+    boolean isAborted() {
+        return firstFailure.get() != null;
+    }
+
+    /**
+     * Returns the path of the suite that aborted the run, or null if it hasn't been aborted
+     */
+    String getFirstFailure() {
+        return firstFailure.get();
+    }
+}
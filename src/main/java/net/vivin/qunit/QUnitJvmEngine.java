@@ -0,0 +1,330 @@
+package net.vivin.qunit;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.mozilla.javascript.*;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Runs suites that don't need a DOM inside the JVM, on Rhino, instead of in a browser. There is no process to start
+ * and no page to lay out, so for suites that only test plain JavaScript this is much faster than PhantomJS. The page
+ * gets a minimal window, document, and jQuery (see QUnitJvmShim.js); a suite that touches real elements needs a real
+ * browser. jQuery itself is never loaded, since it can't work without a DOM; the shim stands in for it.
+ *
+ * Every script is compiled once, the first time a suite loads it, and shared by every suite after that, so QUnit and
+ * the libraries under test are only parsed once per run. Each suite still runs in a fresh scope of its own, on top of
+ * a single set of standard objects that is sealed so that no suite can change them for the next one.
+ *
+ * Suites opt in with {@code <meta name="qunit-testng-engine" content="jvm">} in their HTML, or through
+ * {@link QUnitConfiguration#JVM_INCLUDES}; every other suite runs on the configured engine.
+ */
+public class QUnitJvmEngine implements QUnitBrowserEngine {
+
+    private static final Pattern MARKER = Pattern.compile("<meta[^>]*\\sname\\s*=\\s*[\"']qunit-testng-engine[\"'][^>]*\\scontent\\s*=\\s*[\"']jvm[\"']", Pattern.CASE_INSENSITIVE);
+
+    private static final Pattern SCRIPT = Pattern.compile("<script\\b([^>]*)>(.*?)</script\\s*>", Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+    private static final Pattern SCRIPT_SOURCE = Pattern.compile("\\ssrc\\s*=\\s*[\"']([^\"']+)[\"']", Pattern.CASE_INSENSITIVE);
+    private static final Pattern SCRIPT_TYPE = Pattern.compile("\\stype\\s*=\\s*[\"']([^\"']*)[\"']", Pattern.CASE_INSENSITIVE);
+    private static final Pattern JQUERY = Pattern.compile("(^|/)jquery(-[0-9][\\w.]*)?(\\.min)?\\.js$", Pattern.CASE_INSENSITIVE);
+
+    private static final String SHIM = "QUnitJvmShim.js";
+    private static final String SELECTION = "QUnitTestSelection.js";
+
+    //How many instructions a suite runs between checks of its deadline
+    private static final int INSTRUCTION_OBSERVER_THRESHOLD = 100000;
+
+    private static final Object DEADLINE = new Object();
+    private static final Object FAIL_FAST = new Object();
+
+    private static final ContextFactory CONTEXT_FACTORY = new ContextFactory() {
+        @Override
+        protected Context makeContext() {
+            Context cx = super.makeContext();
+
+            //Interpreted scripts can be shared by every suite and every thread, and don't each load a class of their
+            //own
+            cx.setOptimizationLevel(-1);
+            cx.setLanguageVersion(Context.VERSION_ES6);
+            cx.setInstructionObserverThreshold(INSTRUCTION_OBSERVER_THRESHOLD);
+
+            return cx;
+        }
+
+        @Override
+        protected void observeInstructionCount(Context cx, int instructionCount) {
+            Long deadline = (Long) cx.getThreadLocal(DEADLINE);
+            QUnitFailFast failFast = (QUnitFailFast) cx.getThreadLocal(FAIL_FAST);
+
+            if (Thread.currentThread().isInterrupted()) {
+                throw new SuiteStoppedError(false);
+            } else if (deadline != null && deadline > 0 && System.currentTimeMillis() >= deadline) {
+                throw new SuiteStoppedError(true);
+            } else if (failFast != null && failFast.isAborted()) {
+                //There is no process for the watchdog to kill, so the suite is stopped here, and reported like one that
+                //ran out of time (the deadline message says why it was stopped)
+                throw new SuiteStoppedError(true);
+            }
+        }
+    };
+
+    private final ConcurrentMap<String, CompiledScript> compiledScripts = new ConcurrentHashMap<String, CompiledScript>();
+
+    private QUnitBrowserEngineContext context;
+    private ScriptableObject standardObjects;
+    private Script shim;
+    private Script selection;
+    private String identity;
+
+    @Override
+    public void start(QUnitBrowserEngineContext context) throws IOException {
+        this.context = context;
+
+        String shimSource = readResource(SHIM);
+        String selectionSource = readResource(SELECTION);
+
+        Context cx = CONTEXT_FACTORY.enterContext();
+        try {
+            standardObjects = cx.initSafeStandardObjects(null, true);
+            shim = cx.compileString(shimSource, SHIM, 1, null);
+            selection = cx.compileString(selectionSource, SELECTION, 1, null);
+
+            //The shim decides how a page behaves, so a change to it is as good as a different browser
+            identity = "rhino:" + cx.getImplementationVersion() + ":" + QUnitResultCache.hash(shimSource, selectionSource);
+        } finally {
+            Context.exit();
+        }
+    }
+
+    @Override
+    public String getIdentity() {
+        return identity;
+    }
+
+    @Override
+    public void runTestSuite(String absolutePath, long deadline, QUnitTestSuiteResult suiteResult) throws IOException, InterruptedException {
+        File htmlTestFile = new File(absolutePath);
+        Page page = new Page(htmlTestFile, suiteResult);
+
+        Context cx = CONTEXT_FACTORY.enterContext();
+        try {
+            cx.putThreadLocal(DEADLINE, deadline);
+            if (context.getFailFast() != null) {
+                cx.putThreadLocal(FAIL_FAST, context.getFailFast());
+            }
+
+            Scriptable scope = cx.newObject(standardObjects);
+            scope.setPrototype(standardObjects);
+            scope.setParentScope(null);
+
+            ScriptableObject.putProperty(scope, "__qunitBridge", createBridge(cx, scope, page));
+            shim.exec(cx, scope);
+
+            //Just as the driver does in PhantomJS, the selection is in place before the page runs any of its scripts
+            if (suiteResult.getSelection() != null) {
+                selection.exec(cx, scope);
+                cx.evaluateString(scope, "__qUnitTestSelection(this, " + suiteResult.getSelection().toJson() + ");", SELECTION, 1, null);
+            }
+
+            String html = FileUtils.readFileToString(htmlTestFile, "UTF-8");
+            Matcher matcher = SCRIPT.matcher(html);
+            while (matcher.find() && !page.completed) {
+                String attributes = matcher.group(1);
+
+                Matcher type = SCRIPT_TYPE.matcher(attributes);
+                if (type.find() && !type.group(1).isEmpty() && !type.group(1).toLowerCase(Locale.ROOT).contains("javascript")) {
+                    continue;
+                }
+
+                Matcher source = SCRIPT_SOURCE.matcher(attributes);
+                if (source.find()) {
+                    page.load(cx, scope, source.group(1));
+                } else {
+                    cx.evaluateString(scope, matcher.group(2), absolutePath, getLineNumber(html, matcher.start(2)), null);
+                }
+            }
+
+            Scriptable pageShim = (Scriptable) ScriptableObject.getProperty(scope, "__qunitShim");
+            if (!page.completed) {
+                ScriptableObject.callMethod(cx, pageShim, "pageLoaded", new Object[0]);
+            }
+
+            if (!page.completed) {
+                ScriptableObject.callMethod(cx, pageShim, "run", new Object[0]);
+            }
+
+            if (!page.completed) {
+                suiteResult.addGlobalFailure(absolutePath + " had nothing left to run, but QUnit never reported that it was done; results are incomplete", "    at " + absolutePath);
+            }
+        } catch (SuiteStoppedError e) {
+            if (!e.deadline) {
+                throw new InterruptedException(absolutePath + " was abandoned");
+            }
+
+            suiteResult.addGlobalFailure(context.getDeadlineMessage(absolutePath), "    at " + absolutePath);
+        } catch (RhinoException e) {
+            //What the driver reports from page.onError
+            if (!page.completed) {
+                suiteResult.addGlobalFailure(e.details(), e.getScriptStackTrace());
+            }
+        } finally {
+            Context.exit();
+        }
+    }
+
+    @Override
+    public void close() {
+        compiledScripts.clear();
+    }
+
+    private static String readResource(String name) throws IOException {
+        InputStream stream = QUnitJvmEngine.class.getResourceAsStream("/qunit/" + name);
+        try {
+            return IOUtils.toString(stream, "UTF-8");
+        } finally {
+            IOUtils.closeQuietly(stream);
+        }
+    }
+
+    /**
+     * Returns true if the HTML test file asks to be run in the JVM
+     */
+    static boolean isJvmSuite(String html) {
+        return MARKER.matcher(html).find();
+    }
+
+    private Scriptable createBridge(Context cx, Scriptable scope, final Page page) {
+        Scriptable bridge = cx.newObject(scope);
+
+        ScriptableObject.putProperty(bridge, "location", "file://" + page.htmlTestFile.getAbsolutePath());
+        ScriptableObject.putProperty(bridge, "load", createFunction(scope, new BaseFunction() {
+            @Override
+            public Object call(Context cx, Scriptable scope, Scriptable thisObj, Object[] args) {
+                page.load(cx, scope, Context.toString(args[0]));
+                return Undefined.instance;
+            }
+        }));
+        ScriptableObject.putProperty(bridge, "emit", createFunction(scope, new BaseFunction() {
+            @Override
+            public Object call(Context cx, Scriptable scope, Scriptable thisObj, Object[] args) {
+                page.emit(Context.toString(args[0]));
+                return Undefined.instance;
+            }
+        }));
+
+        return bridge;
+    }
+
+    private static BaseFunction createFunction(Scriptable scope, BaseFunction function) {
+        ScriptRuntime.setFunctionProtoAndParent(function, scope);
+        return function;
+    }
+
+    /**
+     * Returns the compiled script, compiling it first if this is the first time it's used or if it has changed since
+     */
+    private Script getCompiledScript(Context cx, File file) throws IOException {
+        String path = file.getCanonicalPath();
+        long lastModified = file.lastModified();
+        long length = file.length();
+
+        CompiledScript compiledScript = compiledScripts.get(path);
+        if (compiledScript == null || compiledScript.lastModified != lastModified || compiledScript.length != length) {
+            Script script = cx.compileString(FileUtils.readFileToString(file, "UTF-8"), path, 1, null);
+            compiledScript = new CompiledScript(script, lastModified, length);
+            compiledScripts.put(path, compiledScript);
+        }
+
+        return compiledScript.script;
+    }
+
+    private static int getLineNumber(String text, int offset) {
+        int lineNumber = 1;
+        for (int i = 0; i < offset; i++) {
+            if (text.charAt(i) == '\n') {
+                lineNumber++;
+            }
+        }
+
+        return lineNumber;
+    }
+
+    /**
+     * Everything that belongs to the suite that is running
+     */
+    private class Page {
+
+        private final File htmlTestFile;
+        private final QUnitTestSuiteResult suiteResult;
+        private boolean completed;
+
+        Page(File htmlTestFile, QUnitTestSuiteResult suiteResult) {
+            this.htmlTestFile = htmlTestFile;
+            this.suiteResult = suiteResult;
+        }
+
+        void load(Context cx, Scriptable scope, String src) {
+            //Strip any query string or fragment; QUnitTestSuite.run adds a cache-buster
+            String path = src.replaceFirst("[?#].*$", "");
+            if (JQUERY.matcher(path).find()) {
+                return;
+            }
+
+            File file = path.startsWith("file://") ? new File(path.substring("file://".length())) : new File(htmlTestFile.getParentFile(), path);
+            if (!file.isFile()) {
+                throw ScriptRuntime.constructError("Error", "Unable to load " + src + " from " + htmlTestFile.getAbsolutePath());
+            }
+
+            try {
+                getCompiledScript(cx, file).exec(cx, scope);
+            } catch (IOException e) {
+                throw Context.throwAsScriptRuntimeEx(e);
+            }
+        }
+
+        void emit(String line) {
+            try {
+                completed |= context.streamResults(new BufferedReader(new StringReader(line)), suiteResult);
+            } catch (IOException e) {
+                throw Context.throwAsScriptRuntimeEx(e);
+            }
+        }
+    }
+
+    private static class CompiledScript {
+
+        private final Script script;
+        private final long lastModified;
+        private final long length;
+
+        CompiledScript(Script script, long lastModified, long length) {
+            this.script = script;
+            this.lastModified = lastModified;
+            this.length = length;
+        }
+    }
+
+    /**
+     * Thrown from the instruction observer to stop a suite. It's an Error rather than an exception so that the suite's
+     * own catch blocks can't swallow it.
+     */
+    private static class SuiteStoppedError extends Error {
+
+        private static final long serialVersionUID = 1L;
+
+        private final boolean deadline;
+
+        SuiteStoppedError(boolean deadline) {
+            this.deadline = deadline;
+        }
+    }
+}
@@ -0,0 +1,384 @@
+package net.vivin.qunit;
+
+import com.google.gson.GsonBuilder;
+import org.apache.commons.io.FileUtils;
+import org.testng.log4testng.Logger;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Where a run spends its time. Every phase of a run (finding the suites, looking up which of them hold the selected
+ * modules, starting browsers, loading pages, running QUnit, reading and parsing what the browser writes, turning
+ * results into tests, and every reporter) gets a count, a total, and a histogram of how long it took each time. Every
+ * suite also gets a line of its own, with how much it wrote and how much memory its browser needed.
+ *
+ * There is one set of metrics per JVM, started afresh by every run. It can be watched over JMX while the run is going
+ * (see {@link QUnitMetricsMBean}), and is written to {@link QUnitConfiguration#METRICS_FILE} once the suites are done
+ * and again after every reporter.
+ *
+ * When a {@link QUnitConfiguration#TRACE_FILE} is given, the metrics also keep a {@link QUnitTrace} of the run, which
+ * is written when the JVM exits (the reporters are the last thing to run, and nothing tells us when the last one is
+ * done).
+ */
+public class QUnitMetrics implements QUnitMetricsMBean {
+
+    private static final Logger logger = Logger.getLogger(QUnitMetrics.class);
+
+    public static final String DISCOVERY = "discovery";
+    public static final String MODULE_INDEX = "moduleIndex";
+    public static final String BINARY_RESOLUTION = "binaryResolution";
+    public static final String PROCESS_SPAWN = "processSpawn";
+    public static final String PAGE_LOAD = "pageLoad";
+    public static final String QUNIT_EXECUTION = "qunitExecution";
+    public static final String OUTPUT_READ = "outputRead";
+    public static final String JSON_PARSE = "jsonParse";
+    public static final String FLATTENING = "flattening";
+
+    private static final String REPORTER_PREFIX = "reporter:";
+
+    private static final List<String> PHASE_ORDER = Arrays.asList(DISCOVERY, MODULE_INDEX, BINARY_RESOLUTION, PROCESS_SPAWN, PAGE_LOAD, QUNIT_EXECUTION, OUTPUT_READ, JSON_PARSE, FLATTENING);
+
+    //Upper bounds of the histogram buckets; the last bucket holds everything that took longer
+    private static final long[] BUCKET_BOUNDS_IN_MILLISECONDS = {1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 2000, 5000, 10000, 30000, 60000};
+
+    private static final String OBJECT_NAME = "net.vivin.qunit:type=QUnitMetrics";
+
+    private static final QUnitMetrics INSTANCE = new QUnitMetrics();
+
+    static {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (!server.isRegistered(name)) {
+                server.registerMBean(INSTANCE, name);
+            }
+        } catch (JMException e) {
+            logger.warn("Unable to register the QUnit metrics with JMX", e);
+        }
+    }
+
+    private final ConcurrentMap<String, Phase> phases = new ConcurrentHashMap<String, Phase>();
+    private final Queue<Suite> suites = new ConcurrentLinkedQueue<Suite>();
+    private volatile File file;
+    private volatile QUnitTrace trace;
+    private boolean traceWrittenOnExit;
+
+    private QUnitMetrics() {
+    }
+
+    public static QUnitMetrics get() {
+        return INSTANCE;
+    }
+
+    /**
+     * Forgets everything about the previous run. The metrics of this one are written to the given file, if any, and it
+     * is traced if it has a trace file.
+     */
+    synchronized void startRun(File file, File traceFile) {
+        phases.clear();
+        suites.clear();
+        this.file = file;
+        this.trace = traceFile == null ? null : new QUnitTrace(traceFile);
+
+        if (trace != null && !traceWrittenOnExit) {
+            Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    writeTrace();
+                }
+            }, "qunit-trace"));
+
+            traceWrittenOnExit = true;
+        }
+    }
+
+    /**
+     * Returns a new track in the trace of the run, or null if the run isn't traced
+     */
+    QUnitTrace.Track newTrack(String name) {
+        QUnitTrace trace = this.trace;
+        return trace == null ? null : trace.newTrack(name);
+    }
+
+    /**
+     * Writes the trace of the run, if it is traced
+     */
+    void writeTrace() {
+        QUnitTrace trace = this.trace;
+        if (trace == null) {
+            return;
+        }
+
+        try {
+            trace.write();
+        } catch (IOException e) {
+            logger.warn("Unable to write the QUnit trace to " + trace.getFile().getAbsolutePath(), e);
+        }
+    }
+
+    /**
+     * Records one occurrence of a phase of the runner itself, which has just ended
+     */
+    public void record(String phase, long nanos) {
+        add(phase, nanos);
+
+        QUnitTrace trace = this.trace;
+        if (trace != null) {
+            trace.getRunner().ended("runner", phase, nanos);
+        }
+    }
+
+    private void add(String phase, long nanos) {
+        Phase existing = phases.get(phase);
+        if (existing == null) {
+            phases.putIfAbsent(phase, new Phase());
+            existing = phases.get(phase);
+        }
+
+        existing.record(nanos);
+    }
+
+    /**
+     * Records how long a reporter took, and writes the metrics again so that the file includes it
+     */
+    public void recordReporter(Class<?> reporter, long nanos) {
+        record(REPORTER_PREFIX + reporter.getSimpleName(), nanos);
+        write();
+    }
+
+    /**
+     * Records a suite that is done, along with whatever it cost to run. Suites that were replayed from the cache (or
+     * never started because the run ran out of time) have no metrics of their own.
+     */
+    void recordSuite(String path, long durationInMilliseconds, int assertions, boolean cached, QUnitSuiteMetrics suiteMetrics) {
+        if (suiteMetrics != null) {
+            if (suiteMetrics.getSpawnNanos() >= 0) {
+                add(PROCESS_SPAWN, suiteMetrics.getSpawnNanos());
+            }
+
+            if (suiteMetrics.getPageLoadMillis() >= 0) {
+                add(PAGE_LOAD, suiteMetrics.getPageLoadMillis() * 1000000);
+            }
+
+            if (suiteMetrics.getExecutionNanos() >= 0) {
+                add(QUNIT_EXECUTION, suiteMetrics.getExecutionNanos());
+            }
+
+            add(OUTPUT_READ, suiteMetrics.getOutputReadNanos());
+            add(JSON_PARSE, suiteMetrics.getParseNanos());
+
+            QUnitTrace.Track track = suiteMetrics.getTrack();
+            if (track != null && suiteMetrics.getFirstOutputAt() != 0) {
+                Map<String, Object> arguments = new LinkedHashMap<String, Object>();
+                arguments.put("bytes", suiteMetrics.getOutputBytes());
+                arguments.put("readMillis", toMillis(suiteMetrics.getOutputReadNanos()));
+                arguments.put("parseMillis", toMillis(suiteMetrics.getParseNanos()));
+
+                track.span("parse", "results", suiteMetrics.getFirstOutputAt(), suiteMetrics.getLastOutputAt() - suiteMetrics.getFirstOutputAt(), arguments);
+            }
+        }
+
+        suites.add(new Suite(path, durationInMilliseconds, assertions, cached, suiteMetrics));
+    }
+
+    /**
+     * Writes the metrics to the file of the run, if it has one
+     */
+    public void write() {
+        File file = this.file;
+        if (file == null) {
+            return;
+        }
+
+        try {
+            FileUtils.writeStringToFile(file, getMetricsJson(), "UTF-8");
+        } catch (IOException e) {
+            logger.warn("Unable to write the QUnit metrics to " + file.getAbsolutePath(), e);
+        }
+    }
+
+    @Override
+    public String[] getPhaseNames() {
+        return getOrderedPhases().keySet().toArray(new String[0]);
+    }
+
+    @Override
+    public long getPhaseCount(String phase) {
+        Phase existing = phases.get(phase);
+        return existing == null ? 0 : existing.count.get();
+    }
+
+    @Override
+    public double getPhaseTotalMillis(String phase) {
+        Phase existing = phases.get(phase);
+        return existing == null ? 0 : toMillis(existing.totalNanos.get());
+    }
+
+    @Override
+    public double getPhaseMaxMillis(String phase) {
+        Phase existing = phases.get(phase);
+        return existing == null ? 0 : toMillis(existing.maxNanos.get());
+    }
+
+    @Override
+    public double getPhasePercentileMillis(String phase, double percentile) {
+        Phase existing = phases.get(phase);
+        return existing == null ? 0 : existing.getPercentileMillis(percentile);
+    }
+
+    @Override
+    public int getSuiteCount() {
+        return suites.size();
+    }
+
+    @Override
+    public long getAssertionCount() {
+        long assertions = 0;
+        for (Suite suite : suites) {
+            assertions += suite.assertions;
+        }
+
+        return assertions;
+    }
+
+    @Override
+    public String getMetricsJson() {
+        Map<String, Object> phaseSummaries = new LinkedHashMap<String, Object>();
+        for (Map.Entry<String, Phase> phase : getOrderedPhases().entrySet()) {
+            phaseSummaries.put(phase.getKey(), phase.getValue().summarize());
+        }
+
+        Map<String, Object> metrics = new LinkedHashMap<String, Object>();
+        metrics.put("generated", System.currentTimeMillis());
+        metrics.put("suiteCount", getSuiteCount());
+        metrics.put("assertionCount", getAssertionCount());
+        metrics.put("phases", phaseSummaries);
+        metrics.put("suites", new ArrayList<Suite>(suites));
+
+        return new GsonBuilder().setPrettyPrinting().create().toJson(metrics);
+    }
+
+    /**
+     * The phases of a run in the order in which they happen, followed by the reporters in alphabetical order
+     */
+    private Map<String, Phase> getOrderedPhases() {
+        Map<String, Phase> ordered = new LinkedHashMap<String, Phase>();
+        for (String name : PHASE_ORDER) {
+            if (phases.containsKey(name)) {
+                ordered.put(name, phases.get(name));
+            }
+        }
+
+        for (String name : new TreeSet<String>(phases.keySet())) {
+            if (!ordered.containsKey(name)) {
+                ordered.put(name, phases.get(name));
+            }
+        }
+
+        return ordered;
+    }
+
+    private static double toMillis(long nanos) {
+        return nanos / 1000000.0;
+    }
+
+    private static class Phase {
+
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong totalNanos = new AtomicLong();
+        private final AtomicLong maxNanos = new AtomicLong();
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_BOUNDS_IN_MILLISECONDS.length + 1);
+
+        void record(long nanos) {
+            count.incrementAndGet();
+            totalNanos.addAndGet(nanos);
+
+            long max;
+            while (nanos > (max = maxNanos.get()) && !maxNanos.compareAndSet(max, nanos)) {
+                //Someone else got there first; try again
+            }
+
+            int bucket = 0;
+            while (bucket < BUCKET_BOUNDS_IN_MILLISECONDS.length && nanos > BUCKET_BOUNDS_IN_MILLISECONDS[bucket] * 1000000) {
+                bucket++;
+            }
+
+            buckets.incrementAndGet(bucket);
+        }
+
+        double getPercentileMillis(double percentile) {
+            long total = count.get();
+            if (total == 0) {
+                return 0;
+            }
+
+            long rank = (long) Math.ceil(total * percentile / 100.0);
+            long seen = 0;
+            for (int bucket = 0; bucket < BUCKET_BOUNDS_IN_MILLISECONDS.length; bucket++) {
+                seen += buckets.get(bucket);
+                if (seen >= rank) {
+                    return BUCKET_BOUNDS_IN_MILLISECONDS[bucket];
+                }
+            }
+
+            return -1;
+        }
+
+        Map<String, Object> summarize() {
+            long total = count.get();
+
+            List<Map<String, Object>> histogram = new ArrayList<Map<String, Object>>();
+            for (int bucket = 0; bucket < buckets.length(); bucket++) {
+                Map<String, Object> entry = new LinkedHashMap<String, Object>();
+                entry.put("upToMillis", bucket < BUCKET_BOUNDS_IN_MILLISECONDS.length ? BUCKET_BOUNDS_IN_MILLISECONDS[bucket] : null);
+                entry.put("count", buckets.get(bucket));
+                histogram.add(entry);
+            }
+
+            Map<String, Object> summary = new LinkedHashMap<String, Object>();
+            summary.put("count", total);
+            summary.put("totalMillis", toMillis(totalNanos.get()));
+            summary.put("meanMillis", total == 0 ? 0 : toMillis(totalNanos.get()) / total);
+            summary.put("maxMillis", toMillis(maxNanos.get()));
+            summary.put("p50Millis", getPercentileMillis(50));
+            summary.put("p95Millis", getPercentileMillis(95));
+            summary.put("p99Millis", getPercentileMillis(99));
+            summary.put("histogram", histogram);
+
+            return summary;
+        }
+    }
+
+    /**
+     * A suite as it appears in the metrics file. Serialized with Gson; a value of -1 means we don't know.
+     */
+    private static class Suite {
+
+        private final String path;
+        private final long durationMillis;
+        private final int assertions;
+        private final boolean cached;
+        private final long outputBytes;
+        private final long peakResidentSetSizeBytes;
+
+        Suite(String path, long durationMillis, int assertions, boolean cached, QUnitSuiteMetrics suiteMetrics) {
+            this.path = path;
+            this.durationMillis = durationMillis;
+            this.assertions = assertions;
+            this.cached = cached;
+            this.outputBytes = suiteMetrics == null ? -1 : suiteMetrics.getOutputBytes();
+            this.peakResidentSetSizeBytes = suiteMetrics == null ? -1 : suiteMetrics.getPeakResidentSetSize();
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package net.vivin.qunit;
+
+/**
+ * The JMX view of {@link QUnitMetrics}, registered as {@code net.vivin.qunit:type=QUnitMetrics}. Times are in
+ * milliseconds.
+ */
+public interface QUnitMetricsMBean {
+
+    String[] getPhaseNames();
+
+    long getPhaseCount(String phase);
+
+    double getPhaseTotalMillis(String phase);
+
+    double getPhaseMaxMillis(String phase);
+
+    /**
+     * Returns the upper bound of the histogram bucket that holds the given percentile (0 to 100) of the phase, or -1 if
+     * it falls into the last, unbounded bucket
+     */
+    double getPhasePercentileMillis(String phase, double percentile);
+
+    int getSuiteCount();
+
+    long getAssertionCount();
+
+    /**
+     * Returns everything, in the same form as the metrics file
+     */
+    String getMetricsJson();
+}
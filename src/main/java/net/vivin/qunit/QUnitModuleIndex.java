@@ -0,0 +1,187 @@
+package net.vivin.qunit;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.google.gson.reflect.TypeToken;
+import org.apache.commons.io.FileUtils;
+import org.testng.log4testng.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The names of the QUnit modules that each HTML test file can define, found by scanning the file and every local script
+ * it references for calls to module(...). With it, files that can't contain a selected module (see
+ * {@link QUnitConfiguration#MODULES}) are left out without starting a browser. Entries are keyed by the path of the
+ * HTML file relative to the root and kept from run to run; an entry is only scanned again once one of the files it was
+ * built from changes.
+ *
+ * A file whose modules can't be known for certain from its source (because a module is named by anything other than a
+ * string literal, or because modules are nested) is never left out.
+ */
+class QUnitModuleIndex {
+
+    private static final Logger logger = Logger.getLogger(QUnitModuleIndex.class);
+
+    private static final Type ENTRIES_TYPE = new TypeToken<TreeMap<String, Entry>>() {}.getType();
+
+    private static final Pattern MODULE_CALL = Pattern.compile("(?<![\\w$])module(?:\\.(?:only|skip|todo))?\\s*\\(");
+    private static final Pattern MODULE_NAME = Pattern.compile("\\s*([\"'])((?:\\\\.|(?!\\1)[^\\\\\\r\\n])*)\\1\\s*([,)])");
+    private static final Pattern NESTED_MODULE = Pattern.compile("\\s*(?:function\\b|async\\b|\\(|[\\w$]+\\s*=>)");
+    private static final Pattern FUNCTION_DECLARATION = Pattern.compile("function\\s*$");
+    private static final Pattern ESCAPE = Pattern.compile("\\\\(.)");
+
+    //QUnit itself declares module(), but never calls it
+    private static final Pattern QUNIT = Pattern.compile("(^|/)qunit(-[0-9][\\w.]*)?(\\.min)?\\.js$", Pattern.CASE_INSENSITIVE);
+
+    private final File file;
+    private final Map<String, Entry> entries;
+
+    private QUnitModuleIndex(File file, Map<String, Entry> entries) {
+        this.file = file;
+        this.entries = entries;
+    }
+
+    /**
+     * Reads the index from the file. A missing or corrupt file gives an empty index.
+     */
+    static QUnitModuleIndex load(File file) {
+        Map<String, Entry> entries = null;
+
+        if (file.isFile()) {
+            try {
+                entries = new Gson().fromJson(FileUtils.readFileToString(file, "UTF-8"), ENTRIES_TYPE);
+            } catch (IOException e) {
+                logger.warn("Unable to read module index " + file, e);
+            } catch (JsonParseException e) {
+                logger.warn("Ignoring corrupt module index " + file, e);
+            }
+        }
+
+        return new QUnitModuleIndex(file, entries == null ? new TreeMap<String, Entry>() : entries);
+    }
+
+    /**
+     * Returns the modules that the HTML test file can define (tests outside of any module belong to "global"), or
+     * null if they can't be known for certain
+     */
+    synchronized List<String> getModules(String relativePath, File htmlTestFile) throws IOException {
+        Entry entry = entries.get(relativePath);
+        if (entry == null || !entry.isCurrent()) {
+            entry = scan(htmlTestFile);
+            entries.put(relativePath, entry);
+        }
+
+        return entry.complete ? entry.modules : null;
+    }
+
+    synchronized void save() {
+        File temporary = new File(file.getPath() + ".tmp");
+
+        try {
+            //Write to a temporary file first so that a run that is killed halfway doesn't leave a corrupt index
+            FileUtils.writeStringToFile(temporary, new Gson().toJson(entries, ENTRIES_TYPE), "UTF-8");
+            FileUtils.deleteQuietly(file);
+            if (!temporary.renameTo(file)) {
+                logger.warn("Unable to write module index " + file);
+                FileUtils.deleteQuietly(temporary);
+            }
+        } catch (IOException e) {
+            logger.warn("Unable to write module index " + file, e);
+            FileUtils.deleteQuietly(temporary);
+        }
+    }
+
+    private static Entry scan(File htmlTestFile) throws IOException {
+        Entry entry = new Entry();
+        entry.modules = new ArrayList<String>();
+        entry.modules.add("global");
+        entry.complete = true;
+
+        String html = FileUtils.readFileToString(htmlTestFile, "UTF-8");
+        entry.addSource(htmlTestFile);
+        entry.complete &= addModules(html, entry.modules);
+
+        //Scripts that aren't on disk (from a CDN, for example) are libraries rather than tests
+        for (String reference : QUnitResultCache.getReferences(html)) {
+            File script = QUnitResultCache.resolve(htmlTestFile, reference);
+            if (!script.getName().toLowerCase(Locale.ROOT).endsWith(".js") || QUNIT.matcher(script.getName()).find() || !script.isFile()) {
+                continue;
+            }
+
+            entry.addSource(script);
+            entry.complete &= addModules(FileUtils.readFileToString(script, "UTF-8"), entry.modules);
+        }
+
+        return entry;
+    }
+
+    /**
+     * Adds the name of every module that the source defines. Returns false if a module is defined in a way that
+     * doesn't let us know its name.
+     */
+    static boolean addModules(String source, List<String> modules) {
+        boolean complete = true;
+
+        Matcher call = MODULE_CALL.matcher(source);
+        while (call.find()) {
+            if (FUNCTION_DECLARATION.matcher(source.substring(Math.max(0, call.start() - 20), call.start())).find()) {
+                continue;
+            }
+
+            Matcher name = MODULE_NAME.matcher(source).region(call.end(), source.length());
+            if (!name.lookingAt()) {
+                complete = false;
+                continue;
+            }
+
+            //QUnit 2 names a nested module after every module around it, which we can't work out from here
+            if (name.group(3).equals(",") && NESTED_MODULE.matcher(source).region(name.end(), source.length()).lookingAt()) {
+                complete = false;
+            }
+
+            String module = ESCAPE.matcher(name.group(2)).replaceAll("$1");
+            if (!modules.contains(module)) {
+                modules.add(module);
+            }
+        }
+
+        return complete;
+    }
+
+    /**
+     * What we write to the index for each HTML test file: the modules it can define, and the files they were found in
+     * as they were when they were scanned
+     */
+    private static class Entry {
+        private List<String> modules;
+        private boolean complete;
+        private Map<String, String> sources = new TreeMap<String, String>();
+
+        void addSource(File source) {
+            sources.put(source.getAbsolutePath(), getStamp(source));
+        }
+
+        boolean isCurrent() {
+            for (Map.Entry<String, String> source : sources.entrySet()) {
+                if (!getStamp(new File(source.getKey())).equals(source.getValue())) {
+                    return false;
+                }
+            }
+
+            return modules != null;
+        }
+
+        private static String getStamp(File source) {
+            return source.lastModified() + ":" + source.length();
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package net.vivin.qunit;
+
+import org.apache.commons.lang3.SystemUtils;
+import org.testng.TestNGException;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.URISyntaxException;
+import java.nio.file.Paths;
+
+/**
+ * The default engine: every suite runs in a PhantomJS process of its own. This is the slowest engine, but also the one
+ * in which suites are best isolated from each other.
+ *
+ * The binary is the one set with {@link QUnitConfiguration#PHANTOMJS_PATH}, or else the one bundled for the current
+ * platform.
+ */
+public class QUnitPhantomJSEngine implements QUnitBrowserEngine {
+
+    protected QUnitBrowserEngineContext context;
+    protected String pathToPhantomJS;
+    private String identity;
+
+    @Override
+    public void start(QUnitBrowserEngineContext context) throws IOException {
+        this.context = context;
+
+        long start = System.nanoTime();
+        File phantomJS = QUnitConfiguration.getPhantomJSPath();
+        pathToPhantomJS = phantomJS != null ? phantomJS.getAbsolutePath() : getBundledPhantomJSPath();
+        QUnitMetrics.get().record(QUnitMetrics.BINARY_RESOLUTION, System.nanoTime() - start);
+    }
+
+    @Override
+    public synchronized String getIdentity() throws IOException {
+        //The identity is part of every cache key, so it has to follow what the binary is rather than when it was
+        //written; the bundled binary is copied out again by every clean build. Hashing the binary takes a while, so
+        //it's only done once, and only when results are cached.
+        if (identity == null) {
+            File binary = new File(pathToPhantomJS);
+            identity = "phantomjs:" + (binary.isFile() ? QUnitResultCache.hash(binary) : "<missing>:" + pathToPhantomJS);
+        }
+
+        return identity;
+    }
+
+    @Override
+    public void runTestSuite(String absolutePath, long deadline, QUnitTestSuiteResult suiteResult) throws IOException, InterruptedException {
+        ProcessBuilder builder = new ProcessBuilder(pathToPhantomJS, context.getTestDriverPath(), absolutePath);
+        if (suiteResult.getSelection() != null) {
+            builder.command().add("--select=" + suiteResult.getSelection().encode());
+        }
+
+        long spawnStart = System.nanoTime();
+        Process qUnitTest = builder.start();
+        suiteResult.getMetrics().spawned(System.nanoTime() - spawnStart);
+
+        QUnitProcessWatchdog.StreamDrain errorOutput = QUnitProcessWatchdog.drain(qUnitTest.getErrorStream(), "qunit-stderr-" + new File(absolutePath).getName());
+        QUnitProcessWatchdog.Watch watch = context.getWatchdog().watch(qUnitTest, deadline);
+
+        try {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(qUnitTest.getInputStream()));
+            boolean completed;
+            try {
+                completed = context.streamResults(reader, suiteResult);
+            } catch (IOException e) {
+                //Killing the process closes its output, so a read that was under way when the watchdog killed it fails
+                if (!watch.isExpired()) {
+                    throw e;
+                }
+
+                completed = false;
+            }
+            suiteResult.getMetrics().setPeakResidentSetSize(QUnitProcessWatchdog.getPeakResidentSetSize(qUnitTest));
+
+            //Forces the current thread to wait for the process to complete
+            int exitValue = qUnitTest.waitFor();
+
+            if (!completed) {
+                if (watch.isExpired()) {
+                    suiteResult.addGlobalFailure(context.getDeadlineMessage(absolutePath), "    at " + absolutePath);
+                } else {
+                    String message = "PhantomJS exited with " + exitValue + " before " + absolutePath + " finished running; results are incomplete";
+                    String standardError = errorOutput.awaitTail();
+                    if (!standardError.isEmpty()) {
+                        message += ". STDERR: " + standardError;
+                    }
+
+                    suiteResult.addGlobalFailure(message, "    at " + absolutePath);
+                }
+            }
+        } finally {
+            watch.cancel();
+            QUnitProcessWatchdog.destroyTree(qUnitTest);
+        }
+    }
+
+    @Override
+    public void close() {
+        //Every process is gone by the time its suite is done
+    }
+
+    private static String getBundledPhantomJSPath() {
+        String basePhantomJsPath;
+        try {
+            basePhantomJsPath = Paths.get(QUnitTestSuiteRunner.class.getResource("/phantomjs").toURI()).toString();
+        } catch (URISyntaxException e) {
+            throw new TestNGException(e);
+        }
+
+        String osDir = null;
+        String extension = "";
+        if(SystemUtils.IS_OS_LINUX) {
+            if(System.getProperty("os.arch").endsWith("64")) {
+                osDir = "linux_i686";
+            } else {
+                osDir = "linux_x64";
+            }
+
+        } else if(SystemUtils.IS_OS_MAC_OSX) {
+            osDir = "macosx";
+        } else if(SystemUtils.IS_OS_WINDOWS) {
+            osDir = "win32";
+            extension = ".exe";
+        }
+
+        String pathToPhantomJS = new StringBuilder(basePhantomJsPath).
+                append(File.separator).
+                append(osDir).
+                append(File.separator).
+                append("phantomjs").
+                append(extension).toString();
+
+        //When copied from resources, the executable bit is unset, so we need to set it here
+        File file = new File(pathToPhantomJS);
+        file.setExecutable(true);
+
+        return pathToPhantomJS;
+    }
+}
@@ -0,0 +1,31 @@
+package net.vivin.qunit;
+
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.util.Iterator;
+
+/**
+ * Runs QUnit results through TestNG as they arrive, instead of waiting for every suite to finish like a factory that
+ * returns {@link QUnitTestSuiteRunner#run()} does. Add this class to your TestNG suite (or extend it) to use it. Tests
+ * for the first suites show up in listeners while later suites are still running, and each suite's results can be
+ * garbage-collected as soon as TestNG has recorded them.
+ */
+
+@QUnitTestSuite
+public class QUnitPipelinedTest {
+
+    @DataProvider(name = "qunit")
+    public static Iterator<Object[]> results() {
+        return QUnitTestSuiteRunner.stream();
+    }
+
+    @Test(dataProvider = "qunit")
+    public void assertion(QUnitTest test) {
+        try {
+            test.assertion();
+        } finally {
+            test.release();
+        }
+    }
+}
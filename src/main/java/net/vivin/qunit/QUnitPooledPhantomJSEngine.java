@@ -0,0 +1,34 @@
+package net.vivin.qunit;
+
+import java.io.IOException;
+
+/**
+ * Runs suites on a pool of long-lived PhantomJS processes (see {@link QUnitWorkerPool}), so that PhantomJS is only
+ * started once every {@link QUnitConfiguration#WORKER_RECYCLE_AFTER} suites instead of once per suite. Each suite still
+ * gets a fresh page.
+ */
+public class QUnitPooledPhantomJSEngine extends QUnitPhantomJSEngine {
+
+    private QUnitWorkerPool workerPool;
+
+    @Override
+    public void start(QUnitBrowserEngineContext context) throws IOException {
+        super.start(context);
+
+        //The pool never holds more workers than we have threads, since each thread only ever borrows one worker at a
+        //time
+        workerPool = new QUnitWorkerPool(pathToPhantomJS, context.getTestDriverPath(), QUnitConfiguration.getWorkerRecycleAfter(), context.getParser(), context.getWatchdog());
+    }
+
+    @Override
+    public void runTestSuite(String absolutePath, long deadline, QUnitTestSuiteResult suiteResult) throws IOException {
+        workerPool.runTestSuite(absolutePath, deadline, suiteResult, context);
+    }
+
+    @Override
+    public void close() {
+        if (workerPool != null) {
+            workerPool.close();
+        }
+    }
+}
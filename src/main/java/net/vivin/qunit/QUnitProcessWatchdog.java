@@ -0,0 +1,235 @@
+package net.vivin.qunit;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Method;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+
+/**
+ * Keeps an eye on the PhantomJS processes of a run. Every process that is watched is killed (along with anything it
+ * started) once its deadline passes, and every process that is still being watched when the watchdog is closed is
+ * killed as well, so nothing outlives the run.
+ *
+ * This also takes care of STDERR: nobody reads it otherwise, and a page that logs enough to fill the pipe would block
+ * the child process forever.
+ */
+class QUnitProcessWatchdog implements Closeable {
+
+    private static final int STDERR_TAIL_LENGTH = 4096;
+
+    //How long we wait for the rest of STDERR once a process has gone away
+    private static final long STDERR_GRACE_PERIOD_IN_MILLISECONDS = 1000;
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "qunit-watchdog");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    //Every process that is being watched, with the flag that tells its watch that it was killed
+    private final ConcurrentMap<Process, AtomicBoolean> watched = new ConcurrentHashMap<Process, AtomicBoolean>();
+
+    /**
+     * Starts watching the process. It is killed when the deadline (in milliseconds since the epoch) passes, unless the
+     * watch is cancelled first. A deadline of zero or less means that the process has no deadline.
+     */
+    Watch watch(final Process process, long deadline) {
+        final AtomicBoolean expired = new AtomicBoolean();
+        watched.put(process, expired);
+
+        ScheduledFuture<?> kill = null;
+
+        if (deadline > 0) {
+            kill = scheduler.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    expired.set(true);
+                    destroyTree(process);
+                }
+            }, Math.max(deadline - System.currentTimeMillis(), 0), TimeUnit.MILLISECONDS);
+        }
+
+        return new Watch(process, kill, expired);
+    }
+
+    /**
+     * Kills every process that is still being watched. Their watches report them as expired, just as if their deadlines
+     * had passed.
+     */
+    void killAll() {
+        for (Map.Entry<Process, AtomicBoolean> entry : watched.entrySet()) {
+            entry.getValue().set(true);
+            destroyTree(entry.getKey());
+        }
+    }
+
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+        killAll();
+    }
+
+    /**
+     * Starts a daemon thread that reads the stream until it ends, holding on to only the last few kilobytes so that
+     * they can be reported if the process dies
+     */
+    static StreamDrain drain(InputStream stream, String name) {
+        StreamDrain drain = new StreamDrain(stream);
+
+        Thread thread = new Thread(drain, name);
+        thread.setDaemon(true);
+        thread.start();
+
+        return drain;
+    }
+
+    /**
+     * Kills the process and, on JVMs that can tell us about them, everything it started. PhantomJS doesn't normally
+     * start anything, but a wrapper script around it would.
+     */
+    static void destroyTree(Process process) {
+        try {
+            //Process.descendants() only exists from Java 9 on, and we still run on Java 8
+            Method descendants = Process.class.getMethod("descendants");
+            Method destroyForcibly = Class.forName("java.lang.ProcessHandle").getMethod("destroyForcibly");
+            Stream<?> handles = (Stream<?>) descendants.invoke(process);
+
+            Iterator<?> iterator = handles.iterator();
+            while (iterator.hasNext()) {
+                destroyForcibly.invoke(iterator.next());
+            }
+        } catch (NoSuchMethodException e) {
+            //Java 8; we can only kill the process itself
+        } catch (Exception e) {
+            //Descendants that have already gone away, or that we aren't allowed to kill; there's nothing more we can do
+        }
+
+        process.destroyForcibly();
+    }
+
+    /**
+     * Returns the most memory the process has used so far, in bytes, or -1 if we can't tell. Only Linux tells us
+     * (through /proc), and only from Java 9 on, where we can get the pid of the process.
+     */
+    static long getPeakResidentSetSize(Process process) {
+        try {
+            long pid = (Long) Process.class.getMethod("pid").invoke(process);
+
+            File status = new File("/proc/" + pid + "/status");
+            if (!status.isFile()) {
+                return -1;
+            }
+
+            for (String line : Files.readAllLines(status.toPath(), Charset.forName("UTF-8"))) {
+                //Reported in kilobytes, as in "VmHWM:     53240 kB"
+                if (line.startsWith("VmHWM:")) {
+                    return Long.parseLong(line.substring("VmHWM:".length()).replace("kB", "").trim()) * 1024;
+                }
+            }
+        } catch (NoSuchMethodException e) {
+            //Java 8
+        } catch (Exception e) {
+            //The process has already gone away, or we aren't allowed to look at it
+        }
+
+        return -1;
+    }
+
+    final class Watch {
+
+        private final Process process;
+        private final ScheduledFuture<?> kill;
+        private final AtomicBoolean expired;
+
+        private Watch(Process process, ScheduledFuture<?> kill, AtomicBoolean expired) {
+            this.process = process;
+            this.kill = kill;
+            this.expired = expired;
+        }
+
+        /**
+         * Stops watching the process. It's left running if it hasn't been killed yet.
+         */
+        void cancel() {
+            if (kill != null) {
+                kill.cancel(false);
+            }
+
+            watched.remove(process);
+        }
+
+        boolean isExpired() {
+            return expired.get();
+        }
+    }
+
+    static final class StreamDrain implements Runnable {
+
+        private final InputStream stream;
+        private final StringBuilder tail = new StringBuilder();
+        private final CountDownLatch ended = new CountDownLatch(1);
+
+        private StreamDrain(InputStream stream) {
+            this.stream = stream;
+        }
+
+        @Override
+        public void run() {
+            byte[] buffer = new byte[4096];
+            Charset charset = Charset.defaultCharset();
+
+            try {
+                int read;
+                while ((read = stream.read(buffer)) != -1) {
+                    synchronized (tail) {
+                        tail.append(new String(buffer, 0, read, charset));
+                        if (tail.length() > STDERR_TAIL_LENGTH) {
+                            tail.delete(0, tail.length() - STDERR_TAIL_LENGTH);
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                //The process is gone; whatever we have is all there is
+            } finally {
+                try {
+                    stream.close();
+                } catch (IOException e) {
+                    //Nothing to do
+                }
+
+                ended.countDown();
+            }
+        }
+
+        /**
+         * Returns the tail once the stream has ended. The process may be gone before we've read everything it wrote, so
+         * we give the rest a moment to come in, but never wait long for a process that is still holding on to it.
+         */
+        String awaitTail() {
+            try {
+                ended.await(STDERR_GRACE_PERIOD_IN_MILLISECONDS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+
+            return getTail();
+        }
+
+        String getTail() {
+            synchronized (tail) {
+                return tail.toString().trim();
+            }
+        }
+    }
+}
@@ -0,0 +1,297 @@
+package net.vivin.qunit;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.testng.log4testng.Logger;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A local, content-addressed cache of suite results. The key of a suite is a hash of its HTML file, of every script and
+ * stylesheet that the HTML file references (which includes QUnit itself and the test file handed to
+ * QUnitTestSuite.run), of the driver scripts, of the selection of tests, of the browser engine that runs the suite
+ * (which, for PhantomJS, identifies the binary), and of whether passing values are dropped. If none of those have
+ * changed since the suite was last run, running it again can't produce a different result, so we replay the stored one
+ * instead.
+ *
+ * Results that contain a global failure are never stored, since those are usually timeouts or crashes that may well
+ * not happen the next time around.
+ */
+class QUnitResultCache {
+
+    private static final Logger logger = Logger.getLogger(QUnitResultCache.class);
+
+    //Bump this whenever the stored format or the key changes, so that old entries are simply never matched again
+    private static final String CACHE_FORMAT_VERSION = "5";
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final Pattern SCRIPT_SOURCE = Pattern.compile("<script[^>]*\\ssrc\\s*=\\s*[\"']([^\"']+)[\"']", Pattern.CASE_INSENSITIVE);
+    private static final Pattern STYLESHEET_HREF = Pattern.compile("<link[^>]*\\shref\\s*=\\s*[\"']([^\"']+)[\"']", Pattern.CASE_INSENSITIVE);
+    private static final Pattern SUITE_SOURCE = Pattern.compile("QUnitTestSuite\\.run\\(\\s*[\"']([^\"']+)[\"']");
+
+    private static final String EXTENSION = ".json";
+
+    private final File directory;
+    private final long maxSizeInBytes;
+    private final boolean refresh;
+    private final String environmentHash;
+    private final Gson gson = new Gson();
+
+    QUnitResultCache(File directory, long maxSizeInBytes, boolean refresh, String pathToTestDriver, boolean dropPassingValues) throws IOException {
+        this.directory = directory;
+        this.maxSizeInBytes = maxSizeInBytes;
+        this.refresh = refresh;
+
+        FileUtils.forceMkdir(directory);
+
+        //Everything that is the same for every suite: the driver and the bootstrapping harness next to it, and whether
+        //the stored results have the values of their passing assertions
+        File testDriver = new File(pathToTestDriver);
+
+        MessageDigest digest = newDigest();
+        update(digest, CACHE_FORMAT_VERSION);
+        update(digest, dropPassingValues ? "passing values dropped" : "passing values kept");
+        update(digest, testDriver);
+        update(digest, new File(testDriver.getParentFile(), "QUnitTestSuite.js"));
+        update(digest, new File(testDriver.getParentFile(), "QUnitTestSelection.js"));
+
+        this.environmentHash = toHex(digest.digest());
+    }
+
+    String key(File htmlTestFile, String engineIdentity) throws IOException {
+        return key(htmlTestFile, engineIdentity, null);
+    }
+
+    /**
+     * Computes the cache key for the given HTML test file when it is run on the engine with the given identity, with
+     * only the selected tests (or all of them, if the selection is null)
+     */
+    String key(File htmlTestFile, String engineIdentity, QUnitTestSelection selection) throws IOException {
+        return key(htmlTestFile, FileUtils.readFileToString(htmlTestFile, UTF_8.name()), engineIdentity, selection);
+    }
+
+    /**
+     * Computes the cache key from HTML that has already been read from the given file
+     */
+    String key(File htmlTestFile, String html, String engineIdentity, QUnitTestSelection selection) throws IOException {
+        MessageDigest digest = newDigest();
+        update(digest, environmentHash);
+        update(digest, engineIdentity);
+        update(digest, selection == null ? "<all>" : selection.toJson());
+        update(digest, html);
+
+        for (String reference : getReferences(html)) {
+            update(digest, reference);
+            update(digest, resolve(htmlTestFile, reference));
+        }
+
+        return toHex(digest.digest());
+    }
+
+    /**
+     * Returns the stored result for the key, or null if there is none (or if we've been asked to refresh the cache)
+     */
+    QUnitTestSuiteResult lookup(String key) {
+        if (refresh) {
+            return null;
+        }
+
+        File entry = new File(directory, key + EXTENSION);
+        if (!entry.isFile()) {
+            return null;
+        }
+
+        try {
+            QUnitTestSuiteResult suiteResult = gson.fromJson(FileUtils.readFileToString(entry, UTF_8.name()), QUnitTestSuiteResult.class);
+
+            //Touch the entry so that eviction sees it as recently used
+            entry.setLastModified(System.currentTimeMillis());
+            return suiteResult;
+        } catch (IOException e) {
+            logger.warn("Unable to read cached result " + entry + "; running the suite instead", e);
+        } catch (JsonParseException e) {
+            logger.warn("Ignoring corrupt cached result " + entry, e);
+            FileUtils.deleteQuietly(entry);
+        }
+
+        return null;
+    }
+
+    void store(String key, QUnitTestSuiteResult suiteResult) {
+        //Tests outside of any module are filed under "global" too, so only the global failure itself rules a result out
+        Map<String, List<QUnitTestResult>> globalTests = suiteResult.getResults().get("global");
+        if (globalTests != null && globalTests.containsKey("global failure")) {
+            return;
+        }
+
+        File entry = new File(directory, key + EXTENSION);
+        File temporary = new File(directory, key + EXTENSION + "." + Thread.currentThread().getId() + ".tmp");
+
+        try {
+            //Write to a temporary file first so that concurrent runs never see a half-written entry
+            FileUtils.writeStringToFile(temporary, gson.toJson(suiteResult), UTF_8.name());
+            FileUtils.deleteQuietly(entry);
+            if (!temporary.renameTo(entry)) {
+                FileUtils.deleteQuietly(temporary);
+                return;
+            }
+        } catch (IOException e) {
+            logger.warn("Unable to store result in " + entry, e);
+            FileUtils.deleteQuietly(temporary);
+            return;
+        }
+
+        evict();
+    }
+
+    /**
+     * Deletes the least recently used entries until the cache fits in its maximum size again
+     */
+    private synchronized void evict() {
+        File[] entries = directory.listFiles();
+        if (entries == null) {
+            return;
+        }
+
+        long size = 0;
+        List<File> cached = new ArrayList<File>();
+        for (File entry : entries) {
+            if (entry.getName().endsWith(EXTENSION)) {
+                size += entry.length();
+                cached.add(entry);
+            }
+        }
+
+        if (size <= maxSizeInBytes) {
+            return;
+        }
+
+        final Map<File, Long> lastUsed = new HashMap<File, Long>();
+        for (File entry : cached) {
+            lastUsed.put(entry, entry.lastModified());
+        }
+
+        Collections.sort(cached, new Comparator<File>() {
+            @Override
+            public int compare(File o1, File o2) {
+                return lastUsed.get(o1).compareTo(lastUsed.get(o2));
+            }
+        });
+
+        for (File entry : cached) {
+            if (size <= maxSizeInBytes) {
+                break;
+            }
+
+            long length = entry.length();
+            if (entry.delete()) {
+                size -= length;
+            }
+        }
+    }
+
+    /**
+     * Returns everything that the HTML file pulls in, in document order: scripts, stylesheets, and the suite that is
+     * loaded through QUnitTestSuite.run
+     */
+    static List<String> getReferences(String html) {
+        List<String> references = new ArrayList<String>();
+
+        for (Pattern pattern : new Pattern[]{SCRIPT_SOURCE, STYLESHEET_HREF, SUITE_SOURCE}) {
+            Matcher matcher = pattern.matcher(html);
+            while (matcher.find()) {
+                references.add(matcher.group(1));
+            }
+        }
+
+        return references;
+    }
+
+    static File resolve(File htmlTestFile, String reference) {
+        //Strip any query string or fragment; QUnitTestSuite.run adds a cache-buster of its own anyway
+        String path = reference.replaceFirst("[?#].*$", "");
+        if (path.startsWith("file://")) {
+            return new File(path.substring("file://".length()));
+        }
+
+        return new File(htmlTestFile.getParentFile(), path);
+    }
+
+    /**
+     * Returns a hash of the contents of the file, which must exist
+     */
+    static String hash(File file) throws IOException {
+        MessageDigest digest = newDigest();
+
+        InputStream stream = new FileInputStream(file);
+        try {
+            byte[] buffer = new byte[65536];
+            int read;
+            while ((read = stream.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+        } finally {
+            IOUtils.closeQuietly(stream);
+        }
+
+        return toHex(digest.digest());
+    }
+
+    /**
+     * Returns a hash of the strings, taken together in the order given
+     */
+    static String hash(String... values) {
+        MessageDigest digest = newDigest();
+        for (String value : values) {
+            update(digest, value);
+        }
+
+        return toHex(digest.digest());
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            //Every JVM is required to support SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void update(MessageDigest digest, String value) {
+        digest.update(value.getBytes(UTF_8));
+        digest.update((byte) 0);
+    }
+
+    private static void update(MessageDigest digest, File file) throws IOException {
+        //A reference that doesn't resolve to a file (a remote script, for example) only contributes its name
+        if (file.isFile()) {
+            digest.update(FileUtils.readFileToByteArray(file));
+        } else {
+            update(digest, "<missing>");
+        }
+
+        digest.update((byte) 0);
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            hex.append(String.format("%02x", b));
+        }
+
+        return hex.toString();
+    }
+}
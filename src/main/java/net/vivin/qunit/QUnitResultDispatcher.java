@@ -0,0 +1,250 @@
+package net.vivin.qunit;
+
+import org.testng.log4testng.Logger;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hands events to the {@link QUnitResultListener}s of a run on a thread of its own, so that the threads that read
+ * results from the browsers never wait for a listener unless the queue between them is full. A listener that throws is
+ * logged and still gets the events after that one. Without any listeners, events are dropped right away and no thread
+ * is started.
+ */
+class QUnitResultDispatcher implements QUnitResultListener, Closeable {
+
+    private static final Logger logger = Logger.getLogger(QUnitResultDispatcher.class);
+
+    static final int QUEUE_CAPACITY = 10000;
+
+    //How long closing the dispatcher waits for the listeners to catch up
+    private static final long CLOSE_TIMEOUT_IN_MILLISECONDS = 10000;
+
+    private final List<QUnitResultListener> listeners;
+    private final BlockingQueue<Event> queue;
+    private final Thread thread;
+
+    private volatile boolean closed;
+
+    QUnitResultDispatcher(List<QUnitResultListener> listeners) {
+        this(listeners, QUEUE_CAPACITY);
+    }
+
+    QUnitResultDispatcher(List<QUnitResultListener> listeners, int capacity) {
+        this.listeners = new ArrayList<QUnitResultListener>(listeners);
+        this.queue = new ArrayBlockingQueue<Event>(capacity);
+
+        if (listeners.isEmpty()) {
+            thread = null;
+        } else {
+            thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    deliver();
+                }
+            }, "qunit-results");
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    /**
+     * Creates the built-in listeners, or else instances of the named classes
+     */
+    static List<QUnitResultListener> createListeners(List<String> names) {
+        if (names.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        List<QUnitResultListener> listeners = new ArrayList<QUnitResultListener>();
+        for (String name : names) {
+            if ("console".equals(name)) {
+                listeners.add(new QUnitConsoleProgressListener());
+                continue;
+            }
+
+            try {
+                listeners.add(Class.forName(name).asSubclass(QUnitResultListener.class).newInstance());
+            } catch (ClassNotFoundException e) {
+                throw new IllegalArgumentException("Unknown result listener " + name + "; expected console, or the name of a class that implements " + QUnitResultListener.class.getName(), e);
+            } catch (ClassCastException e) {
+                throw new IllegalArgumentException(name + " does not implement " + QUnitResultListener.class.getName(), e);
+            } catch (InstantiationException e) {
+                throw new IllegalArgumentException("Unable to create result listener " + name, e);
+            } catch (IllegalAccessException e) {
+                throw new IllegalArgumentException("Unable to create result listener " + name, e);
+            }
+        }
+
+        return listeners;
+    }
+
+    /**
+     * Returns true if anybody is listening. Events that take work to produce only need to be produced if so.
+     */
+    boolean isListening() {
+        return thread != null;
+    }
+
+    @Override
+    public void runStarted(final int suiteCount) {
+        enqueue(new Event() {
+            @Override
+            void deliver(QUnitResultListener listener) {
+                listener.runStarted(suiteCount);
+            }
+        });
+    }
+
+    @Override
+    public void suiteStarted(final String path) {
+        enqueue(new Event() {
+            @Override
+            void deliver(QUnitResultListener listener) {
+                listener.suiteStarted(path);
+            }
+        });
+    }
+
+    @Override
+    public void assertion(final String path, final String moduleName, final String testName, final QUnitTestResult result) {
+        enqueue(new Event() {
+            @Override
+            void deliver(QUnitResultListener listener) {
+                listener.assertion(path, moduleName, testName, result);
+            }
+        });
+    }
+
+    @Override
+    public void testDone(final String path, final String moduleName, final String testName, final long duration) {
+        enqueue(new Event() {
+            @Override
+            void deliver(QUnitResultListener listener) {
+                listener.testDone(path, moduleName, testName, duration);
+            }
+        });
+    }
+
+    @Override
+    public void suiteDone(final String path, final QUnitTestSuiteResult suiteResult) {
+        enqueue(new Event() {
+            @Override
+            void deliver(QUnitResultListener listener) {
+                listener.suiteDone(path, suiteResult);
+            }
+        });
+    }
+
+    @Override
+    public void suiteError(final String path, final Throwable error) {
+        enqueue(new Event() {
+            @Override
+            void deliver(QUnitResultListener listener) {
+                listener.suiteError(path, error);
+            }
+        });
+    }
+
+    @Override
+    public void runDone() {
+        enqueue(new Event() {
+            @Override
+            void deliver(QUnitResultListener listener) {
+                listener.runDone();
+            }
+        });
+    }
+
+    /**
+     * Reports every assertion of a suite whose results weren't streamed, such as one that was replayed from the cache
+     */
+    void assertions(String path, QUnitTestSuiteResult suiteResult) {
+        if (!isListening()) {
+            return;
+        }
+
+        for (Map.Entry<String, LinkedHashMap<String, List<QUnitTestResult>>> module : suiteResult.getResults().entrySet()) {
+            for (Map.Entry<String, List<QUnitTestResult>> test : module.getValue().entrySet()) {
+                for (QUnitTestResult result : test.getValue()) {
+                    assertion(path, module.getKey(), test.getKey(), result);
+                }
+            }
+        }
+    }
+
+    /**
+     * Waits for the listeners to get every event so far, for a while. Events after this are dropped.
+     */
+    @Override
+    public void close() {
+        if (thread == null || closed) {
+            return;
+        }
+
+        closed = true;
+
+        try {
+            //A listener that hangs must not hang the run, even if the queue is full
+            if (queue.offer(Event.END, CLOSE_TIMEOUT_IN_MILLISECONDS, TimeUnit.MILLISECONDS)) {
+                thread.join(CLOSE_TIMEOUT_IN_MILLISECONDS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        if (thread.isAlive()) {
+            logger.warn("Result listeners did not catch up within " + CLOSE_TIMEOUT_IN_MILLISECONDS + " ms; the rest of their events are dropped");
+            thread.interrupt();
+        }
+    }
+
+    private void enqueue(Event event) {
+        if (thread == null || closed) {
+            return;
+        }
+
+        try {
+            queue.put(event);
+        } catch (InterruptedException e) {
+            //The suite that produced the event is being abandoned
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void deliver() {
+        try {
+            Event event;
+            while ((event = queue.take()) != Event.END) {
+                for (QUnitResultListener listener : listeners) {
+                    try {
+                        event.deliver(listener);
+                    } catch (RuntimeException e) {
+                        logger.error("Result listener " + listener.getClass().getName() + " failed", e);
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private abstract static class Event {
+
+        //Marks the end of the events; never delivered
+        static final Event END = new Event() {
+            @Override
+            void deliver(QUnitResultListener listener) {
+            }
+        };
+
+        abstract void deliver(QUnitResultListener listener);
+    }
+}
@@ -0,0 +1,47 @@
+package net.vivin.qunit;
+
+/**
+ * Is told about results as the run produces them, instead of once TestNG has them all. Listeners are named in
+ * {@link QUnitConfiguration#LISTENERS}; besides the built-in console listener ({@link QUnitConsoleProgressListener}),
+ * any class that implements this interface and has a public no-argument constructor can be named there.
+ *
+ * Every call for a run is made from a single thread of its own, in the order in which the events happened, so
+ * listeners don't need to be thread-safe. Events wait in a bounded queue until they are delivered, and suites stop
+ * producing them while the queue is full, so a slow listener slows the run down rather than losing events. Suites are
+ * identified by the path of their HTML file, relative to {@link QUnitConfiguration#ROOT}.
+ */
+public interface QUnitResultListener {
+
+    /**
+     * Called before any suite starts, with the number of suites that this run (or shard) is going to run
+     */
+    void runStarted(int suiteCount);
+
+    void suiteStarted(String path);
+
+    /**
+     * Called for every assertion as soon as it has been reported. Suites whose results are replayed from the cache, or
+     * that were never run, report all of their assertions at once.
+     */
+    void assertion(String path, String moduleName, String testName, QUnitTestResult result);
+
+    /**
+     * Called when the browser reports that a QUnit test is done, with how long it took in milliseconds
+     */
+    void testDone(String path, String moduleName, String testName, long duration);
+
+    /**
+     * Called with the complete result of a suite, including any global failure that says why it didn't finish
+     */
+    void suiteDone(String path, QUnitTestSuiteResult suiteResult);
+
+    /**
+     * Called instead of {@link #suiteDone} when the suite couldn't be run at all, because its engine failed
+     */
+    void suiteError(String path, Throwable error);
+
+    /**
+     * Called once the run is over, after every other event
+     */
+    void runDone();
+}
@@ -0,0 +1,188 @@
+package net.vivin.qunit;
+
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.MalformedJsonException;
+
+import java.io.BufferedReader;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.StringReader;
+
+/**
+ * Parses the newline-delimited JSON that QUnitTestDriver.js writes to STDOUT. Every line is one event, and each
+ * assertion is added to the suite result as soon as its line has been read, so the result never needs the whole output
+ * in memory and whatever was reported before a crash or a timeout is kept. The durations of tests and modules are
+ * recorded as they are reported.
+ *
+ * Module names, test names, and sources are interned through a pool that is shared by every suite the parser reads,
+ * and the expected and actual values of passing assertions are dropped unless we've been asked to keep them.
+ *
+ * How long reading and parsing took, and how much the driver wrote, is added to the metrics of the suite.
+ */
+class QUnitResultStreamParser {
+
+    private static final String LOG_EVENT = "log";
+    private static final String TEST_DONE_EVENT = "testDone";
+    private static final String MODULE_DONE_EVENT = "moduleDone";
+    private static final String DONE_EVENT = "done";
+    private static final String PAGE_LOADED_EVENT = "pageLoaded";
+
+    private final QUnitStringPool stringPool;
+    private final boolean retainPassingValues;
+
+    QUnitResultStreamParser(QUnitStringPool stringPool, boolean retainPassingValues) {
+        this.stringPool = stringPool;
+        this.retainPassingValues = retainPassingValues;
+    }
+
+    /**
+     * Reads events into the given suite result until the driver reports that the suite is done, or until the stream
+     * ends. Returns true if the suite ran to completion, and false if the stream ended first (which means that the
+     * results are partial).
+     */
+    boolean parse(BufferedReader reader, QUnitTestSuiteResult suiteResult) throws IOException {
+        QUnitSuiteMetrics metrics = suiteResult.getMetrics();
+
+        String line;
+        long readStart = System.nanoTime();
+        while ((line = reader.readLine()) != null) {
+            long readEnd = System.nanoTime();
+            //Plus one for the newline
+            metrics.addOutput(readEnd - readStart, utf8Length(line) + 1);
+
+            line = line.trim();
+
+            //PhantomJS occasionally writes its own warnings to STDOUT. Those are never JSON objects, so we skip them
+            if (line.startsWith("{") && parseEvent(line, suiteResult)) {
+                return true;
+            }
+
+            readStart = System.nanoTime();
+        }
+
+        return false;
+    }
+
+    /**
+     * Returns the number of bytes the line took up on the stream, which is always UTF-8
+     */
+    static int utf8Length(String line) {
+        int length = line.length();
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c >= 0x800) {
+                //Surrogate pairs add up to four bytes, and every other character from here on takes three
+                length += Character.isSurrogate(c) ? 1 : 2;
+            } else if (c >= 0x80) {
+                length++;
+            }
+        }
+
+        return length;
+    }
+
+    /**
+     * Returns true if the line was the "done" event for the suite
+     */
+    private boolean parseEvent(String line, QUnitTestSuiteResult suiteResult) throws IOException {
+        JsonReader jsonReader = new JsonReader(new StringReader(line));
+
+        String type = null;
+        String moduleName = "global";
+        String testName = null;
+        long duration = -1;
+        QUnitTestResult result = new QUnitTestResult();
+
+        long parseStart = System.nanoTime();
+        try {
+            jsonReader.beginObject();
+            while (jsonReader.hasNext()) {
+                String name = jsonReader.nextName();
+
+                if ("type".equals(name)) {
+                    type = readString(jsonReader);
+                } else if ("module".equals(name)) {
+                    String value = readString(jsonReader);
+                    if (value != null) {
+                        moduleName = stringPool.intern(value);
+                    }
+                } else if ("name".equals(name)) {
+                    testName = stringPool.intern(readString(jsonReader));
+                } else if ("testNumber".equals(name)) {
+                    result.setTestNumber(jsonReader.nextInt());
+                } else if ("message".equals(name)) {
+                    result.setMessage(readString(jsonReader));
+                } else if ("expected".equals(name)) {
+                    result.setExpected(readString(jsonReader));
+                } else if ("actual".equals(name)) {
+                    result.setActual(readString(jsonReader));
+                } else if ("source".equals(name)) {
+                    result.setSource(stringPool.intern(readString(jsonReader)));
+                } else if ("failure".equals(name)) {
+                    result.setFailure(jsonReader.nextBoolean());
+                } else if ("duration".equals(name)) {
+                    //Rounded rather than read as a long, which fails on fractional milliseconds
+                    duration = Math.round(jsonReader.nextDouble());
+                } else {
+                    jsonReader.skipValue();
+                }
+            }
+            jsonReader.endObject();
+        } catch (IllegalStateException e) {
+            //Not one of our events; treat it like any other noise on STDOUT
+            return false;
+        } catch (MalformedJsonException e) {
+            return false;
+        } catch (EOFException e) {
+            //A line that was cut short because the driver died while writing it
+            return false;
+        } catch (NumberFormatException e) {
+            return false;
+        } finally {
+            suiteResult.getMetrics().addParse(System.nanoTime() - parseStart);
+        }
+
+        if (LOG_EVENT.equals(type)) {
+            if (!result.isFailure() && !retainPassingValues) {
+                result.setExpected(null);
+                result.setActual(null);
+            }
+
+            suiteResult.addResult(moduleName, testName, result);
+        } else if (TEST_DONE_EVENT.equals(type) && duration >= 0) {
+            suiteResult.setTestDuration(moduleName, testName, duration);
+            suiteResult.getMetrics().testDone(testName, duration);
+        } else if (MODULE_DONE_EVENT.equals(type) && duration >= 0) {
+            suiteResult.setModuleDuration(moduleName, duration);
+            suiteResult.getMetrics().moduleDone(moduleName, duration);
+        } else if (PAGE_LOADED_EVENT.equals(type) && duration >= 0) {
+            suiteResult.getMetrics().pageLoaded(duration);
+        } else if (DONE_EVENT.equals(type)) {
+            suiteResult.getMetrics().done();
+            return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * Expected and actual values are usually strings, but QUnit happily reports numbers, booleans, and the occasional
+     * object. We report all of them as strings.
+     */
+    private static String readString(JsonReader jsonReader) throws IOException {
+        JsonToken token = jsonReader.peek();
+
+        if (token == JsonToken.NULL) {
+            jsonReader.nextNull();
+            return null;
+        } else if (token == JsonToken.BOOLEAN) {
+            return String.valueOf(jsonReader.nextBoolean());
+        } else if (token == JsonToken.BEGIN_OBJECT || token == JsonToken.BEGIN_ARRAY) {
+            return new JsonParser().parse(jsonReader).toString();
+        }
+
+        return jsonReader.nextString();
+    }
+}
@@ -0,0 +1,92 @@
+package net.vivin.qunit;
+
+import java.util.*;
+
+/**
+ * Decides the order in which suites are started. When suites run concurrently, starting the long ones first keeps a
+ * single slow suite from being the last one to start and holding up the end of the run, and starting the ones that
+ * failed last time first tells you sooner whether they've been fixed. Results are still reported in discovery order,
+ * except when they are streamed (see {@link QUnitTestSuiteRunner#stream()}).
+ *
+ * The policies that need to know about earlier runs get that from the {@link QUnitSuiteHistory}; suites it doesn't know
+ * about keep their place in discovery order relative to each other.
+ */
+public enum QUnitSchedulingPolicy {
+
+    /**
+     * The order in which the HTML files were found
+     */
+    DISCOVERY {
+        @Override
+        List<String> order(List<String> relativePaths, QUnitSuiteHistory history) {
+            return relativePaths;
+        }
+    },
+
+    /**
+     * The suites that took longest the last time they ran first
+     */
+    LONGEST_FIRST {
+        @Override
+        List<String> order(List<String> relativePaths, QUnitSuiteHistory history) {
+            final Map<String, Long> durations = history.getExpectedDurations(relativePaths);
+            if (durations == null) {
+                return relativePaths;
+            }
+
+            List<String> ordered = new ArrayList<String>(relativePaths);
+
+            //The sort is stable, so suites that are expected to take as long as each other stay in discovery order
+            Collections.sort(ordered, new Comparator<String>() {
+                @Override
+                public int compare(String o1, String o2) {
+                    return durations.get(o2).compareTo(durations.get(o1));
+                }
+            });
+
+            return ordered;
+        }
+    },
+
+    /**
+     * The suites that had failures the last time they ran first, then everything else, each in discovery order
+     */
+    FAILED_FIRST {
+        @Override
+        List<String> order(List<String> relativePaths, QUnitSuiteHistory history) {
+            List<String> failed = new ArrayList<String>();
+            List<String> others = new ArrayList<String>();
+
+            for (String relativePath : relativePaths) {
+                if (history.hasFailed(relativePath)) {
+                    failed.add(relativePath);
+                } else {
+                    others.add(relativePath);
+                }
+            }
+
+            failed.addAll(others);
+            return failed;
+        }
+    };
+
+    abstract List<String> order(List<String> relativePaths, QUnitSuiteHistory history);
+
+    /**
+     * Returns the policy with the given name, which is the name of the constant in lower case and with dashes instead
+     * of underscores (longest-first, for example)
+     */
+    public static QUnitSchedulingPolicy forName(String name) {
+        for (QUnitSchedulingPolicy policy : values()) {
+            if (policy.getName().equals(name.trim())) {
+                return policy;
+            }
+        }
+
+        throw new IllegalArgumentException("Unknown scheduling policy " + name + "; expected one of discovery, longest-first, failed-first");
+    }
+
+    public String getName() {
+        return name().toLowerCase(Locale.ENGLISH).replace('_', '-');
+    }
+}
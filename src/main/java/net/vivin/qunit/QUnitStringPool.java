@@ -0,0 +1,25 @@
+package net.vivin.qunit;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Hands out a single, shared instance for every distinct string it sees. Module names, test names, and stack traces
+ * repeat for almost every assertion in a suite, so keeping one copy of each instead of one per assertion makes up most
+ * of the memory a large run needs for its results.
+ *
+ * Unlike {@link String#intern()}, the strings only live as long as the pool does, which is one run of the suites.
+ */
+class QUnitStringPool {
+
+    private final ConcurrentMap<String, String> strings = new ConcurrentHashMap<String, String>();
+
+    String intern(String value) {
+        if (value == null) {
+            return null;
+        }
+
+        String existing = strings.putIfAbsent(value, value);
+        return existing == null ? value : existing;
+    }
+}
@@ -0,0 +1,144 @@
+package net.vivin.qunit;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.google.gson.reflect.TypeToken;
+import org.apache.commons.io.FileUtils;
+import org.testng.log4testng.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * What we remember about each suite from earlier runs, keyed by the path of its HTML file relative to the test
+ * classpath root (always with forward slashes, so that the file can be shared between machines). Suites that aren't
+ * run keep their old entries when the history is saved.
+ *
+ * The history can be saved to a different file from the one it was read from. A shard of a run only knows about its
+ * own suites, so it reads the history that all shards share but writes what it has learned to a file of its own.
+ */
+class QUnitSuiteHistory {
+
+    private static final Logger logger = Logger.getLogger(QUnitSuiteHistory.class);
+
+    private static final Type ENTRIES_TYPE = new TypeToken<TreeMap<String, Entry>>() {}.getType();
+
+    private final File file;
+    private final Map<String, Entry> entries;
+
+    private QUnitSuiteHistory(File file, Map<String, Entry> entries) {
+        this.file = file;
+        this.entries = entries;
+    }
+
+    /**
+     * Reads the history from the file, and saves it back to the same file. A missing or corrupt file gives an empty
+     * history.
+     */
+    static QUnitSuiteHistory load(File file) {
+        return load(file, file);
+    }
+
+    /**
+     * Reads the history from one file, and saves it to another
+     */
+    static QUnitSuiteHistory load(File file, File saveTo) {
+        Map<String, Entry> entries = null;
+
+        if (file.isFile()) {
+            try {
+                entries = new Gson().fromJson(FileUtils.readFileToString(file, "UTF-8"), ENTRIES_TYPE);
+            } catch (IOException e) {
+                logger.warn("Unable to read suite history " + file, e);
+            } catch (JsonParseException e) {
+                logger.warn("Ignoring corrupt suite history " + file, e);
+            }
+        }
+
+        return new QUnitSuiteHistory(saveTo, entries == null ? new TreeMap<String, Entry>() : entries);
+    }
+
+    /**
+     * Returns how long the suite took the last time it ran, in milliseconds, or null if we don't know
+     */
+    synchronized Long getDuration(String relativePath) {
+        Entry entry = entries.get(relativePath);
+        return entry == null ? null : entry.duration;
+    }
+
+    /**
+     * Returns true if the suite had failures the last time it ran
+     */
+    synchronized boolean hasFailed(String relativePath) {
+        Entry entry = entries.get(relativePath);
+        return entry != null && entry.failed;
+    }
+
+    /**
+     * Returns how long each of the suites is expected to take, or null if we don't know about any of them. Suites we
+     * haven't seen before are assumed to take as long as the average suite that we have seen.
+     */
+    synchronized Map<String, Long> getExpectedDurations(List<String> relativePaths) {
+        Map<String, Long> durations = new HashMap<String, Long>();
+        long total = 0;
+
+        for (String relativePath : relativePaths) {
+            Long duration = getDuration(relativePath);
+            if (duration != null) {
+                durations.put(relativePath, duration);
+                total += duration;
+            }
+        }
+
+        if (durations.isEmpty()) {
+            return null;
+        }
+
+        long average = total / durations.size();
+        for (String relativePath : relativePaths) {
+            if (!durations.containsKey(relativePath)) {
+                durations.put(relativePath, average);
+            }
+        }
+
+        return durations;
+    }
+
+    synchronized void record(String relativePath, long duration, boolean failed) {
+        Entry entry = new Entry();
+        entry.duration = duration;
+        entry.failed = failed;
+
+        entries.put(relativePath, entry);
+    }
+
+    synchronized void save() {
+        File temporary = new File(file.getPath() + ".tmp");
+
+        try {
+            //Write to a temporary file first so that a run that is killed halfway doesn't leave a corrupt history
+            FileUtils.writeStringToFile(temporary, new Gson().toJson(entries, ENTRIES_TYPE), "UTF-8");
+            FileUtils.deleteQuietly(file);
+            if (!temporary.renameTo(file)) {
+                logger.warn("Unable to write suite history " + file);
+                FileUtils.deleteQuietly(temporary);
+            }
+        } catch (IOException e) {
+            logger.warn("Unable to write suite history " + file, e);
+            FileUtils.deleteQuietly(temporary);
+        }
+    }
+
+    /**
+     * What we write to the history file for each suite
+     */
+    private static class Entry {
+        private Long duration;
+        private boolean failed;
+    }
+}
@@ -0,0 +1,144 @@
+package net.vivin.qunit;
+
+/**
+ * What one suite cost to run, gathered by its engine and by the parser while it runs, and added to the
+ * {@link QUnitMetrics} of the run once it's done. Only ever touched by the thread that runs the suite.
+ *
+ * When the run is traced, everything is also added as a span to the suite's track as it happens.
+ */
+class QUnitSuiteMetrics {
+
+    private long spawnNanos = -1;
+    private long pageLoadMillis = -1;
+    private long pageLoadedAt;
+    private long executionNanos = -1;
+    private long outputReadNanos;
+    private long parseNanos;
+    private long outputBytes;
+    private long peakResidentSetSize = -1;
+    private long firstOutputAt;
+    private long lastOutputAt;
+
+    private QUnitTrace.Track track;
+
+    void setTrack(QUnitTrace.Track track) {
+        this.track = track;
+    }
+
+    QUnitTrace.Track getTrack() {
+        return track;
+    }
+
+    /**
+     * Records how long it took to start the process that runs the suite, if one had to be started for it
+     */
+    void spawned(long nanos) {
+        spawnNanos = nanos;
+
+        if (track != null) {
+            track.ended("process", "spawn", nanos);
+        }
+    }
+
+    /**
+     * Records how long the browser took to load the page, as reported by the driver. QUnit runs from here on.
+     */
+    void pageLoaded(long milliseconds) {
+        pageLoadMillis = milliseconds;
+        pageLoadedAt = System.nanoTime();
+
+        if (track != null) {
+            track.ended("page", "page load", milliseconds * 1000000);
+        }
+    }
+
+    /**
+     * Records that QUnit has reported that the suite is done
+     */
+    void done() {
+        if (pageLoadedAt != 0) {
+            executionNanos = System.nanoTime() - pageLoadedAt;
+
+            if (track != null) {
+                track.span("qunit", "QUnit", pageLoadedAt, executionNanos);
+            }
+        }
+    }
+
+    /**
+     * Records the test on the suite's track, if it has one. The driver only tells us how long it took, so it is taken
+     * to have ended when we heard about it.
+     */
+    void testDone(String testName, long milliseconds) {
+        if (track != null) {
+            track.ended("test", testName, milliseconds * 1000000);
+        }
+    }
+
+    void moduleDone(String moduleName, long milliseconds) {
+        if (track != null) {
+            track.ended("module", moduleName, milliseconds * 1000000);
+        }
+    }
+
+    void addOutput(long readNanos, long bytes) {
+        outputReadNanos += readNanos;
+        outputBytes += bytes;
+
+        lastOutputAt = System.nanoTime();
+        if (firstOutputAt == 0) {
+            firstOutputAt = lastOutputAt - readNanos;
+        }
+    }
+
+    void addParse(long nanos) {
+        parseNanos += nanos;
+    }
+
+    void setPeakResidentSetSize(long bytes) {
+        peakResidentSetSize = bytes;
+    }
+
+    long getSpawnNanos() {
+        return spawnNanos;
+    }
+
+    long getPageLoadMillis() {
+        return pageLoadMillis;
+    }
+
+    long getExecutionNanos() {
+        return executionNanos;
+    }
+
+    long getOutputReadNanos() {
+        return outputReadNanos;
+    }
+
+    long getParseNanos() {
+        return parseNanos;
+    }
+
+    /**
+     * Returns the {@link System#nanoTime()} at which we started waiting for the first output, or 0 if there wasn't any
+     */
+    long getFirstOutputAt() {
+        return firstOutputAt;
+    }
+
+    long getLastOutputAt() {
+        return lastOutputAt;
+    }
+
+    long getOutputBytes() {
+        return outputBytes;
+    }
+
+    /**
+     * Returns the most memory the browser process has used so far, in bytes, or -1 if we can't tell (on anything but
+     * Linux, or on Java 8)
+     */
+    long getPeakResidentSetSize() {
+        return peakResidentSetSize;
+    }
+}
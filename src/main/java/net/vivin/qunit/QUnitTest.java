@@ -1,6 +1,7 @@
 package net.vivin.qunit;
 
 import org.testng.ITest;
+import org.testng.ITestResult;
 import org.testng.annotations.Test;
 import static org.testng.Assert.*;
 
@@ -22,10 +23,37 @@ public class QUnitTest implements ITest {
     String testName;
     private QUnitTestResult result;
 
+    //How long the QUnit test and its module took in the browser, and how many assertions the test made
+    private Long testDuration;
+    private Long moduleDuration;
+    private int assertionCount;
+
+    //Where this assertion comes in its test, counting from zero
+    private int assertionIndex;
+
+    //How many times the QUnit test was run before this was its result
+    private int attempts;
+
+    //The HTML file the assertion was made in, relative to the root, if we know
+    private String path;
+
     public QUnitTest(String moduleName, String testName, QUnitTestResult result) {
+        this(moduleName, testName, result, null, null, 1, 0, 1, null);
+    }
+
+    /**
+     * Creates the assertion with everything the runner knows about the QUnit test it was made in
+     */
+    QUnitTest(String moduleName, String testName, QUnitTestResult result, Long testDuration, Long moduleDuration, int assertionCount, int assertionIndex, int attempts, String path) {
         this.moduleName = moduleName;
         this.testName = testName;
         this.result = result;
+        this.testDuration = testDuration;
+        this.moduleDuration = moduleDuration;
+        this.assertionCount = assertionCount;
+        this.assertionIndex = assertionIndex;
+        this.attempts = attempts;
+        this.path = path;
     }
 
     @Test
@@ -43,7 +71,82 @@ public class QUnitTest implements ITest {
     }
 
     public String getSource() {
-        return result.getSource();
+        return result == null ? null : result.getSource();
+    }
+
+    /**
+     * Returns how long the whole QUnit test (every assertion in it) took in the browser, in milliseconds, or null if
+     * we don't know
+     */
+    public Long getTestDuration() {
+        return testDuration;
+    }
+
+    /**
+     * Returns how long the module took in the browser, in milliseconds, or null if we don't know
+     */
+    public Long getModuleDuration() {
+        return moduleDuration;
+    }
+
+    /**
+     * Returns the HTML file that this assertion was made in, relative to the directory that was searched for suites, or
+     * null if we don't know
+     */
+    public String getPath() {
+        return path;
+    }
+
+    public int getAssertionCount() {
+        return assertionCount;
+    }
+
+    /**
+     * Returns how many times the QUnit test was run. This is only ever more than one when failing tests are run again
+     * (see {@link QUnitConfiguration#RERUN_FAILURES}), in which case the result is the one from the last attempt.
+     */
+    public int getAttempts() {
+        return attempts;
+    }
+
+    /**
+     * Returns the time to report for this assertion, in milliseconds. Every assertion is reported on its own, so each
+     * one gets an equal share of its test's duration, which means that the times of a test's assertions add up to how
+     * long the test took. The shares are whole milliseconds, so what doesn't divide evenly is spread over the test's
+     * assertions rather than lost (a 5 ms test with 10 assertions reports 1 ms for every other one). If the browser
+     * didn't tell us, this is how long TestNG took to run the assertion.
+     */
+    public long getReportedTime(ITestResult testResult) {
+        if (testDuration == null) {
+            return testResult.getEndMillis() - testResult.getStartMillis();
+        }
+
+        //The difference between where this assertion's share ends and where it starts, so the shares always add up
+        return testDuration * (assertionIndex + 1) / assertionCount - testDuration * assertionIndex / assertionCount;
+    }
+
+    /**
+     * Drops the assertion result once TestNG has run this test, if it passed. A passing assertion is only ever reported
+     * by its module and test name, so there's no reason to hold on to its message and values for the rest of the run.
+     */
+    void release() {
+        if (result != null && !result.isFailure()) {
+            result = null;
+        }
+    }
+
+    /**
+     * Returns the QUnitTest behind a TestNG result. That is the test instance itself when the tests were created by
+     * {@link QUnitTestSuiteRunner#run()}, and the data-provider parameter when they were streamed by
+     * {@link QUnitTestSuiteRunner#stream()}.
+     */
+    public static QUnitTest fromTestResult(ITestResult testResult) {
+        Object[] parameters = testResult.getParameters();
+        if (parameters != null && parameters.length > 0 && parameters[0] instanceof QUnitTest) {
+            return (QUnitTest) parameters[0];
+        }
+
+        return (QUnitTest) testResult.getMethod().getInstances()[0];
     }
 }
 
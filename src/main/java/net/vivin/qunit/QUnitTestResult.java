@@ -1,23 +1,27 @@
 package net.vivin.qunit;
 
 /**
- * POJO that represents a QUnit test result
+ * POJO that represents a QUnit test result. There is one of these for every assertion in a run, so it is kept small:
+ * the test number and the failure flag share a single int, and the runner can be asked to leave out the expected and
+ * actual values of passing assertions (see {@link QUnitConfiguration#DROP_PASSING_VALUES}).
  */
 public class QUnitTestResult {
 
-    private int testNumber;
+    private static final int FAILURE_BIT = 1;
+
+    //The test number, shifted left by one, with the lowest bit set for failures
+    private int testNumberAndFailure;
     private String message;
     private String expected;
     private String actual;
     private String source;
-    private boolean failure;
 
     public int getTestNumber() {
-        return testNumber;
+        return testNumberAndFailure >>> 1;
     }
 
     public void setTestNumber(int testNumber) {
-        this.testNumber = testNumber;
+        this.testNumberAndFailure = (testNumber << 1) | (testNumberAndFailure & FAILURE_BIT);
     }
 
     public String getMessage() {
@@ -53,10 +57,14 @@ public class QUnitTestResult {
     }
 
     public boolean isFailure() {
-        return failure;
+        return (testNumberAndFailure & FAILURE_BIT) != 0;
     }
 
     public void setFailure(boolean failure) {
-        this.failure = failure;
+        if (failure) {
+            testNumberAndFailure |= FAILURE_BIT;
+        } else {
+            testNumberAndFailure &= ~FAILURE_BIT;
+        }
     }
 }
@@ -0,0 +1,166 @@
+package net.vivin.qunit;
+
+import com.google.gson.Gson;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * The QUnit tests of a suite that are to be run, when not all of them are: tests picked by module and test name, or
+ * tests whose module and name match the patterns given with {@link QUnitConfiguration#MODULES} and
+ * {@link QUnitConfiguration#TESTS}. Engines hand the selection to the page as JSON, and QUnitTestSelection.js applies
+ * it as QUnit defines each test, so a test that isn't selected never runs at all. Engines find the selection of a suite
+ * with {@link QUnitTestSuiteResult#getSelection()}.
+ *
+ * Patterns are globs in which * matches any run of characters and ? any single character. They are handed to the page
+ * as regular expressions that JavaScript and Java read the same way.
+ */
+public class QUnitTestSelection {
+
+    private static final Gson gson = new Gson();
+
+    //Module and test name of every selected test
+    private List<List<String>> tests;
+
+    //Regular expressions, one of which the module (or the name) of a selected test must match
+    private List<String> modules;
+    private List<String> names;
+
+    private transient List<Pattern> modulePatterns;
+
+    /**
+     * Selects the tests whose module matches one of the module globs and whose name matches one of the test globs. An
+     * empty list of globs matches everything. Returns null if both are empty, since then every test is selected.
+     */
+    static QUnitTestSelection matching(List<String> moduleGlobs, List<String> testGlobs) {
+        if (moduleGlobs.isEmpty() && testGlobs.isEmpty()) {
+            return null;
+        }
+
+        QUnitTestSelection selection = new QUnitTestSelection();
+        selection.modules = moduleGlobs.isEmpty() ? null : toRegularExpressions(moduleGlobs);
+        selection.names = testGlobs.isEmpty() ? null : toRegularExpressions(testGlobs);
+
+        return selection;
+    }
+
+    /**
+     * Selects every test that has a failing assertion in the suite result. Returns null if the suite has a global
+     * failure, since a suite that crashed can only be run again as a whole.
+     */
+    static QUnitTestSelection failedTests(QUnitTestSuiteResult suiteResult) {
+        QUnitTestSelection selection = new QUnitTestSelection();
+        selection.tests = new ArrayList<List<String>>();
+
+        for (Map.Entry<String, LinkedHashMap<String, List<QUnitTestResult>>> moduleEntry : suiteResult.getResults().entrySet()) {
+            for (Map.Entry<String, List<QUnitTestResult>> testEntry : moduleEntry.getValue().entrySet()) {
+                for (QUnitTestResult result : testEntry.getValue()) {
+                    if (result.isFailure()) {
+                        if ("global failure".equals(testEntry.getKey())) {
+                            return null;
+                        }
+
+                        selection.tests.add(Arrays.asList(moduleEntry.getKey(), testEntry.getKey()));
+                        break;
+                    }
+                }
+            }
+        }
+
+        return selection;
+    }
+
+    /**
+     * Returns the module and test name of every selected test, or null if tests aren't selected by name
+     */
+    public List<List<String>> getTests() {
+        return tests;
+    }
+
+    /**
+     * Returns the regular expressions that select tests by module, or null if tests aren't selected by module
+     */
+    public List<String> getModules() {
+        return modules;
+    }
+
+    /**
+     * Returns the regular expressions that select tests by name, or null if tests aren't selected by name
+     */
+    public List<String> getNames() {
+        return names;
+    }
+
+    /**
+     * Returns true if tests of the module can be selected
+     */
+    boolean includesModule(String moduleName) {
+        if (modules == null) {
+            return true;
+        }
+
+        if (modulePatterns == null) {
+            List<Pattern> patterns = new ArrayList<Pattern>();
+            for (String module : modules) {
+                patterns.add(Pattern.compile(module));
+            }
+
+            modulePatterns = patterns;
+        }
+
+        for (Pattern pattern : modulePatterns) {
+            if (pattern.matcher(moduleName).matches()) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Returns the selection in the form that QUnitTestSelection.js takes
+     */
+    public String toJson() {
+        return gson.toJson(this);
+    }
+
+    static List<String> toRegularExpressions(List<String> globs) {
+        List<String> regularExpressions = new ArrayList<String>();
+        for (String glob : globs) {
+            StringBuilder regularExpression = new StringBuilder("^");
+            for (char c : glob.toCharArray()) {
+                if (c == '*') {
+                    regularExpression.append(".*");
+                } else if (c == '?') {
+                    regularExpression.append('.');
+                } else if ("\\^$.|+()[]{}/".indexOf(c) >= 0) {
+                    regularExpression.append('\\').append(c);
+                } else {
+                    regularExpression.append(c);
+                }
+            }
+
+            regularExpressions.add(regularExpression.append('$').toString());
+        }
+
+        return regularExpressions;
+    }
+
+    /**
+     * Returns the selection as URL-encoded JSON, which survives being passed on a command line or a line of input
+     * on any platform. QUnitTestDriver.js decodes it.
+     */
+    String encode() {
+        try {
+            return URLEncoder.encode(toJson(), "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
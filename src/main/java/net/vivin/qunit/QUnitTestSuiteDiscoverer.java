@@ -0,0 +1,211 @@
+package net.vivin.qunit;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import org.apache.commons.io.FileUtils;
+import org.testng.log4testng.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+
+/**
+ * Finds the QUnit HTML test files under a root directory. Files are selected with include globs, and anything that
+ * matches an exclude glob is left out; excluded directories are pruned as soon as the walk reaches them, so a vendor
+ * tree that is excluded is never listed at all. Globs are matched against paths relative to the root, and **&#47; also
+ * matches no directories at all, so **&#47;*Test.html matches a test at the top level and a&#47;**&#47;*Test.html one
+ * directly inside a.
+ *
+ * Optionally, the result of a walk is written to a manifest together with the modification times of every directory
+ * that was visited. As long as none of those directories have changed (which is what happens when a file is added,
+ * removed, or renamed in them), later runs take the list of files from the manifest instead of walking the tree again.
+ */
+class QUnitTestSuiteDiscoverer {
+
+    private static final Logger logger = Logger.getLogger(QUnitTestSuiteDiscoverer.class);
+
+    private final Path root;
+    private final List<String> includes;
+    private final List<String> excludes;
+    private final File manifestFile;
+
+    private final List<PathMatcher> includeMatchers;
+    private final List<PathMatcher> excludeMatchers;
+
+    QUnitTestSuiteDiscoverer(File root, List<String> includes, List<String> excludes, File manifestFile) {
+        this.root = root.toPath().toAbsolutePath().normalize();
+        this.includes = includes;
+        this.excludes = excludes;
+        this.manifestFile = manifestFile;
+
+        this.includeMatchers = createMatchers(includes);
+        this.excludeMatchers = createMatchers(excludes);
+    }
+
+    /**
+     * Returns the test files, sorted by their path relative to the root so that the order is the same on every
+     * machine
+     */
+    List<File> discover() throws IOException {
+        if (manifestFile != null) {
+            List<File> files = readManifest();
+            if (files != null) {
+                return files;
+            }
+        }
+
+        final List<String> files = new ArrayList<String>();
+        final Map<String, Long> directories = new TreeMap<String, Long>();
+
+        if (Files.isDirectory(root)) {
+            Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult preVisitDirectory(Path directory, BasicFileAttributes attributes) {
+                    Path relativePath = root.relativize(directory);
+
+                    //Check the directory itself as well as what would be inside it, so that both "**/vendor" and
+                    //"**/vendor/**" prune the whole directory
+                    if (relativePath.toString().length() > 0 && (matches(excludeMatchers, relativePath) || matches(excludeMatchers, relativePath.resolve("_")))) {
+                        return FileVisitResult.SKIP_SUBTREE;
+                    }
+
+                    directories.put(relativePath.toString(), attributes.lastModifiedTime().toMillis());
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) {
+                    Path relativePath = root.relativize(file);
+
+                    if (attributes.isRegularFile() && matches(includeMatchers, relativePath) && !matches(excludeMatchers, relativePath)) {
+                        files.add(relativePath.toString());
+                    }
+
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(Path file, IOException e) {
+                    logger.warn("Unable to read " + file + " while looking for QUnit tests", e);
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        }
+
+        Collections.sort(files);
+
+        if (manifestFile != null) {
+            writeManifest(files, directories);
+        }
+
+        return toFiles(files);
+    }
+
+    private List<File> readManifest() {
+        if (!manifestFile.isFile()) {
+            return null;
+        }
+
+        Manifest manifest;
+        try {
+            manifest = new Gson().fromJson(FileUtils.readFileToString(manifestFile, "UTF-8"), Manifest.class);
+        } catch (IOException e) {
+            logger.warn("Unable to read discovery manifest " + manifestFile, e);
+            return null;
+        } catch (JsonParseException e) {
+            logger.warn("Ignoring corrupt discovery manifest " + manifestFile, e);
+            return null;
+        }
+
+        if (manifest == null || manifest.files == null || manifest.directories == null ||
+                !root.toString().equals(manifest.root) || !includes.equals(manifest.includes) || !excludes.equals(manifest.excludes)) {
+            return null;
+        }
+
+        for (Map.Entry<String, Long> directory : manifest.directories.entrySet()) {
+            File file = root.resolve(directory.getKey()).toFile();
+            if (!file.isDirectory() || file.lastModified() != directory.getValue()) {
+                return null;
+            }
+        }
+
+        return toFiles(manifest.files);
+    }
+
+    private void writeManifest(List<String> files, Map<String, Long> directories) {
+        Manifest manifest = new Manifest();
+        manifest.root = root.toString();
+        manifest.includes = includes;
+        manifest.excludes = excludes;
+        manifest.directories = directories;
+        manifest.files = files;
+
+        try {
+            FileUtils.writeStringToFile(manifestFile, new Gson().toJson(manifest), "UTF-8");
+
+            //If the manifest lives inside the tree, creating it has just modified a directory we recorded. Overwriting
+            //an existing file doesn't, so we record the new time and write the manifest once more.
+            Path parent = manifestFile.getAbsoluteFile().toPath().normalize().getParent();
+            if (parent != null && parent.startsWith(root)) {
+                String relativePath = root.relativize(parent).toString();
+                Long lastModified = directories.get(relativePath);
+
+                if (lastModified != null && lastModified != parent.toFile().lastModified()) {
+                    directories.put(relativePath, parent.toFile().lastModified());
+                    FileUtils.writeStringToFile(manifestFile, new Gson().toJson(manifest), "UTF-8");
+                }
+            }
+        } catch (IOException e) {
+            logger.warn("Unable to write discovery manifest " + manifestFile, e);
+        }
+    }
+
+    private List<File> toFiles(List<String> relativePaths) {
+        List<File> files = new ArrayList<File>(relativePaths.size());
+        for (String relativePath : relativePaths) {
+            files.add(root.resolve(relativePath).toFile());
+        }
+
+        return files;
+    }
+
+    static List<PathMatcher> createMatchers(List<String> globs) {
+        FileSystem fileSystem = FileSystems.getDefault();
+        List<PathMatcher> matchers = new ArrayList<PathMatcher>();
+
+        for (String glob : globs) {
+            matchers.add(fileSystem.getPathMatcher("glob:" + glob));
+
+            //In a Java glob, **/ needs at least one directory to match
+            String withoutDirectories = glob.replaceAll("(^|/)\\*\\*/", "$1");
+            if (!withoutDirectories.equals(glob)) {
+                matchers.add(fileSystem.getPathMatcher("glob:" + withoutDirectories));
+            }
+        }
+
+        return matchers;
+    }
+
+    static boolean matches(List<PathMatcher> matchers, Path path) {
+        for (PathMatcher matcher : matchers) {
+            if (matcher.matches(path)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * What we write to the discovery manifest
+     */
+    private static class Manifest {
+        private String root;
+        private List<String> includes;
+        private List<String> excludes;
+        private Map<String, Long> directories;
+        private List<String> files;
+    }
+}
@@ -0,0 +1,579 @@
+package net.vivin.qunit;
+
+import org.apache.commons.io.FileUtils;
+import org.testng.TestNGException;
+import org.testng.log4testng.Logger;
+
+import java.io.*;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A single run of all the QUnit HTML test files that we can find. Suites are started on a pool of threads as soon as
+ * the execution is created, in the order given by the configured {@link QUnitSchedulingPolicy}, and their results are
+ * handed out in that same order, each one as soon as it (and every suite before it) is done. Callers that gather the
+ * whole run put the results back into discovery order with {@link #sortInDiscoveryOrder}, so that the policy only
+ * changes when suites run and never what is reported.
+ *
+ * Only a bounded number of suites are ever scheduled ahead of the one that is being consumed, so a consumer that
+ * processes and then drops each result keeps only a handful of suites in memory at any time.
+ *
+ * When the run is sharded, only this node's share of the discovered files is run (see {@link QUnitTestSuiteSharder}).
+ * How long each suite took, and whether it failed, is written to the suite history when the execution is closed, for
+ * the next run to use. A shard writes to a history file of its own, named after the shard.
+ *
+ * Suites that opt in to it are run inside the JVM by {@link QUnitJvmEngine}; everything else runs on the configured
+ * engine.
+ *
+ * With {@link QUnitConfiguration#FAIL_FAST}, the first failing assertion aborts the run: no more suites are started,
+ * the ones that are running are killed, and a last result that says how much of the run was left out is handed out
+ * after the results that were gathered.
+ *
+ * With {@link QUnitConfiguration#MODULES} or {@link QUnitConfiguration#TESTS}, only the matching tests are run, and
+ * suites that can't contain a matching module are left out before any of them are started.
+ *
+ * With {@link QUnitConfiguration#RERUN_FAILURES}, the tests that fail in a suite are run again on their own, and their
+ * new results are merged into the suite's result before it's handed out. Fail-fast then waits for a suite's last
+ * attempt, so a test that passes on a rerun doesn't abort the run.
+ *
+ * The configured {@link QUnitResultListener}s are told about every suite and every assertion as they come in, and what
+ * every suite cost is added to the {@link QUnitMetrics} of the run.
+ */
+class QUnitTestSuiteExecution implements Iterator<QUnitTestSuiteResult>, Closeable {
+
+    private static final Logger logger = Logger.getLogger(QUnitTestSuiteExecution.class);
+
+    private static String extractedTestDriver;
+
+    private final String pathToTestDriver;
+
+    private final QUnitResultStreamParser parser = new QUnitResultStreamParser(new QUnitStringPool(), !QUnitConfiguration.isDropPassingValues());
+
+    private final List<File> htmlTestFiles;
+    private final List<String> relativePaths;
+    private final Map<String, Integer> discoveryIndexes = new HashMap<String, Integer>();
+    private final ExecutorService executor;
+    private final QUnitBrowserEngine engine;
+    private final QUnitBrowserEngineContext context;
+    private QUnitJvmEngine jvmEngine;
+    private final List<PathMatcher> jvmIncludeMatchers = QUnitTestSuiteDiscoverer.createMatchers(QUnitConfiguration.getJvmIncludes());
+    private final QUnitResultCache resultCache;
+    private final QUnitProcessWatchdog watchdog = new QUnitProcessWatchdog();
+    private final QUnitSuiteHistory history;
+    private final QUnitResultDispatcher dispatcher = new QUnitResultDispatcher(QUnitResultDispatcher.createListeners(QUnitConfiguration.getListeners()));
+    private final QUnitMetrics metrics = QUnitMetrics.get();
+    private final QUnitFailFast failFast = QUnitConfiguration.isFailFast() ? new QUnitFailFast(watchdog) : null;
+    private final int rerunFailures = QUnitConfiguration.getRerunFailures();
+    private final QUnitTestSelection selection = QUnitTestSelection.matching(QUnitConfiguration.getModules(), QUnitConfiguration.getTests());
+
+    private final int suiteTimeoutInSeconds = QUnitConfiguration.getSuiteTimeoutInSeconds();
+    private final int runTimeoutInSeconds = QUnitConfiguration.getRunTimeoutInSeconds();
+    private final long runDeadline;
+
+    private final int lookahead;
+    private final LinkedList<Future<QUnitTestSuiteResult>> scheduled = new LinkedList<Future<QUnitTestSuiteResult>>();
+    private int nextToSchedule;
+
+    //Suites that were scheduled, but not run because the run had already been aborted by then
+    private final AtomicInteger notRun = new AtomicInteger();
+    private boolean abortReported;
+
+    QUnitTestSuiteExecution() throws IOException, URISyntaxException {
+        runDeadline = runTimeoutInSeconds > 0 ? System.currentTimeMillis() + runTimeoutInSeconds * 1000L : 0;
+
+        File root = QUnitConfiguration.getRoot();
+        if (root == null) {
+            root = new File(new File(QUnitTestSuiteRunner.class.getClassLoader().getResource("").getPath()).getPath());
+        }
+
+        File metricsFile = QUnitConfiguration.getMetricsFile();
+        metrics.startRun(metricsFile != null ? metricsFile : new File(root.getAbsoluteFile().getParentFile(), "qunit-metrics" + QUnitConfiguration.getShardSuffix() + ".json"), QUnitConfiguration.getTraceFile());
+
+        long start = System.nanoTime();
+        pathToTestDriver = getTestDriverPath();
+        metrics.record(QUnitMetrics.BINARY_RESOLUTION, System.nanoTime() - start);
+
+        start = System.nanoTime();
+        List<File> discoveredFiles = new QUnitTestSuiteDiscoverer(root, QUnitConfiguration.getIncludes(), QUnitConfiguration.getExcludes(), QUnitConfiguration.getDiscoveryManifest()).discover();
+        metrics.record(QUnitMetrics.DISCOVERY, System.nanoTime() - start);
+
+        //Only a history that was handed to every node is the same on all of them, so only that one can be used to split
+        //the suites. A shard never writes to it, since what the shard knows covers only its own suites
+        File sharedHistoryFile = QUnitConfiguration.getHistoryFile();
+        File historyFile = getShardFile(sharedHistoryFile != null ? sharedHistoryFile : new File(root.getAbsoluteFile().getParentFile(), "qunit-history.json"));
+        history = QUnitSuiteHistory.load(sharedHistoryFile != null ? sharedHistoryFile : historyFile, historyFile);
+
+        //Suites are known by their path relative to the root, which is the same on every node of a sharded run
+        Map<String, File> filesByPath = new LinkedHashMap<String, File>();
+        for (File discoveredFile : discoveredFiles) {
+            filesByPath.put(getRelativePath(root, discoveredFile), discoveredFile);
+        }
+
+        htmlTestFiles = new ArrayList<File>();
+        List<String> shard = new QUnitTestSuiteSharder(QUnitConfiguration.getShardIndex(), QUnitConfiguration.getShardCount(), sharedHistoryFile != null ? history : null).select(new ArrayList<String>(filesByPath.keySet()));
+        if (selection != null && selection.getModules() != null) {
+            start = System.nanoTime();
+            File moduleIndexFile = QUnitConfiguration.getModuleIndexFile();
+            shard = selectByModule(shard, filesByPath, QUnitModuleIndex.load(moduleIndexFile != null ? moduleIndexFile : new File(root.getAbsoluteFile().getParentFile(), "qunit-module-index.json")));
+            metrics.record(QUnitMetrics.MODULE_INDEX, System.nanoTime() - start);
+        }
+
+        for (String relativePath : shard) {
+            discoveryIndexes.put(relativePath, discoveryIndexes.size());
+        }
+
+        relativePaths = QUnitConfiguration.getSchedulingPolicy().order(shard, history);
+        for (String relativePath : relativePaths) {
+            htmlTestFiles.add(filesByPath.get(relativePath));
+        }
+
+        //Engines run suites independently of each other, so we can run as many of them at the same time as we have
+        //threads. We hold on to the futures in the order the suites were started so that the results come back in the
+        //same order regardless of which suite finishes first
+        int threadCount = Math.min(QUnitConfiguration.getThreadCount(), Math.max(htmlTestFiles.size(), 1));
+        executor = Executors.newFixedThreadPool(threadCount, new SuiteThreadFactory());
+
+        //Keep every thread busy while the consumer is working through the oldest result, but don't race ahead of it
+        lookahead = threadCount * 2;
+
+        if (QUnitConfiguration.isCacheEnabled()) {
+            resultCache = new QUnitResultCache(QUnitConfiguration.getCacheDirectory(), QUnitConfiguration.getCacheMaxSizeInBytes(), QUnitConfiguration.isCacheRefresh(), pathToTestDriver, QUnitConfiguration.isDropPassingValues());
+        } else {
+            resultCache = null;
+        }
+
+        //The engine is only started once the run has been worked out, so that a run that can't even be started doesn't
+        //leave an engine behind (whatever it holds on to), and it's closed again if the run fails to start after all
+        context = new QUnitBrowserEngineContext(pathToTestDriver, parser, watchdog, this, failFast);
+        engine = createEngine(QUnitConfiguration.getEngine());
+
+        boolean started = false;
+        try {
+            engine.start(context);
+            dispatcher.runStarted(htmlTestFiles.size());
+            schedule();
+            started = true;
+        } finally {
+            if (!started) {
+                executor.shutdownNow();
+                engine.close();
+                watchdog.close();
+            }
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        return !scheduled.isEmpty() || (isAborted() && !abortReported);
+    }
+
+    /**
+     * Blocks until the next suite in scheduling order is done, and returns its result
+     */
+    @Override
+    public QUnitTestSuiteResult next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+
+        if (scheduled.isEmpty()) {
+            abortReported = true;
+            return createAbortedResult();
+        }
+
+        Future<QUnitTestSuiteResult> future = scheduled.removeFirst();
+        schedule();
+
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new TestNGException(e);
+        } catch (ExecutionException e) {
+            throw new TestNGException(e.getCause());
+        }
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+        engine.close();
+        synchronized (this) {
+            if (jvmEngine != null) {
+                jvmEngine.close();
+            }
+        }
+
+        watchdog.close();
+        history.save();
+        metrics.write();
+
+        dispatcher.runDone();
+        dispatcher.close();
+    }
+
+    /**
+     * Creates one of the built-in engines, or else an instance of the named class
+     */
+    static QUnitBrowserEngine createEngine(String name) {
+        if ("phantomjs".equals(name)) {
+            return new QUnitPhantomJSEngine();
+        } else if ("pooled".equals(name)) {
+            return new QUnitPooledPhantomJSEngine();
+        }
+
+        try {
+            return Class.forName(name).asSubclass(QUnitBrowserEngine.class).newInstance();
+        } catch (ClassNotFoundException e) {
+            throw new IllegalArgumentException("Unknown browser engine " + name + "; expected phantomjs, pooled, or the name of a class that implements " + QUnitBrowserEngine.class.getName(), e);
+        } catch (ClassCastException e) {
+            throw new IllegalArgumentException(name + " does not implement " + QUnitBrowserEngine.class.getName(), e);
+        } catch (InstantiationException e) {
+            throw new IllegalArgumentException("Unable to create browser engine " + name, e);
+        } catch (IllegalAccessException e) {
+            throw new IllegalArgumentException("Unable to create browser engine " + name, e);
+        }
+    }
+
+    /**
+     * Returns the path to QUnitTestDriver.js. PhantomJS can only run it from a file, so when we are running from a jar
+     * the driver (and QUnitTestSuite.js and QUnitTestSelection.js, which sit next to it) is copied out to a temporary
+     * directory first.
+     */
+    private static synchronized String getTestDriverPath() throws IOException, URISyntaxException {
+        URL testDriver = QUnitTestSuiteRunner.class.getResource("/qunit/QUnitTestDriver.js");
+        if ("file".equals(testDriver.getProtocol())) {
+            return Paths.get(testDriver.toURI()).toString();
+        }
+
+        if (extractedTestDriver == null) {
+            File directory = Files.createTempDirectory("qunit-testng").toFile();
+            directory.deleteOnExit();
+
+            for (String script : new String[]{"QUnitTestDriver.js", "QUnitTestSuite.js", "QUnitTestSelection.js"}) {
+                File file = new File(directory, script);
+                FileUtils.copyURLToFile(QUnitTestSuiteRunner.class.getResource("/qunit/" + script), file);
+                file.deleteOnExit();
+            }
+
+            extractedTestDriver = new File(directory, "QUnitTestDriver.js").getPath();
+        }
+
+        return extractedTestDriver;
+    }
+
+    /**
+     * Leaves out the suites that can't contain any of the selected modules, and updates the module index
+     */
+    private List<String> selectByModule(List<String> relativePaths, Map<String, File> filesByPath, QUnitModuleIndex moduleIndex) throws IOException {
+        List<String> selected = new ArrayList<String>();
+
+        for (String relativePath : relativePaths) {
+            List<String> modules = moduleIndex.getModules(relativePath, filesByPath.get(relativePath));
+            if (modules == null) {
+                selected.add(relativePath);
+                continue;
+            }
+
+            for (String module : modules) {
+                if (selection.includesModule(module)) {
+                    selected.add(relativePath);
+                    break;
+                }
+            }
+        }
+
+        moduleIndex.save();
+        logger.info("Left out " + (relativePaths.size() - selected.size()) + " of " + relativePaths.size() + " QUnit HTML files that have none of the selected modules");
+
+        return selected;
+    }
+
+    private void schedule() {
+        while (!isAborted() && scheduled.size() < lookahead && nextToSchedule < htmlTestFiles.size()) {
+            String absolutePath = htmlTestFiles.get(nextToSchedule).getAbsolutePath();
+            scheduled.add(executor.submit(new QUnitTestSuiteTask(absolutePath, relativePaths.get(nextToSchedule))));
+            nextToSchedule++;
+        }
+    }
+
+    /**
+     * Returns the engine that runs the suite: the JVM engine if the suite has opted in to it, and the configured one
+     * otherwise. The HTML is only read if it hasn't been already.
+     */
+    private QUnitBrowserEngine getEngine(String relativePath, File htmlTestFile, String html) throws IOException {
+        if (QUnitTestSuiteDiscoverer.matches(jvmIncludeMatchers, Paths.get(relativePath)) || QUnitJvmEngine.isJvmSuite(html != null ? html : FileUtils.readFileToString(htmlTestFile, "UTF-8"))) {
+            return getJvmEngine();
+        }
+
+        return engine;
+    }
+
+    /**
+     * Returns the JVM engine, which is only started once the first suite needs it, since most runs have none
+     */
+    private synchronized QUnitJvmEngine getJvmEngine() throws IOException {
+        if (jvmEngine == null) {
+            QUnitJvmEngine startedEngine = new QUnitJvmEngine();
+            startedEngine.start(context);
+            jvmEngine = startedEngine;
+        }
+
+        return jvmEngine;
+    }
+
+    /**
+     * Returns the file with the shard suffix added before its extension, or the file itself when the run isn't sharded
+     */
+    private static File getShardFile(File file) {
+        String suffix = QUnitConfiguration.getShardSuffix();
+        if (suffix.isEmpty()) {
+            return file;
+        }
+
+        String name = file.getName();
+        int extension = name.lastIndexOf('.');
+        return new File(file.getParentFile(), extension < 0 ? name + suffix : name.substring(0, extension) + suffix + name.substring(extension));
+    }
+
+    private static String getRelativePath(File root, File file) {
+        return root.getAbsoluteFile().toPath().normalize().relativize(file.getAbsoluteFile().toPath().normalize()).toString().replace(File.separatorChar, '/');
+    }
+
+    private boolean isAborted() {
+        return failFast != null && failFast.isAborted();
+    }
+
+    /**
+     * Returns the result that marks a run as aborted: a single failure that names the suite that failed first, and says
+     * how many suites were never run
+     */
+    private QUnitTestSuiteResult createAbortedResult() {
+        int suitesNotRun = notRun.get() + htmlTestFiles.size() - nextToSchedule;
+        String firstFailure = failFast.getFirstFailure();
+
+        QUnitTestResult result = new QUnitTestResult();
+        result.setTestNumber(1);
+        result.setMessage("The run was aborted after the first failure, in " + firstFailure + "; " + suitesNotRun + " of " + htmlTestFiles.size() + " suites were not run");
+        result.setSource("    at " + firstFailure);
+        result.setFailure(true);
+
+        QUnitTestSuiteResult suiteResult = new QUnitTestSuiteResult();
+        suiteResult.addResult("global", "run aborted", result);
+
+        return suiteResult;
+    }
+
+    /**
+     * Puts the results of this execution back into the order in which their suites were discovered. A result that
+     * doesn't belong to a suite (the one that says the run was aborted) stays at the end.
+     */
+    void sortInDiscoveryOrder(List<QUnitTestSuiteResult> suiteResults) {
+        Collections.sort(suiteResults, new Comparator<QUnitTestSuiteResult>() {
+            @Override
+            public int compare(QUnitTestSuiteResult o1, QUnitTestSuiteResult o2) {
+                return Integer.compare(getDiscoveryIndex(o1), getDiscoveryIndex(o2));
+            }
+        });
+    }
+
+    private int getDiscoveryIndex(QUnitTestSuiteResult suiteResult) {
+        Integer discoveryIndex = suiteResult.getPath() == null ? null : discoveryIndexes.get(suiteResult.getPath());
+        return discoveryIndex == null ? Integer.MAX_VALUE : discoveryIndex;
+    }
+
+    /**
+     * Returns the time by which a suite that starts now must be done, or 0 if there is no limit
+     */
+    long getSuiteDeadline() {
+        long deadline = suiteTimeoutInSeconds > 0 ? System.currentTimeMillis() + suiteTimeoutInSeconds * 1000L : 0;
+
+        if (runDeadline > 0 && (deadline == 0 || runDeadline < deadline)) {
+            return runDeadline;
+        }
+
+        return deadline;
+    }
+
+    String getDeadlineMessage(String absolutePath) {
+        if (isAborted()) {
+            return absolutePath + " was killed because the run was aborted after the first failure, in " + failFast.getFirstFailure() + "; results are incomplete";
+        }
+
+        if (runDeadline > 0 && System.currentTimeMillis() >= runDeadline) {
+            return absolutePath + " was killed because the run did not finish within " + runTimeoutInSeconds + " seconds; results are incomplete";
+        }
+
+        return absolutePath + " was killed because it did not finish within " + suiteTimeoutInSeconds + " seconds; results are incomplete";
+    }
+
+    /**
+     * Runs a single QUnit HTML test file on its engine. The thread that runs this task waits for the engine until the
+     * suite is done. If the result cache is enabled and has a result for the file as it is now, that result is returned
+     * instead.
+     */
+    private class QUnitTestSuiteTask implements Callable<QUnitTestSuiteResult> {
+
+        private final String absolutePath;
+        private final String relativePath;
+        private boolean cached;
+        private QUnitTrace.Track track;
+
+        QUnitTestSuiteTask(String absolutePath, String relativePath) {
+            this.absolutePath = absolutePath;
+            this.relativePath = relativePath;
+        }
+
+        @Override
+        public QUnitTestSuiteResult call() throws Exception {
+            dispatcher.suiteStarted(relativePath);
+
+            long start = System.nanoTime();
+            track = metrics.newTrack(relativePath);
+
+            try {
+                QUnitTestSuiteResult suiteResult = run();
+                if (track != null) {
+                    track.span("suite", relativePath, start, System.nanoTime() - start);
+                }
+
+                metrics.recordSuite(relativePath, suiteResult.getDuration(), suiteResult.getAssertionCount(), cached, suiteResult.getMetricsIfMeasured());
+                dispatcher.suiteDone(relativePath, suiteResult);
+
+                return suiteResult;
+            } catch (Exception e) {
+                dispatcher.suiteError(relativePath, e);
+                throw e;
+            }
+        }
+
+        private QUnitTestSuiteResult run() throws Exception {
+            //Suites that were scheduled before the run was aborted are left out; the aborted result counts them
+            if (isAborted()) {
+                notRun.incrementAndGet();
+
+                QUnitTestSuiteResult suiteResult = new QUnitTestSuiteResult();
+                suiteResult.setPath(relativePath);
+
+                return suiteResult;
+            }
+
+            if (runDeadline > 0 && System.currentTimeMillis() >= runDeadline) {
+                QUnitTestSuiteResult suiteResult = QUnitTestSuiteResult.createGlobalFailure(absolutePath + " was not run because the run did not finish within " + runTimeoutInSeconds + " seconds", "    at " + absolutePath);
+                suiteResult.setPath(relativePath);
+                dispatcher.assertions(relativePath, suiteResult);
+
+                return suiteResult;
+            }
+
+            //The cache key needs the HTML anyway, so the engine is picked from the same copy
+            File htmlTestFile = new File(absolutePath);
+            String html = resultCache != null ? FileUtils.readFileToString(htmlTestFile, "UTF-8") : null;
+            QUnitBrowserEngine suiteEngine = getEngine(relativePath, htmlTestFile, html);
+
+            String cacheKey = null;
+            if (resultCache != null) {
+                cacheKey = resultCache.key(htmlTestFile, html, suiteEngine.getIdentity(), selection);
+
+                QUnitTestSuiteResult cachedResult = resultCache.lookup(cacheKey);
+                if (cachedResult != null) {
+                    //The same content may live at more than one path, so the stored path can't be trusted. The stored
+                    //duration is the one from when the suite actually ran, which is what we want to report.
+                    cachedResult.setPath(relativePath);
+                    dispatcher.assertions(relativePath, cachedResult);
+                    cached = true;
+
+                    if (failFast != null && cachedResult.hasFailures()) {
+                        failFast.failed(relativePath);
+                    }
+
+                    return cachedResult;
+                }
+            }
+
+            long start = System.currentTimeMillis();
+
+            //Listeners hear about assertions as the engine adds them, so the path has to be known up front
+            QUnitTestSuiteResult suiteResult = new QUnitTestSuiteResult();
+            suiteResult.setPath(relativePath);
+            suiteResult.setDispatcher(dispatcher);
+            suiteResult.getMetrics().setTrack(track);
+            suiteResult.setSelection(selection);
+
+            //A test that fails may still pass when it's run again, so then only the last attempt can abort the run
+            if (rerunFailures == 0) {
+                suiteResult.setFailFast(failFast);
+            }
+            try {
+                suiteEngine.runTestSuite(absolutePath, getSuiteDeadline(), suiteResult);
+            } finally {
+                suiteResult.setDispatcher(null);
+                suiteResult.setFailFast(null);
+            }
+
+            for (int attempt = 0; attempt < rerunFailures && suiteResult.hasFailures() && !isAborted(); attempt++) {
+                rerunFailures(suiteEngine, suiteResult);
+            }
+
+            if (failFast != null && rerunFailures > 0 && suiteResult.hasFailures()) {
+                failFast.failed(relativePath);
+            }
+
+            suiteResult.setDuration(System.currentTimeMillis() - start);
+
+            //A suite that was killed because another one failed says nothing about how long it takes, or whether it
+            //passes
+            if (!isAborted() || relativePath.equals(failFast.getFirstFailure())) {
+                history.record(relativePath, suiteResult.getDuration(), suiteResult.hasFailures());
+            }
+
+            if (resultCache != null) {
+                resultCache.store(cacheKey, suiteResult);
+            }
+
+            return suiteResult;
+        }
+
+        /**
+         * Runs the failing tests of the suite again, or every selected test if it crashed, and merges their new results
+         * into the suite result. Listeners have already heard about the failures and aren't told about the rerun.
+         */
+        private void rerunFailures(QUnitBrowserEngine suiteEngine, QUnitTestSuiteResult suiteResult) throws IOException, InterruptedException {
+            QUnitTestSelection failedTests = QUnitTestSelection.failedTests(suiteResult);
+
+            QUnitTestSuiteResult rerun = new QUnitTestSuiteResult();
+            rerun.setPath(relativePath);
+            rerun.setSelection(failedTests != null ? failedTests : selection);
+            rerun.getMetrics().setTrack(track);
+
+            suiteEngine.runTestSuite(absolutePath, getSuiteDeadline(), rerun);
+            suiteResult.merge(rerun, failedTests == null);
+        }
+    }
+
+    /**
+     * Creates daemon threads so that a stuck suite can never keep the JVM alive once TestNG is done
+     */
+    private static class SuiteThreadFactory implements ThreadFactory {
+
+        private final AtomicInteger threadNumber = new AtomicInteger(1);
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "qunit-suite-" + threadNumber.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -1,5 +1,7 @@
 package net.vivin.qunit;
 
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
@@ -17,6 +19,29 @@ public class QUnitTestSuiteResult {
     //Using a concrete type on the inner map because I want to preserve order
     private Map<String, LinkedHashMap<String, List<QUnitTestResult>>> results = new LinkedHashMap<String,LinkedHashMap<String, List<QUnitTestResult>>>();
 
+    //How long each test and each module took in the browser, in milliseconds, as reported by QUnitTestDriver.js
+    private Map<String, Map<String, Long>> testDurations = new HashMap<String, Map<String, Long>>();
+    private Map<String, Long> moduleDurations = new HashMap<String, Long>();
+
+    //How many times each test that was run more than once was run, when failing tests are run again
+    private Map<String, Map<String, Integer>> attempts = new HashMap<String, Map<String, Integer>>();
+
+    //Path of the HTML file relative to the test classpath root, and how long it took to run in milliseconds
+    private String path;
+    private long duration;
+
+    //Told about every assertion and test as it's added, while the suite is running. Never cached.
+    private transient QUnitResultDispatcher dispatcher;
+
+    //Told about the first failing assertion when the run is to be aborted on it. Never cached.
+    private transient QUnitFailFast failFast;
+
+    //The tests to run, if not all of them. Never cached.
+    private transient QUnitTestSelection selection;
+
+    //What running the suite cost; only there if it was run rather than replayed from the cache
+    private transient QUnitSuiteMetrics metrics;
+
     public Map<String, LinkedHashMap<String, List<QUnitTestResult>>> getResults() {
         return results;
     }
@@ -24,5 +49,246 @@ public class QUnitTestSuiteResult {
     public void setResults(Map<String, LinkedHashMap<String, List<QUnitTestResult>>> results) {
         this.results = results;
     }
-}
 
+    /**
+     * Returns how long the test took to run in the browser, in milliseconds, or null if the driver didn't report it
+     * (global failures, for example)
+     */
+    public Long getTestDuration(String moduleName, String testName) {
+        Map<String, Long> tests = testDurations == null ? null : testDurations.get(moduleName);
+        return tests == null ? null : tests.get(testName);
+    }
+
+    /**
+     * Returns how long the module took to run in the browser, in milliseconds, or null if the driver didn't report it
+     */
+    public Long getModuleDuration(String moduleName) {
+        return moduleDurations == null ? null : moduleDurations.get(moduleName);
+    }
+
+    void setTestDuration(String moduleName, String testName, long duration) {
+        Map<String, Long> tests = testDurations.get(moduleName);
+        if (tests == null) {
+            tests = new HashMap<String, Long>();
+            testDurations.put(moduleName, tests);
+        }
+
+        tests.put(testName, duration);
+
+        if (dispatcher != null) {
+            dispatcher.testDone(path, moduleName, testName, duration);
+        }
+    }
+
+    void setModuleDuration(String moduleName, long duration) {
+        moduleDurations.put(moduleName, duration);
+    }
+
+    /**
+     * Returns how many times the test was run. Tests are only run more than once when failing tests are run again (see
+     * {@link QUnitConfiguration#RERUN_FAILURES}).
+     */
+    public int getAttempts(String moduleName, String testName) {
+        Map<String, Integer> tests = attempts == null ? null : attempts.get(moduleName);
+        Integer testAttempts = tests == null ? null : tests.get(testName);
+
+        return testAttempts == null ? 1 : testAttempts;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public void setPath(String path) {
+        this.path = path;
+    }
+
+    public long getDuration() {
+        return duration;
+    }
+
+    public void setDuration(long duration) {
+        this.duration = duration;
+    }
+
+    /**
+     * Adds a single assertion result, keeping modules and tests in the order in which they were first reported
+     */
+    void addResult(String moduleName, String testName, QUnitTestResult result) {
+        LinkedHashMap<String, List<QUnitTestResult>> tests = results.get(moduleName);
+        if (tests == null) {
+            tests = new LinkedHashMap<String, List<QUnitTestResult>>();
+            results.put(moduleName, tests);
+        }
+
+        List<QUnitTestResult> testResults = tests.get(testName);
+        if (testResults == null) {
+            testResults = new ArrayList<QUnitTestResult>();
+            tests.put(testName, testResults);
+        }
+
+        testResults.add(result);
+
+        if (dispatcher != null) {
+            dispatcher.assertion(path, moduleName, testName, result);
+        }
+
+        if (failFast != null && result.isFailure()) {
+            failFast.failed(path);
+        }
+    }
+
+    /**
+     * Returns the tests that the engine is to run, or null if it's to run all of them
+     */
+    public QUnitTestSelection getSelection() {
+        return selection;
+    }
+
+    void setSelection(QUnitTestSelection selection) {
+        this.selection = selection;
+    }
+
+    /**
+     * Merges the result of running some (or all) of the suite's tests again into this one. Every test that was run
+     * again takes its assertions and duration from the rerun, and has its attempt counted; if the whole suite was run
+     * again, the rerun replaces everything. Tests keep their place, and assertions are numbered again in order.
+     */
+    void merge(QUnitTestSuiteResult rerun, boolean whole) {
+        Map<String, Map<String, Integer>> previousAttempts = attempts;
+        if (whole) {
+            results = new LinkedHashMap<String, LinkedHashMap<String, List<QUnitTestResult>>>();
+            testDurations = new HashMap<String, Map<String, Long>>();
+            moduleDurations = new HashMap<String, Long>(rerun.moduleDurations);
+            attempts = new HashMap<String, Map<String, Integer>>();
+        }
+
+        for (Map.Entry<String, LinkedHashMap<String, List<QUnitTestResult>>> moduleEntry : rerun.getResults().entrySet()) {
+            String moduleName = moduleEntry.getKey();
+
+            LinkedHashMap<String, List<QUnitTestResult>> tests = results.get(moduleName);
+            if (tests == null) {
+                tests = new LinkedHashMap<String, List<QUnitTestResult>>();
+                results.put(moduleName, tests);
+            }
+
+            Map<String, Integer> moduleAttempts = attempts.get(moduleName);
+            if (moduleAttempts == null) {
+                moduleAttempts = new HashMap<String, Integer>();
+                attempts.put(moduleName, moduleAttempts);
+            }
+
+            for (Map.Entry<String, List<QUnitTestResult>> testEntry : moduleEntry.getValue().entrySet()) {
+                String testName = testEntry.getKey();
+                tests.put(testName, testEntry.getValue());
+
+                Map<String, Integer> previousModuleAttempts = previousAttempts.get(moduleName);
+                Integer previous = previousModuleAttempts == null ? null : previousModuleAttempts.get(testName);
+                moduleAttempts.put(testName, (previous == null ? 1 : previous) + 1);
+
+                Long testDuration = rerun.getTestDuration(moduleName, testName);
+                Map<String, Long> durations = testDurations.get(moduleName);
+                if (testDuration == null && durations != null) {
+                    durations.remove(testName);
+                } else if (testDuration != null) {
+                    if (durations == null) {
+                        durations = new HashMap<String, Long>();
+                        testDurations.put(moduleName, durations);
+                    }
+
+                    durations.put(testName, testDuration);
+                }
+            }
+        }
+
+        int testNumber = 1;
+        for (LinkedHashMap<String, List<QUnitTestResult>> tests : results.values()) {
+            for (List<QUnitTestResult> testResults : tests.values()) {
+                for (QUnitTestResult result : testResults) {
+                    result.setTestNumber(testNumber++);
+                }
+            }
+        }
+    }
+
+    void setDispatcher(QUnitResultDispatcher dispatcher) {
+        this.dispatcher = dispatcher;
+    }
+
+    void setFailFast(QUnitFailFast failFast) {
+        this.failFast = failFast;
+    }
+
+    /**
+     * Returns the metrics of the suite, creating them the first time something is measured
+     */
+    QUnitSuiteMetrics getMetrics() {
+        if (metrics == null) {
+            metrics = new QUnitSuiteMetrics();
+        }
+
+        return metrics;
+    }
+
+    /**
+     * Returns the metrics of the suite, or null if nothing was measured (because it was replayed from the cache)
+     */
+    QUnitSuiteMetrics getMetricsIfMeasured() {
+        return metrics;
+    }
+
+    int getAssertionCount() {
+        int count = 0;
+        for (LinkedHashMap<String, List<QUnitTestResult>> tests : results.values()) {
+            for (List<QUnitTestResult> testResults : tests.values()) {
+                count += testResults.size();
+            }
+        }
+
+        return count;
+    }
+
+    /**
+     * Adds a "global failure", the same way QUnitTestDriver.js reports a suite that could not be run (or finished)
+     */
+    void addGlobalFailure(String message, String source) {
+        int testNumber = 1;
+        for (LinkedHashMap<String, List<QUnitTestResult>> tests : results.values()) {
+            for (List<QUnitTestResult> testResults : tests.values()) {
+                testNumber += testResults.size();
+            }
+        }
+
+        QUnitTestResult result = new QUnitTestResult();
+        result.setTestNumber(testNumber);
+        result.setMessage(message);
+        result.setSource(source);
+        result.setFailure(true);
+
+        addResult("global", "global failure", result);
+    }
+
+    /**
+     * Returns true if any assertion in the suite failed
+     */
+    boolean hasFailures() {
+        for (LinkedHashMap<String, List<QUnitTestResult>> tests : results.values()) {
+            for (List<QUnitTestResult> testResults : tests.values()) {
+                for (QUnitTestResult result : testResults) {
+                    if (result.isFailure()) {
+                        return true;
+                    }
+                }
+            }
+        }
+
+        return false;
+    }
+
+    static QUnitTestSuiteResult createGlobalFailure(String message, String source) {
+        QUnitTestSuiteResult suiteResult = new QUnitTestSuiteResult();
+        suiteResult.addGlobalFailure(message, source);
+
+        return suiteResult;
+    }
+}
@@ -1,124 +1,150 @@
 package net.vivin.qunit;
 
-import com.google.gson.Gson;
-import org.apache.commons.io.FileUtils;
-import org.apache.commons.io.filefilter.IOFileFilter;
-import org.apache.commons.io.filefilter.TrueFileFilter;
-import org.apache.commons.lang3.SystemUtils;
 import org.testng.TestNGException;
 
 import java.io.*;
 import java.net.URISyntaxException;
-import java.nio.file.Paths;
 import java.util.*;
 
 /**
  * This class does all of the heavy lifting. Here we actually run QUnitTestDriver.js using PhantomJS against all the
  * QUnit HTML test files that we can find. Using these results, we create instances of QUnitTest for each result.
  * TestNG will later run these tests and report the results.
+ *
+ * With {@link QUnitConfiguration#FAIL_FAST}, the run stops at the first failing assertion, and TestNG gets what was
+ * gathered until then, followed by a failing "run aborted" test.
  */
 public class QUnitTestSuiteRunner {
 
     public static Object[] run() {
-        List<QUnitTest> tests = new ArrayList<QUnitTest>();
+        return toTests(getTestResults());
+    }
+
+    /**
+     * The pipelined alternative to {@link #run()}, meant to be returned from a TestNG data provider (see
+     * {@link QUnitPipelinedTest}). Suites start running when this is called, and each one is turned into tests as soon
+     * as it is done, while later suites are still running. Nothing is kept once a suite has been handed to TestNG, so
+     * memory use depends on the largest suite rather than on the whole run.
+     *
+     * Unlike {@link #run()}, this hands out suites in the order in which they were started, since it can't hold them
+     * back to restore discovery order. The two only differ when a {@link QUnitConfiguration#SCHEDULE} other than
+     * discovery is used.
+     */
+    public static Iterator<Object[]> stream() {
+        return new PipelinedTestIterator(startExecution());
+    }
 
-        List<QUnitTestSuiteResult> suiteResults = getTestResults();
+    //Package private so that it's accessible from tests. Results are in discovery order, whatever order the suites
+    //were started in
+    static List<QUnitTestSuiteResult> getTestResults() {
+        List<QUnitTestSuiteResult> testSuiteResults = new ArrayList<QUnitTestSuiteResult>();
 
-        for (QUnitTestSuiteResult suiteResult : suiteResults) {
+        QUnitTestSuiteExecution execution = startExecution();
+        try {
+            while (execution.hasNext()) {
+                testSuiteResults.add(execution.next());
+            }
+        } finally {
+            execution.close();
+        }
 
-            for (Map.Entry<String, LinkedHashMap<String, List<QUnitTestResult>>> moduleEntry : suiteResult.getResults().entrySet()) {
-                String moduleName = moduleEntry.getKey();
+        execution.sortInDiscoveryOrder(testSuiteResults);
 
-                for (Map.Entry<String, List<QUnitTestResult>> testEntry : moduleEntry.getValue().entrySet()) {
-                    String testName = testEntry.getKey();
+        return testSuiteResults;
+    }
 
-                    for (QUnitTestResult result : testEntry.getValue()) {
-                        tests.add(new QUnitTest(moduleName, testName, result));
-                    }
-                }
-            }
+    //Package private so that it can be benchmarked on its own
+    static Object[] toTests(List<QUnitTestSuiteResult> suiteResults) {
+        List<QUnitTest> tests = new ArrayList<QUnitTest>();
+
+        for (QUnitTestSuiteResult suiteResult : suiteResults) {
+            addTests(suiteResult, tests);
         }
 
         return tests.toArray();
     }
 
-    //Package private so that it's accessible from tests
-    static List<QUnitTestSuiteResult> getTestResults() {
+    private static void addTests(QUnitTestSuiteResult suiteResult, List<QUnitTest> tests) {
+        long start = System.nanoTime();
 
-        try {
-            List<QUnitTestSuiteResult> testSuiteResults = new ArrayList<QUnitTestSuiteResult>();
-
-            String currentWorkingDirectory = new File(QUnitTestSuiteRunner.class.getClassLoader().getResource("").getPath()).getPath();
-            String basePhantomJsPath = Paths.get(QUnitTestSuiteRunner.class.getResource("/phantomjs").toURI()).toString();
-            String pathToTestDriver = Paths.get(QUnitTestSuiteRunner.class.getResource("/qunit/QUnitTestDriver.js").toURI()).toString();
-
-            String osDir = null;
-            String extension = "";
-            if(SystemUtils.IS_OS_LINUX) {
-                if(System.getProperty("os.arch").endsWith("64")) {
-                    osDir = "linux_i686";
-                } else {
-                    osDir = "linux_x64";
-                }
+        for (Map.Entry<String, LinkedHashMap<String, List<QUnitTestResult>>> moduleEntry : suiteResult.getResults().entrySet()) {
+            String moduleName = moduleEntry.getKey();
 
-            } else if(SystemUtils.IS_OS_MAC_OSX) {
-                osDir = "macosx";
-            } else if(SystemUtils.IS_OS_WINDOWS) {
-                osDir = "win32";
-                extension = ".exe";
-            }
+            Long moduleDuration = suiteResult.getModuleDuration(moduleName);
 
-            String pathToPhantomJS = new StringBuilder(basePhantomJsPath).
-                    append(File.separator).
-                    append(osDir).
-                    append(File.separator).
-                    append("phantomjs").
-                    append(extension).toString();
-
-            //When copied from resources, the executable bit is unset, so we need to set it here
-            File file = new File(pathToPhantomJS);
-            file.setExecutable(true);
-
-            IOFileFilter htmlFileFilter = new IOFileFilter() {
-                @Override
-                public boolean accept(File file) {
-                    return file.getName().endsWith("Test.html");
-                }
+            for (Map.Entry<String, List<QUnitTestResult>> testEntry : moduleEntry.getValue().entrySet()) {
+                String testName = testEntry.getKey();
+                Long testDuration = suiteResult.getTestDuration(moduleName, testName);
+                int assertionCount = testEntry.getValue().size();
+                int attempts = suiteResult.getAttempts(moduleName, testName);
 
-                @Override
-                public boolean accept(File file, String s) {
-                    return file.getName().endsWith("Test.html");
+                for (int i = 0; i < assertionCount; i++) {
+                    tests.add(new QUnitTest(moduleName, testName, testEntry.getValue().get(i), testDuration, moduleDuration, assertionCount, i, attempts, suiteResult.getPath()));
                 }
-            };
+            }
+        }
 
-            Collection<File> htmlTestFiles = FileUtils.listFiles(new File(currentWorkingDirectory), htmlFileFilter, TrueFileFilter.INSTANCE);
-            for (File htmlTestFile : htmlTestFiles) {
-                String absolutePath = htmlTestFile.getAbsolutePath();
+        QUnitMetrics.get().record(QUnitMetrics.FLATTENING, System.nanoTime() - start);
+    }
 
-                ProcessBuilder builder = new ProcessBuilder(pathToPhantomJS, pathToTestDriver, absolutePath);
+    private static QUnitTestSuiteExecution startExecution() {
+        try {
+            return new QUnitTestSuiteExecution();
+        } catch (IOException e) {
+            throw new TestNGException(e);
+        } catch (URISyntaxException e) {
+            throw new TestNGException(e);
+        }
+    }
 
-                Process qUnitTest = builder.start();
-                BufferedReader reader = new BufferedReader(new InputStreamReader(qUnitTest.getInputStream()));
+    /**
+     * Flattens suite results into data-provider rows, one QUnitTest per assertion, pulling the next suite only once
+     * the rows for the current one have all been handed out
+     */
+    private static class PipelinedTestIterator implements Iterator<Object[]> {
 
-                StringBuilder output = new StringBuilder();
-                String line;
-                while ((line = reader.readLine()) != null) {
-                    output.append(line);
+        private final QUnitTestSuiteExecution execution;
+        private Iterator<QUnitTest> current = Collections.<QUnitTest>emptyList().iterator();
+        private boolean closed;
+
+        PipelinedTestIterator(QUnitTestSuiteExecution execution) {
+            this.execution = execution;
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (!current.hasNext()) {
+                if (closed) {
+                    return false;
                 }
 
-                //Forces the current thread to wait for the process to complete
-                int exitValue = qUnitTest.waitFor();
-                testSuiteResults.add(new Gson().fromJson(output.toString().trim(), QUnitTestSuiteResult.class));
+                if (!execution.hasNext()) {
+                    //TestNG keeps asking once we're done, but the run must only be closed (and reported as done) once
+                    closed = true;
+                    execution.close();
+                    return false;
+                }
+
+                List<QUnitTest> tests = new ArrayList<QUnitTest>();
+                addTests(execution.next(), tests);
+                current = tests.iterator();
             }
 
-            return testSuiteResults;
-        } catch (IOException e) {
-            throw new TestNGException(e);
-        } catch (InterruptedException e) {
-            throw new TestNGException(e);
-        } catch (URISyntaxException e) {
-            throw new TestNGException(e);
+            return true;
+        }
+
+        @Override
+        public Object[] next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+
+            return new Object[]{current.next()};
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
         }
     }
 }
-
@@ -0,0 +1,85 @@
+package net.vivin.qunit;
+
+import java.util.*;
+
+/**
+ * Splits the discovered suites between the nodes of a run, so that every node can be handed the same tree and still
+ * run only its own part of it. Every node makes the same decision on its own: the split only depends on the sorted
+ * list of suites and, if there is one, on the suite history.
+ *
+ * Without a history, suites are dealt out round-robin in discovery order. When the history knows how long suites take,
+ * the longest suites are handed out first, each to the shard that has the least work so far, so that all shards take
+ * about as long as each other. Suites the history doesn't know about are assumed to take as long as the average suite.
+ */
+class QUnitTestSuiteSharder {
+
+    private final int shardIndex;
+    private final int shardCount;
+    private final QUnitSuiteHistory history;
+
+    QUnitTestSuiteSharder(int shardIndex, int shardCount, QUnitSuiteHistory history) {
+        this.shardIndex = shardIndex;
+        this.shardCount = shardCount;
+        this.history = history;
+    }
+
+    /**
+     * Returns the relative paths that belong to this shard, in the order in which they were given
+     */
+    List<String> select(List<String> relativePaths) {
+        if (shardCount == 1) {
+            return relativePaths;
+        }
+
+        Set<String> selected = new HashSet<String>();
+        Map<String, Long> durations = history == null ? null : history.getExpectedDurations(relativePaths);
+
+        if (durations == null) {
+            for (int i = shardIndex; i < relativePaths.size(); i += shardCount) {
+                selected.add(relativePaths.get(i));
+            }
+        } else {
+            selected.addAll(balance(relativePaths, durations));
+        }
+
+        List<String> shard = new ArrayList<String>();
+        for (String relativePath : relativePaths) {
+            if (selected.contains(relativePath)) {
+                shard.add(relativePath);
+            }
+        }
+
+        return shard;
+    }
+
+    private List<String> balance(List<String> relativePaths, final Map<String, Long> durations) {
+        List<String> longestFirst = new ArrayList<String>(relativePaths);
+        Collections.sort(longestFirst, new Comparator<String>() {
+            @Override
+            public int compare(String o1, String o2) {
+                int byDuration = durations.get(o2).compareTo(durations.get(o1));
+                return byDuration != 0 ? byDuration : o1.compareTo(o2);
+            }
+        });
+
+        long[] loads = new long[shardCount];
+        List<String> shard = new ArrayList<String>();
+
+        for (String relativePath : longestFirst) {
+            int lightest = 0;
+            for (int i = 1; i < shardCount; i++) {
+                if (loads[i] < loads[lightest]) {
+                    lightest = i;
+                }
+            }
+
+            //A suite that takes no time at all would otherwise always go to the same shard
+            loads[lightest] += Math.max(durations.get(relativePath), 1);
+            if (lightest == shardIndex) {
+                shard.add(relativePath);
+            }
+        }
+
+        return shard;
+    }
+}
@@ -0,0 +1,177 @@
+package net.vivin.qunit;
+
+import com.google.gson.stream.JsonWriter;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A timeline of a run in the Chrome trace-event format, which can be opened in Perfetto or chrome://tracing. Every
+ * suite gets a track of its own, with spans for starting its process, loading its page, running QUnit (and every module
+ * and test in it), and reading its results; the work the runner does itself (discovery, flattening results, reporters)
+ * is on a track of its own.
+ *
+ * Spans are only kept in memory while the run is going, and written once, at the end.
+ */
+class QUnitTrace {
+
+    private static final int PROCESS_ID = 1;
+
+    private final File file;
+    private final long origin = System.nanoTime();
+    private final AtomicInteger nextTrackId = new AtomicInteger(1);
+    private final Queue<Track> tracks = new ConcurrentLinkedQueue<Track>();
+    private final Queue<Span> spans = new ConcurrentLinkedQueue<Span>();
+    private final Track runner;
+
+    QUnitTrace(File file) {
+        this.file = file;
+        this.runner = newTrack("runner");
+    }
+
+    File getFile() {
+        return file;
+    }
+
+    /**
+     * Starts a new track. Tracks are shown in the order in which they were started.
+     */
+    Track newTrack(String name) {
+        Track track = new Track(nextTrackId.getAndIncrement(), name);
+        tracks.add(track);
+
+        return track;
+    }
+
+    /**
+     * Returns the track of the runner itself
+     */
+    Track getRunner() {
+        return runner;
+    }
+
+    void write() throws IOException {
+        File directory = file.getAbsoluteFile().getParentFile();
+        if (directory != null) {
+            directory.mkdirs();
+        }
+
+        JsonWriter writer = new JsonWriter(new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), "UTF-8")));
+        try {
+            writer.beginObject();
+            writer.name("displayTimeUnit").value("ms");
+            writer.name("traceEvents").beginArray();
+
+            writeMetadata(writer, "process_name", null, "name", "QUnit");
+            for (Track track : tracks) {
+                writeMetadata(writer, "thread_name", track.id, "name", track.name);
+                writeMetadata(writer, "thread_sort_index", track.id, "sort_index", track.id);
+            }
+
+            for (Span span : spans) {
+                writer.beginObject();
+                writer.name("name").value(span.name);
+                writer.name("cat").value(span.category);
+                writer.name("ph").value("X");
+                writer.name("pid").value(PROCESS_ID);
+                writer.name("tid").value(span.trackId);
+                writer.name("ts").value(toMicros(span.start - origin));
+                writer.name("dur").value(toMicros(span.duration));
+
+                if (span.arguments != null) {
+                    writer.name("args").beginObject();
+                    for (Map.Entry<String, ?> argument : span.arguments.entrySet()) {
+                        writer.name(argument.getKey()).value(String.valueOf(argument.getValue()));
+                    }
+                    writer.endObject();
+                }
+
+                writer.endObject();
+            }
+
+            writer.endArray();
+            writer.endObject();
+        } finally {
+            writer.close();
+        }
+    }
+
+    private static void writeMetadata(JsonWriter writer, String name, Integer trackId, String argument, Object value) throws IOException {
+        writer.beginObject();
+        writer.name("name").value(name);
+        writer.name("ph").value("M");
+        writer.name("pid").value(PROCESS_ID);
+        if (trackId != null) {
+            writer.name("tid").value(trackId);
+        }
+
+        writer.name("args").beginObject();
+        if (value instanceof Number) {
+            writer.name(argument).value((Number) value);
+        } else {
+            writer.name(argument).value(String.valueOf(value));
+        }
+        writer.endObject();
+
+        writer.endObject();
+    }
+
+    private static double toMicros(long nanos) {
+        return Math.max(nanos, 0) / 1000.0;
+    }
+
+    final class Track {
+
+        private final int id;
+        private final String name;
+
+        private Track(int id, String name) {
+            this.id = id;
+            this.name = name;
+        }
+
+        /**
+         * Adds a span that started at the given {@link System#nanoTime()}
+         */
+        void span(String category, String name, long start, long durationInNanoseconds) {
+            span(category, name, start, durationInNanoseconds, null);
+        }
+
+        void span(String category, String name, long start, long durationInNanoseconds, Map<String, ?> arguments) {
+            spans.add(new Span(id, category, name, start, durationInNanoseconds, arguments));
+        }
+
+        /**
+         * Adds a span that has just ended
+         */
+        void ended(String category, String name, long durationInNanoseconds) {
+            span(category, name, System.nanoTime() - durationInNanoseconds, durationInNanoseconds, null);
+        }
+    }
+
+    private static final class Span {
+
+        private final int trackId;
+        private final String category;
+        private final String name;
+        private final long start;
+        private final long duration;
+        private final Map<String, ?> arguments;
+
+        private Span(int trackId, String category, String name, long start, long duration, Map<String, ?> arguments) {
+            this.trackId = trackId;
+            this.category = category;
+            this.name = name;
+            this.start = start;
+            this.duration = duration;
+            this.arguments = arguments;
+        }
+    }
+}
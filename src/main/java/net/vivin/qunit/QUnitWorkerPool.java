@@ -0,0 +1,230 @@
+package net.vivin.qunit;
+
+import org.apache.commons.io.IOUtils;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * Keeps a small number of PhantomJS processes running QUnitTestDriver.js in worker mode, so that we only pay for
+ * starting PhantomJS once every few suites instead of once per suite. A worker is handed the path of a QUnit HTML file
+ * on STDIN (followed by a tab and the selection of tests to run, if any) and streams the events for that suite on
+ * STDOUT, ending with the suite's "done" event.
+ *
+ * Workers are replaced after they have run a configurable number of suites (so that leaks inside PhantomJS can't pile
+ * up), and whenever they die in the middle of a suite. A worker that turns out to have died while it was idle (the
+ * driver exits right after reporting an error in its own script, for example) is replaced before the suite it was
+ * handed has started, so that suite is run on a fresh worker instead of failing.
+ */
+class QUnitWorkerPool implements Closeable {
+
+    private final String pathToPhantomJS;
+    private final String pathToTestDriver;
+    private final int recycleAfter;
+    private final QUnitResultStreamParser parser;
+    private final QUnitProcessWatchdog watchdog;
+
+    private final BlockingQueue<Worker> idleWorkers = new LinkedBlockingQueue<Worker>();
+    private final List<Worker> workers = new ArrayList<Worker>();
+    private boolean closed;
+
+    QUnitWorkerPool(String pathToPhantomJS, String pathToTestDriver, int recycleAfter, QUnitResultStreamParser parser, QUnitProcessWatchdog watchdog) {
+        this.pathToPhantomJS = pathToPhantomJS;
+        this.pathToTestDriver = pathToTestDriver;
+        this.recycleAfter = recycleAfter;
+        this.parser = parser;
+        this.watchdog = watchdog;
+    }
+
+    /**
+     * Runs the suite on an idle worker, streaming its results into the suite result. The worker is killed if the suite
+     * isn't done by the deadline.
+     */
+    void runTestSuite(String absolutePath, long deadline, QUnitTestSuiteResult suiteResult, QUnitBrowserEngineContext context) throws IOException {
+        Worker worker = acquire(suiteResult);
+        boolean healthy = false;
+        QUnitProcessWatchdog.Watch watch = watchdog.watch(worker.process, deadline);
+
+        try {
+            boolean completed;
+            try {
+                boolean started = worker.start(absolutePath, suiteResult.getSelection());
+                if (!started && !watch.isExpired()) {
+                    //The worker was already gone before it got to the suite, so nothing has been reported yet and the
+                    //suite can have a fresh worker. Only once, so that a browser that can't start at all still fails.
+                    watch.cancel();
+                    release(worker, false);
+
+                    worker = spawn(suiteResult);
+                    watch = watchdog.watch(worker.process, deadline);
+                    started = worker.start(absolutePath, suiteResult.getSelection());
+                }
+
+                completed = started && parser.parse(worker.output, suiteResult);
+            } catch (IOException e) {
+                //Killing the worker closes its output, so a read that was under way when the watchdog killed it fails
+                if (!watch.isExpired()) {
+                    throw e;
+                }
+
+                completed = false;
+            }
+
+            //A worker runs many suites, so this is the peak of all of them so far
+            suiteResult.getMetrics().setPeakResidentSetSize(QUnitProcessWatchdog.getPeakResidentSetSize(worker.process));
+
+            if (!completed) {
+                if (watch.isExpired()) {
+                    suiteResult.addGlobalFailure(context.getDeadlineMessage(absolutePath), "    at " + absolutePath);
+                } else {
+                    String message = "PhantomJS worker exited before " + absolutePath + " finished running; results are incomplete";
+                    String standardError = worker.errorOutput.awaitTail();
+                    if (!standardError.isEmpty()) {
+                        message += ". STDERR: " + standardError;
+                    }
+
+                    suiteResult.addGlobalFailure(message, "    at " + absolutePath);
+                }
+
+                return;
+            }
+
+            healthy = true;
+        } finally {
+            watch.cancel();
+            release(worker, healthy);
+        }
+    }
+
+    /**
+     * Returns an idle worker, or starts a new one
+     */
+    private Worker acquire(QUnitTestSuiteResult suiteResult) throws IOException {
+        Worker worker = idleWorkers.poll();
+        if (worker != null) {
+            return worker;
+        }
+
+        return spawn(suiteResult);
+    }
+
+    /**
+     * Starts a new worker; the suite that has to wait for it to start is charged with the spawn. Workers are started
+     * outside of the lock, so that threads that need one at the same time don't wait for each other.
+     */
+    private Worker spawn(QUnitTestSuiteResult suiteResult) throws IOException {
+        checkOpen();
+
+        long spawnStart = System.nanoTime();
+        Worker worker = new Worker(new ProcessBuilder(pathToPhantomJS, pathToTestDriver, "--worker").start());
+        suiteResult.getMetrics().spawned(System.nanoTime() - spawnStart);
+
+        synchronized (workers) {
+            //The pool may have been closed while the worker was starting, in which case nobody would ever stop it
+            if (!closed) {
+                workers.add(worker);
+                return worker;
+            }
+        }
+
+        worker.shutdown();
+        throw new IllegalStateException("The worker pool has already been closed");
+    }
+
+    private void checkOpen() {
+        synchronized (workers) {
+            if (closed) {
+                throw new IllegalStateException("The worker pool has already been closed");
+            }
+        }
+    }
+
+    private void release(Worker worker, boolean healthy) {
+        if (healthy && worker.suitesRun < recycleAfter && worker.isAlive()) {
+            idleWorkers.add(worker);
+            return;
+        }
+
+        synchronized (workers) {
+            workers.remove(worker);
+        }
+
+        worker.shutdown();
+    }
+
+    @Override
+    public void close() {
+        List<Worker> toShutdown;
+        synchronized (workers) {
+            closed = true;
+            toShutdown = new ArrayList<Worker>(workers);
+            workers.clear();
+        }
+
+        idleWorkers.clear();
+        for (Worker worker : toShutdown) {
+            worker.shutdown();
+        }
+    }
+
+    private static class Worker {
+
+        private final Process process;
+        private final Writer input;
+        private final BufferedReader output;
+        private final QUnitProcessWatchdog.StreamDrain errorOutput;
+        private int suitesRun;
+
+        Worker(Process process) {
+            this.process = process;
+            this.input = new BufferedWriter(new OutputStreamWriter(process.getOutputStream()));
+            this.output = new BufferedReader(new InputStreamReader(process.getInputStream()));
+            this.errorOutput = QUnitProcessWatchdog.drain(process.getErrorStream(), "qunit-worker-stderr");
+        }
+
+        /**
+         * Hands the suite to the worker, and waits until the worker has started writing its events. Returns false if
+         * the worker went away before it wrote anything.
+         */
+        boolean start(String absolutePath, QUnitTestSelection selection) throws IOException {
+            suitesRun++;
+
+            try {
+                input.write(absolutePath);
+                if (selection != null) {
+                    input.write("\t");
+                    input.write(selection.encode());
+                }
+                input.write("\n");
+                input.flush();
+            } catch (IOException e) {
+                //The worker has already exited and closed its end of the pipe
+                return false;
+            }
+
+            //A worker that exits right after its last suite still takes the path; it's only its output that ends
+            output.mark(1);
+            if (output.read() == -1) {
+                return false;
+            }
+
+            output.reset();
+            return true;
+        }
+
+        boolean isAlive() {
+            return process.isAlive();
+        }
+
+        void shutdown() {
+            //Closing STDIN lets a healthy worker exit on its own; we destroy it regardless so that a wedged one cannot
+            //linger
+            IOUtils.closeQuietly(input);
+            IOUtils.closeQuietly(output);
+            QUnitProcessWatchdog.destroyTree(process);
+        }
+    }
+}
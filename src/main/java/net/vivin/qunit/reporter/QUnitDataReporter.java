@@ -0,0 +1,106 @@
+package net.vivin.qunit.reporter;
+
+import net.vivin.qunit.QUnitConfiguration;
+import net.vivin.qunit.QUnitMetrics;
+import org.testng.*;
+import org.testng.xml.XmlSuite;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A compact alternative to {@link QUnitEmailableReporter} for very large runs. Instead of a single page with a row for
+ * every assertion, it writes the results as data to {@code qunit-report/} in the output directory, in chunks, along
+ * with a page ({@code index.html}) that only draws the rows that are on screen and only loads the chunks that it needs.
+ * Modules in which everything passed are collapsed until they are opened, so their chunks are usually never loaded.
+ *
+ * Modules with failures come first, and within a module, failed assertions come before skipped and passed ones, across
+ * every suite of the run.
+ */
+public class QUnitDataReporter implements IReporter {
+
+    @Override
+    public void generateReport(List<XmlSuite> xmlSuites, List<ISuite> suites, String outputDirectory) {
+        long start = System.nanoTime();
+        try {
+            createReport(xmlSuites, suites, outputDirectory);
+        } finally {
+            QUnitMetrics.get().recordReporter(getClass(), System.nanoTime() - start);
+        }
+    }
+
+    private void createReport(List<XmlSuite> xmlSuites, List<ISuite> suites, String outputDirectory) {
+        //Every module's assertions, split into failed, skipped and passed ones, from every suite of the run
+        Map<String, List<List<QUnitReportModel.Entry>>> modules = new LinkedHashMap<String, List<List<QUnitReportModel.Entry>>>();
+        for (ISuite suite : suites) {
+            QUnitReportModel model = QUnitReportModel.forSuite(suite);
+            if (!model.isQUnitTestSuite()) {
+                continue;
+            }
+
+            for (ISuiteResult suiteResult : suite.getResults().values()) {
+                ITestContext testContext = suiteResult.getTestContext();
+                IResultMap[] outcomes = {testContext.getFailedTests(), testContext.getSkippedTests(), testContext.getPassedTests()};
+
+                for (int outcome = 0; outcome < outcomes.length; outcome++) {
+                    for (Map.Entry<String, List<QUnitReportModel.Entry>> moduleEntries : model.getSection(outcomes[outcome]).getEntriesByModule().entrySet()) {
+                        List<List<QUnitReportModel.Entry>> entries = modules.get(moduleEntries.getKey());
+                        if (entries == null) {
+                            entries = new ArrayList<List<QUnitReportModel.Entry>>();
+                            for (int i = 0; i < outcomes.length; i++) {
+                                entries.add(new ArrayList<QUnitReportModel.Entry>());
+                            }
+                            modules.put(moduleEntries.getKey(), entries);
+                        }
+
+                        entries.get(outcome).addAll(moduleEntries.getValue());
+                    }
+                }
+            }
+        }
+
+        //Failures first, so that they are at the top of the page. Only once every suite has been gathered do we know
+        //which modules have failures.
+        List<String> moduleNames = new ArrayList<String>();
+        for (Map.Entry<String, List<List<QUnitReportModel.Entry>>> module : modules.entrySet()) {
+            if (!module.getValue().get(0).isEmpty()) {
+                moduleNames.add(module.getKey());
+            }
+        }
+        for (Map.Entry<String, List<List<QUnitReportModel.Entry>>> module : modules.entrySet()) {
+            if (module.getValue().get(0).isEmpty()) {
+                moduleNames.add(module.getKey());
+            }
+        }
+
+        String title = "QUnit Test Suite";
+        if (QUnitConfiguration.getShardCount() > 1) {
+            title += " (shard " + QUnitConfiguration.getShardIndex() + " of " + QUnitConfiguration.getShardCount() + ")";
+        }
+
+        try {
+            QUnitReportDataWriter writer = new QUnitReportDataWriter(new File(outputDirectory, "qunit-report" + QUnitConfiguration.getShardSuffix()), title);
+            try {
+                for (String moduleName : moduleNames) {
+                    writer.startModule(moduleName);
+
+                    for (List<QUnitReportModel.Entry> entries : modules.get(moduleName)) {
+                        for (QUnitReportModel.Entry entry : entries) {
+                            Throwable throwable = entry.getResult().getThrowable();
+                            writer.writeAssertion(entry.getTestName(), entry.getTime(), entry.getStatus(), throwable == null ? null : throwable.getLocalizedMessage(),
+                                    throwable == null ? null : entry.getTest().getSource());
+                        }
+                    }
+                }
+            } finally {
+                writer.close();
+            }
+        } catch (IOException e) {
+            throw new TestNGException(e);
+        }
+    }
+}
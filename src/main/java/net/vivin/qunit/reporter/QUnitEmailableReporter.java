@@ -1,16 +1,14 @@
 package net.vivin.qunit.reporter;
 
-import net.vivin.qunit.QUnitTestSuite;
+import net.vivin.qunit.QUnitConfiguration;
+import net.vivin.qunit.QUnitMetrics;
 import net.vivin.qunit.QUnitTest;
 import org.testng.*;
-import org.testng.collections.Lists;
 import org.testng.internal.Utils;
 import org.testng.log4testng.Logger;
 import org.testng.reporters.EmailableReporter;
 import org.testng.reporters.util.StackTraceTools;
-import org.testng.xml.XmlClass;
 import org.testng.xml.XmlSuite;
-import org.testng.xml.XmlTest;
 
 import java.io.*;
 import java.text.DecimalFormat;
@@ -36,6 +34,15 @@ public class QUnitEmailableReporter implements IReporter {
      */
     @Override
     public void generateReport(List<XmlSuite> xml, List<ISuite> suites, String outdir) {
+        long start = System.nanoTime();
+        try {
+            createReport(xml, suites, outdir);
+        } finally {
+            QUnitMetrics.get().recordReporter(getClass(), System.nanoTime() - start);
+        }
+    }
+
+    private void createReport(List<XmlSuite> xml, List<ISuite> suites, String outdir) {
         try {
             out = createWriter(outdir);
         } catch (IOException e) {
@@ -56,7 +63,7 @@ public class QUnitEmailableReporter implements IReporter {
     protected PrintWriter createWriter(String outdir) throws IOException {
         new File(outdir).mkdirs();
         return new PrintWriter(new BufferedWriter(new FileWriter(new File(outdir,
-                "emailable-report.html"))));
+                "emailable-report" + QUnitConfiguration.getShardSuffix() + ".html"))));
     }
 
     /**
@@ -69,7 +76,7 @@ public class QUnitEmailableReporter implements IReporter {
         startResultSummaryTable("passed");
         for (ISuite suite : suites) {
 
-            boolean isQUnitTestSuite = isQUnitTestSuite(suite);
+            QUnitReportModel model = QUnitReportModel.forSuite(suite);
 
             if (suites.size() > 1) {
                 titleRow(suite.getName(), 4);
@@ -81,20 +88,20 @@ public class QUnitEmailableReporter implements IReporter {
                 ITestContext testContext = suiteResult.getTestContext();
                 String testName = testContext.getName();
 
-                if (isQUnitTestSuite) {
+                if (model.isQUnitTestSuite()) {
                     testName = "QUnit Test Suite";
 
-                    qUnitResultSummary(suite, testContext.getFailedConfigurations(), testName, "failed", " (configuration methods)");
-                    qUnitResultSummary(suite, testContext.getFailedTests(), testName, "failed", "");
-                    qUnitResultSummary(suite, testContext.getSkippedConfigurations(), testName, "skipped", " (configuration methods)");
-                    qUnitResultSummary(suite, testContext.getSkippedTests(), testName, "skipped", "");
-                    qUnitResultSummary(suite, testContext.getPassedTests(), testName, "passed", "");
+                    qUnitResultSummary(model.getSection(testContext.getFailedConfigurations()), testName, "failed", " (configuration methods)");
+                    qUnitResultSummary(model.getSection(testContext.getFailedTests()), testName, "failed", "");
+                    qUnitResultSummary(model.getSection(testContext.getSkippedConfigurations()), testName, "skipped", " (configuration methods)");
+                    qUnitResultSummary(model.getSection(testContext.getSkippedTests()), testName, "skipped", "");
+                    qUnitResultSummary(model.getSection(testContext.getPassedTests()), testName, "passed", "");
                 } else {
-                    resultSummary(suite, testContext.getFailedConfigurations(), testName, "failed", " (configuration methods)");
-                    resultSummary(suite, testContext.getFailedTests(), testName, "failed", "");
-                    resultSummary(suite, testContext.getSkippedConfigurations(), testName, "skipped", " (configuration methods)");
-                    resultSummary(suite, testContext.getSkippedTests(), testName, "skipped", "");
-                    resultSummary(suite, testContext.getPassedTests(), testName, "passed", "");
+                    resultSummary(model.getSection(testContext.getFailedConfigurations()), testName, "failed", " (configuration methods)");
+                    resultSummary(model.getSection(testContext.getFailedTests()), testName, "failed", "");
+                    resultSummary(model.getSection(testContext.getSkippedConfigurations()), testName, "skipped", " (configuration methods)");
+                    resultSummary(model.getSection(testContext.getSkippedTests()), testName, "skipped", "");
+                    resultSummary(model.getSection(testContext.getPassedTests()), testName, "passed", "");
                 }
             }
         }
@@ -102,15 +109,6 @@ public class QUnitEmailableReporter implements IReporter {
         out.println("</table>");
     }
 
-    private boolean isQUnitTestSuite(ISuite suite) {
-        XmlSuite xmlSuite = suite.getXmlSuite();
-        XmlTest xmlTest = xmlSuite.getTests().get(0);
-        XmlClass xmlClass = xmlTest.getXmlClasses().get(0);
-        Class clazz = xmlClass.getSupportClass();
-
-        return clazz.isAnnotationPresent(QUnitTestSuite.class);
-    }
-
     /**
      * Creates a section showing known results for each method
      */
@@ -118,7 +116,7 @@ public class QUnitEmailableReporter implements IReporter {
         methodIndex = 0;
         for (ISuite suite : suites) {
 
-            boolean isQUnitTestSuite = isQUnitTestSuite(suite);
+            QUnitReportModel model = QUnitReportModel.forSuite(suite);
 
             Map<String, ISuiteResult> results = suite.getResults();
 
@@ -127,61 +125,52 @@ public class QUnitEmailableReporter implements IReporter {
                 ITestContext testContext = suiteResult.getTestContext();
 
                 if (results.values().size() > 0) {
-                    if (isQUnitTestSuite) {
+                    if (model.isQUnitTestSuite()) {
                         out.println("<h1>QUnit Test Suite</h1>");
                     } else {
                         out.println("<h1>" + testContext.getName() + "</h1>");
                     }
                 }
 
-                if (isQUnitTestSuite) {
-                    qUnitResultDetail(testContext.getFailedConfigurations());
-                    qUnitResultDetail(testContext.getFailedTests());
-                    qUnitResultDetail(testContext.getSkippedConfigurations());
-                    qUnitResultDetail(testContext.getSkippedTests());
-                    qUnitResultDetail(testContext.getPassedTests());
+                if (model.isQUnitTestSuite()) {
+                    qUnitResultDetail(model.getSection(testContext.getFailedConfigurations()));
+                    qUnitResultDetail(model.getSection(testContext.getFailedTests()));
+                    qUnitResultDetail(model.getSection(testContext.getSkippedConfigurations()));
+                    qUnitResultDetail(model.getSection(testContext.getSkippedTests()));
+                    qUnitResultDetail(model.getSection(testContext.getPassedTests()));
                 } else {
-                    resultDetail(testContext.getFailedConfigurations());
-                    resultDetail(testContext.getFailedTests());
-                    resultDetail(testContext.getSkippedConfigurations());
-                    resultDetail(testContext.getSkippedTests());
-                    resultDetail(testContext.getPassedTests());
+                    resultDetail(model.getSection(testContext.getFailedConfigurations()));
+                    resultDetail(model.getSection(testContext.getFailedTests()));
+                    resultDetail(model.getSection(testContext.getSkippedConfigurations()));
+                    resultDetail(model.getSection(testContext.getSkippedTests()));
+                    resultDetail(model.getSection(testContext.getPassedTests()));
                 }
             }
         }
     }
 
-    private void qUnitResultSummary(ISuite suite, IResultMap tests, String testName, String style, String details) {
+    private void qUnitResultSummary(QUnitReportModel.Section section, String testName, String style, String details) {
 
-        if (tests.getAllResults().size() > 0) {
+        if (section.size() > 0) {
             StringBuffer buffer = new StringBuffer();
             String lastModuleName = "";
+            String lastModuleTime = "";
 
             int methodCount = 0;
             int moduleCount = 0;
 
-            //Let's build a map that's keyed by module name so that we only display the tests for the next module once we're
-            //done with the tests for the current module
-            Map<String, List<ITestNGMethod>> classMethodMap = new LinkedHashMap<String, List<ITestNGMethod>>();
-            for (ITestNGMethod method : getMethodSet(tests, suite)) {
-                QUnitTest qUnitTest = (QUnitTest) method.getInstances()[0];
+            //We only display the tests for the next module once we're done with the tests for the current module. Every
+            //result is one QUnit assertion, whether the tests came from a factory (one result per method) or were
+            //streamed through a data provider (one method for all results).
+            for (Map.Entry<String, List<QUnitReportModel.Entry>> moduleEntries : section.getEntriesByModule().entrySet()) {
+                String moduleName = moduleEntries.getKey();
 
-                if (classMethodMap.get(qUnitTest.getModuleName()) == null) {
-                    classMethodMap.put(qUnitTest.getModuleName(), new ArrayList<ITestNGMethod>());
-                }
-
-                classMethodMap.get(qUnitTest.getModuleName()).add(method);
-            }
-
-            for (Map.Entry<String, List<ITestNGMethod>> entry : classMethodMap.entrySet()) {
-                String moduleName = entry.getKey();
-                List<ITestNGMethod> methods = entry.getValue();
-
-                for (ITestNGMethod method : methods) {
+                for (QUnitReportModel.Entry entry : moduleEntries.getValue()) {
                     row += 1;
                     methodIndex += 1;
 
-                    QUnitTest qUnitTest = (QUnitTest) method.getInstances()[0];
+                    ITestResult result = entry.getResult();
+                    QUnitTest qUnitTest = entry.getTest();
 
                     if (methodCount == 0) {
                         titleRow(testName + " &#8212; " + style + details, 4);
@@ -190,27 +179,16 @@ public class QUnitEmailableReporter implements IReporter {
                     if (!moduleName.equalsIgnoreCase(lastModuleName)) {
                         if (methodCount > 0) {
                             moduleCount++;
-                            out.println("<tr class=\"" + style + (moduleCount % 2 == 0 ? "even" : "odd") + "\">" + "<td rowspan=\"" + methodCount + "\">" + lastModuleName + buffer);
+                            out.println("<tr class=\"" + style + (moduleCount % 2 == 0 ? "even" : "odd") + "\">" + "<td rowspan=\"" + methodCount + "\">" + lastModuleName + lastModuleTime + buffer);
                         }
 
                         methodCount = 0;
                         buffer.setLength(0);
                         lastModuleName = moduleName;
+                        lastModuleTime = qUnitTest.getModuleDuration() == null ? "" : "<br/>(" + qUnitTest.getModuleDuration() + " ms)";
                     }
 
-                    Set<ITestResult> results = tests.getResults(method);
-                    long end = Long.MIN_VALUE;
-                    long start = Long.MAX_VALUE;
-
-                    for (ITestResult testResult : results) {
-                        if (testResult.getEndMillis() > end) {
-                            end = testResult.getEndMillis();
-                        }
-
-                        if (testResult.getStartMillis() < start) {
-                            start = testResult.getStartMillis();
-                        }
-                    }
+                    long start = result.getStartMillis();
 
                     methodCount++;
 
@@ -218,13 +196,16 @@ public class QUnitEmailableReporter implements IReporter {
                         buffer.append("<tr class=\"").append(style).append(moduleCount % 2 == 0 ? "odd" : "even").append("\">");
                     }
 
-                    String description = method.getDescription();
+                    String description = result.getMethod().getDescription();
                     String testInstanceName = qUnitTest.getTestName();
+                    if (qUnitTest.getAttempts() > 1) {
+                        testInstanceName += " (attempt " + qUnitTest.getAttempts() + ")";
+                    }
 
                     buffer.append("<td><a href=\"#m" + methodIndex + "\">").append(testInstanceName).append(" ").append(description != null && description.length() > 0 ? "(\"" + description + "\")" : "").append("</a></td>")
-                            .append("<td class=\"numi\">").append(results.size()).append("</td>")
+                            .append("<td class=\"numi\">").append(1).append("</td>")
                             .append("<td>" + start + "</td>")
-                            .append("<td class=\"numi\">").append(end - start).append("</td>")
+                            .append("<td class=\"numi\">").append(entry.getTime()).append("</td>")
                             .append("</tr>");
                 }
 
@@ -234,7 +215,7 @@ public class QUnitEmailableReporter implements IReporter {
 
             if (methodCount > 0) {
                 moduleCount++;
-                out.println("<tr class=\"" + style + (moduleCount % 2 == 0 ? "even" : "odd") + "\">" + "<td rowspan=\"" + methodCount + "\">" + lastModuleName + buffer);
+                out.println("<tr class=\"" + style + (moduleCount % 2 == 0 ? "even" : "odd") + "\">" + "<td rowspan=\"" + methodCount + "\">" + lastModuleName + lastModuleTime + buffer);
             }
         }
     }
@@ -242,15 +223,15 @@ public class QUnitEmailableReporter implements IReporter {
     /**
      * @param tests
      */
-    private void resultSummary(ISuite suite, IResultMap tests, String testName, String style, String details) {
+    private void resultSummary(QUnitReportModel.Section section, String testName, String style, String details) {
 
-        if (tests.getAllResults().size() > 0) {
+        if (section.size() > 0) {
             StringBuffer buff = new StringBuffer();
             String lastClassName = "";
             int mq = 0;
             int cq = 0;
 
-            for (ITestNGMethod method : getMethodSet(tests, suite)) {
+            for (ITestNGMethod method : section.getMethods()) {
                 row += 1;
                 methodIndex += 1;
                 ITestClass testClass = method.getTestClass();
@@ -269,10 +250,10 @@ public class QUnitEmailableReporter implements IReporter {
                     buff.setLength(0);
                     lastClassName = className;
                 }
-                Set<ITestResult> resultSet = tests.getResults(method);
+                List<ITestResult> resultSet = section.getResults(method);
                 long end = Long.MIN_VALUE;
                 long start = Long.MAX_VALUE;
-                for (ITestResult testResult : tests.getResults(method)) {
+                for (ITestResult testResult : resultSet) {
                     if (testResult.getEndMillis() > end) {
                         end = testResult.getEndMillis();
                     }
@@ -286,7 +267,7 @@ public class QUnitEmailableReporter implements IReporter {
                             + "\">");
                 }
                 String description = method.getDescription();
-                String testInstanceName = resultSet.toArray(new ITestResult[]{})[0].getTestName();
+                String testInstanceName = resultSet.get(0).getTestName();
                 buff.append("<td><a href=\"#m" + methodIndex + "\">"
                         + qualifiedName(method)
                         + " " + (description != null && description.length() > 0
@@ -335,42 +316,47 @@ public class QUnitEmailableReporter implements IReporter {
         return "<b>" + method.getMethodName() + "</b> " + addon;
     }
 
-    private void qUnitResultDetail(IResultMap tests) {
-        for (ITestResult result : tests.getAllResults()) {
-            ITestNGMethod method = result.getMethod();
-            methodIndex++;
+    /**
+     * Walks the assertions in the same order as the summary, so that every link in the summary leads to its own details
+     */
+    private void qUnitResultDetail(QUnitReportModel.Section section) {
+        for (List<QUnitReportModel.Entry> moduleEntries : section.getEntriesByModule().values()) {
+            for (QUnitReportModel.Entry entry : moduleEntries) {
+                methodIndex++;
 
-            QUnitTest qUnitTest = (QUnitTest) method.getInstances()[0];
-            String moduleName = qUnitTest.getModuleName();
+                ITestResult result = entry.getResult();
+                QUnitTest qUnitTest = entry.getTest();
 
-            out.println("<a id=\"m" + methodIndex + "\"></a><h2>" + moduleName + ":" + qUnitTest.getTestName() + "</h2>");
+                out.println("<a id=\"m" + methodIndex + "\"></a><h2>" + entry.getModuleName() + ":" + entry.getTestName() + "</h2>");
 
-            if (result.getThrowable() != null) {
-                out.println("<div style=\"padding-left:3em\">");
-                out.println("<p>" + result.getThrowable().getLocalizedMessage() + "</p><br />");
+                if (result.getThrowable() != null) {
+                    out.println("<div style=\"padding-left:3em\">");
+                    out.println("<p>" + result.getThrowable().getLocalizedMessage() + "</p><br />");
 
-                if (qUnitTest.getSource() != null) {
-                    out.println(" " + qUnitTest.getSource().replace("\n", "<br />") + "<br />");
+                    if (qUnitTest.getSource() != null) {
+                        out.println(" " + qUnitTest.getSource().replace("\n", "<br />") + "<br />");
+                    }
+
+                    out.println("</div>");
                 }
 
-                out.println("</div>");
+                out.println("<p class=\"totop\"><a href=\"#summary\">back to summary</a></p>");
             }
-
-            out.println("<p class=\"totop\"><a href=\"#summary\">back to summary</a></p>");
         }
     }
 
-    private void resultDetail(IResultMap tests) {
-        for (ITestResult result : tests.getAllResults()) {
-            ITestNGMethod method = result.getMethod();
-            methodIndex++;
-            String cname = method.getTestClass().getName();
-            out.println("<a id=\"m" + methodIndex + "\"></a><h2>" + cname + ":"
-                    + method.getMethodName() + "</h2>");
-            Set<ITestResult> resultSet = tests.getResults(method);
-            generateForResult(result, method, resultSet.size());
-            out.println("<p class=\"totop\"><a href=\"#summary\">back to summary</a></p>");
-
+    private void resultDetail(QUnitReportModel.Section section) {
+        for (ITestNGMethod method : section.getMethods()) {
+            List<ITestResult> resultSet = section.getResults(method);
+
+            for (ITestResult result : resultSet) {
+                methodIndex++;
+                String cname = method.getTestClass().getName();
+                out.println("<a id=\"m" + methodIndex + "\"></a><h2>" + cname + ":"
+                        + method.getMethodName() + "</h2>");
+                generateForResult(result, method, resultSet.size());
+                out.println("<p class=\"totop\"><a href=\"#summary\">back to summary</a></p>");
+            }
         }
     }
 
@@ -462,37 +448,6 @@ public class QUnitEmailableReporter implements IReporter {
         }
     }
 
-    /**
-     * Since the methods will be sorted chronologically, we want to return
-     * the ITestNGMethod from the invoked methods.
-     */
-    private Collection<ITestNGMethod> getMethodSet(IResultMap tests, ISuite suite) {
-        List<IInvokedMethod> r = Lists.newArrayList();
-        List<IInvokedMethod> invokedMethods = suite.getAllInvokedMethods();
-
-        for (IInvokedMethod im : invokedMethods) {
-            if (tests.getAllMethods().contains(im.getTestMethod())) {
-                r.add(im);
-            }
-        }
-        Arrays.sort(r.toArray(new IInvokedMethod[r.size()]), new TestSorter());
-        List<ITestNGMethod> result = Lists.newArrayList();
-
-        // Add all the invoked methods
-        for (IInvokedMethod m : r) {
-            result.add(m.getTestMethod());
-        }
-
-        // Add all the methods that weren't invoked (e.g. skipped) that we
-        // haven't added yet
-        for (ITestNGMethod m : tests.getAllMethods()) {
-            if (!result.contains(m)) {
-                result.add(m);
-            }
-        }
-        return result;
-    }
-
     public void generateSuiteSummaryReport(List<ISuite> suites) {
         tableStart("param");
         out.print("<tr><th>Test</th>");
@@ -518,7 +473,7 @@ public class QUnitEmailableReporter implements IReporter {
 
         for (ISuite suite : suites) {
 
-            boolean isQUnitTestSuite = isQUnitTestSuite(suite);
+            QUnitReportModel model = QUnitReportModel.forSuite(suite);
 
             if (suites.size() > 1) {
                 titleRow(suite.getName(), 7);
@@ -529,9 +484,9 @@ public class QUnitEmailableReporter implements IReporter {
 
                 qty_tests += 1;
                 ITestContext overview = r.getTestContext();
-                startSummaryRow(isQUnitTestSuite ? "QUnit Test Suite" : overview.getName());
+                startSummaryRow(model.isQUnitTestSuite() ? "QUnit Test Suite" + getShardLabel() : overview.getName());
 
-                int q = getMethodSet(overview.getPassedTests(), suite).size();
+                int q = model.getSection(overview.getPassedTests()).getMethods().size();
                 qty_pass_m += q;
                 summaryCell(q, Integer.MAX_VALUE);
 
@@ -539,11 +494,11 @@ public class QUnitEmailableReporter implements IReporter {
                 qty_pass_s += q;
                 summaryCell(q, Integer.MAX_VALUE);
 
-                q = getMethodSet(overview.getSkippedTests(), suite).size();
+                q = model.getSection(overview.getSkippedTests()).getMethods().size();
                 qty_skip += q;
                 summaryCell(q, 0);
 
-                q = getMethodSet(overview.getFailedTests(), suite).size();
+                q = model.getSection(overview.getFailedTests()).getMethods().size();
                 qty_fail += q;
                 summaryCell(q, 0);
 
@@ -617,6 +572,17 @@ public class QUnitEmailableReporter implements IReporter {
 
     }
 
+    /**
+     * Tells the reports of different shards apart once they have been collected in one place
+     */
+    private String getShardLabel() {
+        if (QUnitConfiguration.getShardCount() == 1) {
+            return "";
+        }
+
+        return " (shard " + QUnitConfiguration.getShardIndex() + " of " + QUnitConfiguration.getShardCount() + ")";
+    }
+
     /**
      * Starts HTML stream
      */
@@ -659,22 +625,4 @@ public class QUnitEmailableReporter implements IReporter {
         out.println("</body></html>");
     }
 
-    // ~ Inner Classes --------------------------------------------------------
-
-    /**
-     * Arranges methods by classname and method name
-     */
-    private class TestSorter implements Comparator<IInvokedMethod> {
-        // ~ Methods -------------------------------------------------------------
-
-        /**
-         * Arranges methods by classname and method name
-         */
-        @Override
-        public int compare(IInvokedMethod o1, IInvokedMethod o2) {
-            return (int) (o1.getDate() - o2.getDate());
-        }
-    }
-
 }
-
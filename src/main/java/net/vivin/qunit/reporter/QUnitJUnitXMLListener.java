@@ -0,0 +1,95 @@
+package net.vivin.qunit.reporter;
+
+import net.vivin.qunit.QUnitTestSuite;
+import org.testng.ITestContext;
+import org.testng.ITestListener;
+import org.testng.ITestResult;
+import org.testng.TestNGException;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Writes the same report as {@link QUnitJUnitXMLReporter}, but as the tests run: every QUnit assertion is added to the
+ * report as soon as TestNG has a result for it, and the report on disk is brought up to date at least once a second.
+ * If the run is killed, the report still holds every assertion up to then. Test cases are in the order in which they
+ * ran, rather than failures first.
+ *
+ * Register this as a listener instead of registering {@link QUnitJUnitXMLReporter}; both write to the same file.
+ */
+public class QUnitJUnitXMLListener implements ITestListener {
+
+    private static final long CHECKPOINT_INTERVAL_IN_MILLISECONDS = 1000;
+
+    private QUnitJUnitXMLWriter writer;
+    private long lastCheckpoint;
+
+    @Override
+    public void onTestStart(ITestResult result) {
+    }
+
+    @Override
+    public void onTestSuccess(ITestResult result) {
+        add(result);
+    }
+
+    @Override
+    public void onTestFailure(ITestResult result) {
+        add(result);
+    }
+
+    @Override
+    public void onTestSkipped(ITestResult result) {
+        add(result);
+    }
+
+    @Override
+    public void onTestFailedButWithinSuccessPercentage(ITestResult result) {
+        add(result);
+    }
+
+    @Override
+    public void onStart(ITestContext context) {
+    }
+
+    @Override
+    public synchronized void onFinish(ITestContext context) {
+        if (writer == null) {
+            return;
+        }
+
+        try {
+            writer.close();
+        } catch (IOException e) {
+            throw new TestNGException(e);
+        } finally {
+            writer = null;
+        }
+    }
+
+    private synchronized void add(ITestResult result) {
+        Class<?> clazz = result.getTestClass().getRealClass();
+        if (!clazz.isAnnotationPresent(QUnitTestSuite.class)) {
+            return;
+        }
+
+        try {
+            if (writer == null) {
+                //The test context writes to a directory of its own inside the output directory, which is where
+                //reporters write
+                File outputDirectory = new File(result.getTestContext().getOutputDirectory()).getParentFile();
+                writer = new QUnitJUnitXMLWriter(outputDirectory, clazz, null);
+                lastCheckpoint = System.currentTimeMillis();
+            }
+
+            writer.writeTestCase(result);
+
+            if (System.currentTimeMillis() - lastCheckpoint >= CHECKPOINT_INTERVAL_IN_MILLISECONDS) {
+                writer.checkpoint();
+                lastCheckpoint = System.currentTimeMillis();
+            }
+        } catch (IOException e) {
+            throw new TestNGException(e);
+        }
+    }
+}
@@ -1,245 +1,172 @@
 package net.vivin.qunit.reporter;
 
-import net.vivin.qunit.QUnitTest;
+import net.vivin.qunit.QUnitConfiguration;
+import net.vivin.qunit.QUnitMetrics;
 import net.vivin.qunit.QUnitTestSuite;
-import org.apache.commons.lang3.StringUtils;
 import org.testng.*;
-import org.testng.collections.Lists;
-import org.testng.internal.Utils;
-import org.testng.xml.XmlClass;
 import org.testng.xml.XmlSuite;
-import org.testng.xml.XmlTest;
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.transform.*;
-import javax.xml.transform.dom.DOMSource;
-import javax.xml.transform.stream.StreamResult;
-import java.io.StringWriter;
-import java.net.InetAddress;
-import java.net.UnknownHostException;
-import java.text.DecimalFormat;
-import java.text.DecimalFormatSymbols;
-import java.text.SimpleDateFormat;
+
+import java.io.File;
+import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
- * This reporter is for QUnit tests
+ * This reporter is for QUnit tests. The report is written once the run is over; to have it written while the tests
+ * are running, use {@link QUnitJUnitXMLListener} instead.
+ *
+ * By default the whole run is a single suite in a single file. With {@link QUnitConfiguration#JUNIT_SPLIT}, every HTML
+ * file or every QUnit module gets a file of its own instead, with totals of its own, and the files are written on
+ * {@link QUnitConfiguration#THREADS} threads at once.
  */
 
 public class QUnitJUnitXMLReporter implements IReporter {
 
-    private enum JUnitTestReportElement {
-
-        TestSuite("testsuite"),
-        TestCase("testcase"),
-        Failure("failure");
-
-        private String tag;
-
-        private JUnitTestReportElement(String tag) {
-            this.tag = tag;
-        }
-    }
-
-    private enum JUnitTestReportElementAttribute {
-
-        HostName("hostname"),
-        Name("name"),
-        Tests("tests"),
-        Failures("failures"),
-        Skipped("skipped"),
-        Errors("errors"),
-        TimeStamp("timestamp"),
-        Time("time"),
-        ClassName("classname"),
-        Message("message"),
-        Type("type");
-
-        private String attribute;
-
-        private JUnitTestReportElementAttribute(String attribute) {
-            this.attribute = attribute;
-        }
-    }
-
     @Override
     public void generateReport(List<XmlSuite> xmlSuites, List<ISuite> suites, String defaultOutputDirectory) {
-
+        long start = System.nanoTime();
         try {
-            ISuite suite = suites.get(0);
-            XmlSuite xmlSuite = suite.getXmlSuite();
-            XmlTest xmlTest = xmlSuite.getTests().get(0);
-            XmlClass xmlClass = xmlTest.getXmlClasses().get(0);
-            Class clazz = xmlClass.getSupportClass();
-
-            if (!clazz.isAnnotationPresent(QUnitTestSuite.class)) {
-                throw new TestNGException(this.getClass().getName() + " is only applicable for tests that have been annotated with " + QUnitTestSuite.class.getName() + ".");
-            }
-
-            ISuiteResult suiteResult = suite.getResults().values().iterator().next(); //We should only have one result since we only have one suite
-            ITestContext testContext = suiteResult.getTestContext();
-
-            DocumentBuilderFactory documentBuilderFactory = DocumentBuilderFactory.newInstance();
-            DocumentBuilder documentBuilder = documentBuilderFactory.newDocumentBuilder();
-
-            //Start with the root!
-            Document document = documentBuilder.newDocument();
-            Element testSuiteElement = document.createElement(JUnitTestReportElement.TestSuite.tag);
-
-            testSuiteElement.setAttribute(JUnitTestReportElementAttribute.HostName.attribute, InetAddress.getLocalHost().getHostName());
-            testSuiteElement.setAttribute(JUnitTestReportElementAttribute.Name.attribute, StringUtils.join(StringUtils.splitByCharacterTypeCamelCase(clazz.getSimpleName()), " "));
-
-            int passed = testContext.getPassedTests().size();
-            int failed = testContext.getFailedTests().size();
-            int skipped = testContext.getSkippedTests().size();
-
-            testSuiteElement.setAttribute(JUnitTestReportElementAttribute.Tests.attribute, String.valueOf(passed + failed + skipped));
-            testSuiteElement.setAttribute(JUnitTestReportElementAttribute.Failures.attribute, String.valueOf(failed));
-            testSuiteElement.setAttribute(JUnitTestReportElementAttribute.Skipped.attribute, String.valueOf(skipped));
-            testSuiteElement.setAttribute(JUnitTestReportElementAttribute.Errors.attribute, "0");
-            testSuiteElement.setAttribute(JUnitTestReportElementAttribute.TimeStamp.attribute, toGMTString(Calendar.getInstance().getTime()));
-
-            long startTime = Math.min(testContext.getStartDate().getTime(), Long.MAX_VALUE);
-            long endTime = Math.max(testContext.getEndDate().getTime(), Long.MIN_VALUE);
-            testSuiteElement.setAttribute(JUnitTestReportElementAttribute.Time.attribute, formatTime(endTime - startTime));
-
-            addTestCaseElements(document, testSuiteElement, suite, testContext.getFailedTests());
-            addTestCaseElements(document, testSuiteElement, suite, testContext.getPassedTests());
-            addTestCaseElements(document, testSuiteElement, suite, testContext.getSkippedTests());
-
-            document.appendChild(testSuiteElement);
-
-            Utils.writeFile(defaultOutputDirectory, "TEST-" + clazz.getName() + ".xml", documentToString(document));
-
-        } catch (ParserConfigurationException e) {
-            throw new TestNGException(e);
-        } catch (UnknownHostException e) {
-            throw new TestNGException(e);
-        } catch (TransformerException e) {
-            throw new TestNGException(e);
+            createReport(xmlSuites, suites, defaultOutputDirectory);
+        } finally {
+            QUnitMetrics.get().recordReporter(getClass(), System.nanoTime() - start);
         }
     }
 
-    private String documentToString(Document document) throws TransformerException {
-        TransformerFactory transformerFactory = TransformerFactory.newInstance();
-        Transformer transformer = transformerFactory.newTransformer();
-        transformer.setOutputProperty(OutputKeys.INDENT, "yes");
-
-        StreamResult streamResult = new StreamResult(new StringWriter());
-        Source source = new DOMSource(document);
-        transformer.transform(source, streamResult);
-
-        return streamResult.getWriter().toString();
-    }
-
-    private void addTestCaseElements(Document document, Element root, ISuite suite, IResultMap tests) {
-
-        if(tests.getAllMethods().size() > 0) {
-            for(ITestNGMethod method : getMethodSet(tests, suite)) {
-                QUnitTest qUnitTest = (QUnitTest) method.getInstances()[0];
-                String moduleName = qUnitTest.getModuleName();
-                String testName = qUnitTest.getTestName();
-
-                Set<ITestResult> results = tests.getResults(method);
-                long end = Long.MIN_VALUE;
-                long start = Long.MAX_VALUE;
-
-                for(ITestResult testResult : results) {
-                    if(testResult.getEndMillis() > end) {
-                        end = testResult.getEndMillis();
-                    }
-
-                    if(testResult.getStartMillis() < start) {
-                        start = testResult.getStartMillis();
-                    }
-                }
+    private void createReport(List<XmlSuite> xmlSuites, List<ISuite> suites, String defaultOutputDirectory) {
 
-                long time = end - start;
+        ISuite suite = suites.get(0);
+        Class<?> clazz = QUnitReportModel.getTestClass(suite);
 
-                Element testCaseElement = document.createElement(JUnitTestReportElement.TestCase.tag);
-                testCaseElement.setAttribute(JUnitTestReportElementAttribute.Name.attribute, testName);
-                testCaseElement.setAttribute(JUnitTestReportElementAttribute.ClassName.attribute, moduleName);
-                testCaseElement.setAttribute("time", formatTime(time));
+        if (!clazz.isAnnotationPresent(QUnitTestSuite.class)) {
+            throw new TestNGException(this.getClass().getName() + " is only applicable for tests that have been annotated with " + QUnitTestSuite.class.getName() + ".");
+        }
 
-                for(ITestResult result : results) {
-                    if(result.getThrowable() != null) {
-                        Element failureElement = document.createElement(JUnitTestReportElement.Failure.tag);
-                        failureElement.setAttribute(JUnitTestReportElementAttribute.Message.attribute, result.getThrowable().getLocalizedMessage());
-                        failureElement.setAttribute(JUnitTestReportElementAttribute.Type.attribute, "QUnit");
+        ISuiteResult suiteResult = suite.getResults().values().iterator().next(); //We should only have one result since we only have one suite
+        ITestContext testContext = suiteResult.getTestContext();
 
-                        if(qUnitTest.getSource() != null) {
-                            failureElement.setTextContent(qUnitTest.getSource());
-                        }
+        QUnitReportModel model = QUnitReportModel.forSuite(suite);
+        QUnitReportModel.Section[] sections = {model.getSection(testContext.getFailedTests()), model.getSection(testContext.getPassedTests()), model.getSection(testContext.getSkippedTests())};
 
-                        testCaseElement.appendChild(failureElement);
-                    }
-                }
+        String split = QUnitConfiguration.getJUnitSplit();
+        if (split.equals("none")) {
+            List<QUnitReportModel.Entry> entries = new ArrayList<QUnitReportModel.Entry>();
+            for (QUnitReportModel.Section section : sections) {
+                entries.addAll(section.getEntries());
+            }
 
-                root.appendChild(testCaseElement);
+            try {
+                writeReport(new QUnitJUnitXMLWriter(new File(defaultOutputDirectory), clazz, getTotals(entries)), entries);
+            } catch (IOException e) {
+                throw new TestNGException(e);
             }
+        } else {
+            writeReports(new File(defaultOutputDirectory), clazz, sections, split.equals("file"));
         }
     }
 
     /**
-     * Since the methods will be sorted chronologically, we want to return
-     * the ITestNGMethod from the invoked methods.
+     * Writes a report for every HTML file or every module, in the order in which they first appear in the results
      */
-    private Collection<ITestNGMethod> getMethodSet(IResultMap tests, ISuite suite) {
-        List<IInvokedMethod> r = Lists.newArrayList();
-        List<IInvokedMethod> invokedMethods = suite.getAllInvokedMethods();
+    private void writeReports(final File outputDirectory, final Class<?> clazz, QUnitReportModel.Section[] sections, boolean byFile) {
+        //Assertions that don't know which file they came from go into the report of the whole run
+        final Map<String, List<QUnitReportModel.Entry>> groups = new LinkedHashMap<String, List<QUnitReportModel.Entry>>();
+        for (QUnitReportModel.Section section : sections) {
+            for (QUnitReportModel.Entry entry : section.getEntries()) {
+                String key = byFile ? entry.getTest().getPath() : entry.getModuleName();
+
+                List<QUnitReportModel.Entry> entries = groups.get(key);
+                if (entries == null) {
+                    entries = new ArrayList<QUnitReportModel.Entry>();
+                    groups.put(key, entries);
+                }
 
-        for (IInvokedMethod im : invokedMethods) {
-            if (tests.getAllMethods().contains(im.getTestMethod())) {
-                r.add(im);
+                entries.add(entry);
             }
         }
-        Arrays.sort(r.toArray(new IInvokedMethod[r.size()]), new TestSorter());
-        List<ITestNGMethod> result = Lists.newArrayList();
 
-        // Add all the invoked methods
-        for (IInvokedMethod m : r) {
-            result.add(m.getTestMethod());
-        }
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(QUnitConfiguration.getThreadCount(), groups.size())), new ReportThreadFactory());
+        try {
+            List<Future<Void>> futures = new ArrayList<Future<Void>>();
+            Set<String> fileNames = new HashSet<String>();
+
+            for (final Map.Entry<String, List<QUnitReportModel.Entry>> group : groups.entrySet()) {
+                final File file = group.getKey() == null ? null : new File(outputDirectory, getFileName(group.getKey(), byFile, fileNames));
+
+                futures.add(executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws IOException {
+                        QUnitJUnitXMLWriter.Totals totals = getTotals(group.getValue());
+                        writeReport(file == null ? new QUnitJUnitXMLWriter(outputDirectory, clazz, totals) : new QUnitJUnitXMLWriter(file, group.getKey(), totals), group.getValue());
+                        return null;
+                    }
+                }));
+            }
 
-        // Add all the methods that weren't invoked (e.g. skipped) that we
-        // haven't added yet
-        for (ITestNGMethod m : tests.getAllMethods()) {
-            if (!result.contains(m)) {
-                result.add(m);
+            for (Future<Void> future : futures) {
+                future.get();
             }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new TestNGException(e);
+        } catch (ExecutionException e) {
+            throw new TestNGException(e.getCause());
+        } finally {
+            executor.shutdownNow();
         }
+    }
 
-        return result;
+    private static void writeReport(QUnitJUnitXMLWriter writer, List<QUnitReportModel.Entry> entries) throws IOException {
+        try {
+            for (QUnitReportModel.Entry entry : entries) {
+                writer.writeTestCase(entry.getModuleName(), entry.getTestName(), entry.getTime(), entry.getStatus(), entry.getResult().getThrowable(), entry.getTest().getSource(),
+                        entry.getTest().getPath(), entry.getTest().getAttempts());
+            }
+        } finally {
+            writer.close();
+        }
     }
 
-    private String formatTime(float time) {
-        DecimalFormatSymbols symbols = new DecimalFormatSymbols();
-        // JUnitReports wants points here, regardless of the locale
-        symbols.setDecimalSeparator('.');
-        DecimalFormat format = new DecimalFormat("#.###", symbols);
-        format.setMinimumFractionDigits(3);
-        return format.format(time / 1000.0f);
+    //The suite takes as long as its test cases do in the browser. TestNG's own start and end times only tell us how
+    //long it took to replay the results. The totals go at the top of the report, so we add them up first.
+    private static QUnitJUnitXMLWriter.Totals getTotals(List<QUnitReportModel.Entry> entries) {
+        QUnitJUnitXMLWriter.Totals totals = new QUnitJUnitXMLWriter.Totals();
+        for (QUnitReportModel.Entry entry : entries) {
+            totals.add(entry.getStatus(), entry.getTime());
+        }
+
+        return totals;
     }
 
-    private String toGMTString(Date date) {
-        SimpleDateFormat simpleDateFormat = new SimpleDateFormat();
-        simpleDateFormat.setTimeZone(new SimpleTimeZone(0, "GMT"));
-        simpleDateFormat.applyPattern("dd MMM yyyy HH:mm:ss z");
-        return simpleDateFormat.format(date);
+    /**
+     * Returns the name of the report for an HTML file (complex/complexTest.html becomes TEST-complex.complexTest.xml)
+     * or a module. Names that only differ in case or in characters that can't be in a file name are numbered, so that
+     * no report overwrites another.
+     */
+    static String getFileName(String key, boolean byFile, Set<String> fileNames) {
+        String name = byFile ? key.replaceFirst("(?i)\\.html?$", "").replaceAll("[/\\\\]+", ".") : key;
+        name = name.replaceAll("[^A-Za-z0-9._-]", "_");
+
+        String fileName = name;
+        for (int i = 2; !fileNames.add(fileName.toLowerCase(Locale.ENGLISH)); i++) {
+            fileName = name + "-" + i;
+        }
+
+        return "TEST-" + fileName + QUnitConfiguration.getShardSuffix() + ".xml";
     }
 
     /**
-     * Arranges methods by classname and method name
+     * Creates daemon threads, so that a report that is still being written never keeps the JVM alive
      */
-    private class TestSorter implements Comparator<IInvokedMethod> {
+    private static class ReportThreadFactory implements ThreadFactory {
+
+        private final AtomicInteger threadNumber = new AtomicInteger(1);
+
         @Override
-        public int compare(IInvokedMethod o1, IInvokedMethod o2) {
-            return (int) (o1.getDate() - o2.getDate());
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "qunit-report-" + threadNumber.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
         }
     }
 }
-
@@ -0,0 +1,361 @@
+package net.vivin.qunit.reporter;
+
+import net.vivin.qunit.QUnitConfiguration;
+import net.vivin.qunit.QUnitTest;
+import org.apache.commons.lang3.StringUtils;
+import org.testng.ITestResult;
+import org.testng.TestNGException;
+
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.text.DecimalFormat;
+import java.text.DecimalFormatSymbols;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.SimpleTimeZone;
+
+/**
+ * Writes a JUnit XML report one test case at a time, so that the report is never held in memory as a whole. Test cases
+ * are buffered until the next checkpoint (or until the buffer grows past a megabyte), and then appended to the file
+ * together with the closing tag of the suite, which the next checkpoint overwrites again. The file is therefore a
+ * well-formed report of everything up to the last checkpoint, even if the run is killed before it ends.
+ *
+ * When the totals of the suite aren't known up front, they are counted as test cases are written and written with
+ * leading zeros, so that every checkpoint can update them in place.
+ */
+class QUnitJUnitXMLWriter implements Closeable {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final int PENDING_LIMIT_IN_BYTES = 1024 * 1024;
+
+    private static final byte[] TRAILER = "\n</testsuite>\n".getBytes(UTF_8);
+
+    //Attributes whose values are updated in place when the totals are counted as we go, in the order they are written
+    private static final String[] TOTALS = {"tests", "failures", "skipped", "time"};
+
+    //Finding the implementation means looking through the classpath, so it's only done once. Factories aren't
+    //guaranteed to be thread-safe, so writers are created one at a time.
+    private static final XMLOutputFactory OUTPUT_FACTORY = XMLOutputFactory.newInstance();
+
+    //Looking up the host name can take a while, and a run that is split into many reports would do it for every one
+    private static volatile String hostName;
+
+    private final FileChannel channel;
+    private final ByteArrayOutputStream pending = new ByteArrayOutputStream();
+    private final XMLStreamWriter xml;
+    private final boolean counting;
+    private final Totals totals;
+
+    //DecimalFormat isn't thread-safe, but a writer is only ever used by one thread at a time
+    private final DecimalFormat timeFormat = createTimeFormat("#.###");
+    private final DecimalFormat paddedTimeFormat = createTimeFormat("000000000.000");
+
+    private long[] totalOffsets;
+    private long committed;
+
+    /**
+     * Starts the report for the given QUnit test class in the output directory. If the totals are null, they are
+     * counted from the test cases that are written.
+     */
+    QUnitJUnitXMLWriter(File outputDirectory, Class<?> testClass, Totals totals) throws IOException {
+        this(new File(outputDirectory, "TEST-" + testClass.getName() + QUnitConfiguration.getShardSuffix() + ".xml"),
+                StringUtils.join(StringUtils.splitByCharacterTypeCamelCase(testClass.getSimpleName()), " "), totals);
+    }
+
+    /**
+     * Starts a report with the given suite name in the given file
+     */
+    QUnitJUnitXMLWriter(File file, String name, Totals totals) throws IOException {
+        file.getParentFile().mkdirs();
+
+        this.channel = new RandomAccessFile(file, "rw").getChannel();
+        this.channel.truncate(0);
+        this.counting = totals == null;
+        this.totals = counting ? new Totals() : totals;
+
+        try {
+            synchronized (OUTPUT_FACTORY) {
+                xml = OUTPUT_FACTORY.createXMLStreamWriter(pending, UTF_8.name());
+            }
+            startTestSuite(name);
+        } catch (XMLStreamException e) {
+            channel.close();
+            throw new IOException(e);
+        }
+
+        checkpoint();
+    }
+
+    /**
+     * Writes the test case for a QUnit assertion that TestNG has run
+     */
+    void writeTestCase(ITestResult result) throws IOException {
+        QUnitTest qUnitTest = QUnitTest.fromTestResult(result);
+        writeTestCase(qUnitTest.getModuleName(), qUnitTest.getTestName(), qUnitTest.getReportedTime(result), result.getStatus(), result.getThrowable(), qUnitTest.getSource(), qUnitTest.getPath(), qUnitTest.getAttempts());
+    }
+
+    /**
+     * Writes a test case. The file, if known, is the HTML file that the assertion was made in. A test that took more
+     * than one attempt (because failing tests were run again) says how many.
+     */
+    void writeTestCase(String className, String name, long time, int status, Throwable throwable, String source, String file, int attempts) throws IOException {
+        try {
+            xml.writeCharacters("\n  ");
+            xml.writeStartElement("testcase");
+            xml.writeAttribute("name", name);
+            xml.writeAttribute("classname", className);
+            if (file != null) {
+                xml.writeAttribute("file", file);
+            }
+            xml.writeAttribute("time", formatTime(time));
+            if (attempts > 1) {
+                xml.writeAttribute("attempts", String.valueOf(attempts));
+            }
+
+            if (throwable != null) {
+                xml.writeCharacters("\n    ");
+                xml.writeStartElement("failure");
+                if (throwable.getLocalizedMessage() != null) {
+                    xml.writeAttribute("message", throwable.getLocalizedMessage());
+                }
+                xml.writeAttribute("type", "QUnit");
+
+                if (source != null) {
+                    xml.writeCharacters(source);
+                }
+
+                xml.writeEndElement();
+                xml.writeCharacters("\n  ");
+            }
+
+            xml.writeEndElement();
+        } catch (XMLStreamException e) {
+            throw new IOException(e);
+        }
+
+        if (counting) {
+            totals.add(status, time);
+        }
+
+        if (pending.size() >= PENDING_LIMIT_IN_BYTES) {
+            checkpoint();
+        }
+    }
+
+    /**
+     * Appends everything written so far to the file, followed by the closing tag of the suite, and brings the totals up
+     * to date
+     */
+    void checkpoint() throws IOException {
+        try {
+            xml.flush();
+        } catch (XMLStreamException e) {
+            throw new IOException(e);
+        }
+
+        byte[] bytes = pending.toByteArray();
+        pending.reset();
+
+        if (totalOffsets == null && counting) {
+            totalOffsets = findTotals(bytes);
+        }
+
+        //Both go out in a single write, so the file is only ever without its closing tag for as long as that takes
+        channel.position(committed);
+        write(ByteBuffer.wrap(bytes), ByteBuffer.wrap(TRAILER));
+        committed += bytes.length;
+
+        if (counting) {
+            String[] values = {formatCount(totals.tests), formatCount(totals.failures), formatCount(totals.skipped), formatPaddedTime(totals.time)};
+            for (int i = 0; i < values.length; i++) {
+                channel.write(ByteBuffer.wrap(values[i].getBytes(UTF_8)), totalOffsets[i]);
+            }
+        }
+    }
+
+    /**
+     * Finishes the suite and closes the file
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            checkpoint();
+
+            try {
+                xml.writeCharacters("\n");
+                xml.writeEndElement();
+                xml.writeEndDocument();
+                xml.writeCharacters("\n");
+                xml.flush();
+            } catch (XMLStreamException e) {
+                throw new IOException(e);
+            }
+
+            byte[] bytes = pending.toByteArray();
+            channel.position(committed);
+            write(ByteBuffer.wrap(bytes));
+            channel.truncate(committed + bytes.length);
+        } finally {
+            channel.close();
+        }
+    }
+
+    private void startTestSuite(String name) throws XMLStreamException {
+        xml.writeStartDocument(UTF_8.name(), "1.0");
+        xml.writeCharacters("\n");
+        xml.writeStartElement("testsuite");
+        xml.writeAttribute("hostname", getHostName());
+        xml.writeAttribute("name", name);
+        xml.writeAttribute("tests", counting ? formatCount(0) : String.valueOf(totals.tests));
+        xml.writeAttribute("failures", counting ? formatCount(0) : String.valueOf(totals.failures));
+        xml.writeAttribute("skipped", counting ? formatCount(0) : String.valueOf(totals.skipped));
+        xml.writeAttribute("errors", "0");
+        xml.writeAttribute("timestamp", toGMTString(new Date()));
+        xml.writeAttribute("time", counting ? formatPaddedTime(0) : formatTime(totals.time));
+
+        //Sharded runs write one file per shard; the shard is recorded so that the files can be told apart once they
+        //have been merged
+        if (QUnitConfiguration.getShardCount() > 1) {
+            xml.writeCharacters("\n  ");
+            xml.writeStartElement("properties");
+            writeProperty(QUnitConfiguration.SHARD_INDEX, String.valueOf(QUnitConfiguration.getShardIndex()));
+            writeProperty(QUnitConfiguration.SHARD_COUNT, String.valueOf(QUnitConfiguration.getShardCount()));
+            xml.writeCharacters("\n  ");
+            xml.writeEndElement();
+        } else {
+            //Closes the start tag, so that it's complete by the first checkpoint
+            xml.writeCharacters("");
+        }
+    }
+
+    private static String getHostName() {
+        if (hostName == null) {
+            try {
+                hostName = InetAddress.getLocalHost().getHostName();
+            } catch (UnknownHostException e) {
+                throw new TestNGException(e);
+            }
+        }
+
+        return hostName;
+    }
+
+    private void writeProperty(String name, String value) throws XMLStreamException {
+        xml.writeCharacters("\n    ");
+        xml.writeEmptyElement("property");
+        xml.writeAttribute("name", name);
+        xml.writeAttribute("value", value);
+    }
+
+    private void write(ByteBuffer... buffers) throws IOException {
+        long remaining = 0;
+        for (ByteBuffer buffer : buffers) {
+            remaining += buffer.remaining();
+        }
+
+        while (remaining > 0) {
+            remaining -= channel.write(buffers);
+        }
+    }
+
+    /**
+     * Returns where in the file the values of the totals start. Attribute values are always escaped, so the name of an
+     * attribute followed by an equals sign and a quote can only be the attribute itself.
+     */
+    private long[] findTotals(byte[] header) {
+        long[] offsets = new long[TOTALS.length];
+        int from = indexOf(header, "<testsuite".getBytes(UTF_8), 0);
+
+        for (int i = 0; i < TOTALS.length; i++) {
+            int index = indexOf(header, (" " + TOTALS[i] + "=\"").getBytes(UTF_8), from);
+            if (index < 0) {
+                index = indexOf(header, (" " + TOTALS[i] + "='").getBytes(UTF_8), from);
+            }
+
+            if (index < 0) {
+                throw new IllegalStateException("Unable to find the " + TOTALS[i] + " attribute of the test suite");
+            }
+
+            offsets[i] = committed + index + TOTALS[i].length() + 3;
+        }
+
+        return offsets;
+    }
+
+    private static int indexOf(byte[] bytes, byte[] pattern, int from) {
+        for (int i = Math.max(from, 0); i <= bytes.length - pattern.length; i++) {
+            int j = 0;
+            while (j < pattern.length && bytes[i + j] == pattern[j]) {
+                j++;
+            }
+
+            if (j == pattern.length) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    private static String formatCount(int count) {
+        return String.format("%010d", count);
+    }
+
+    private String formatTime(long time) {
+        return timeFormat.format(time / 1000.0f);
+    }
+
+    private String formatPaddedTime(long time) {
+        return paddedTimeFormat.format(time / 1000.0);
+    }
+
+    private static DecimalFormat createTimeFormat(String pattern) {
+        DecimalFormatSymbols symbols = new DecimalFormatSymbols();
+        // JUnitReports wants points here, regardless of the locale
+        symbols.setDecimalSeparator('.');
+        DecimalFormat format = new DecimalFormat(pattern, symbols);
+        format.setMinimumFractionDigits(3);
+        return format;
+    }
+
+    private static String toGMTString(Date date) {
+        SimpleDateFormat simpleDateFormat = new SimpleDateFormat();
+        simpleDateFormat.setTimeZone(new SimpleTimeZone(0, "GMT"));
+        simpleDateFormat.applyPattern("dd MMM yyyy HH:mm:ss z");
+        return simpleDateFormat.format(date);
+    }
+
+    /**
+     * The counts and the total time in milliseconds of a suite's test cases
+     */
+    static class Totals {
+
+        private int tests;
+        private int failures;
+        private int skipped;
+        private long time;
+
+        void add(int status, long time) {
+            tests++;
+            if (status == ITestResult.FAILURE) {
+                failures++;
+            } else if (status == ITestResult.SKIP) {
+                skipped++;
+            }
+
+            this.time += time;
+        }
+    }
+}
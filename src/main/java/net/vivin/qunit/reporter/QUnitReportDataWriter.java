@@ -0,0 +1,212 @@
+package net.vivin.qunit.reporter;
+
+import com.google.gson.Gson;
+import com.google.gson.stream.JsonWriter;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.testng.ITestResult;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Writes the data of a QUnit report, along with the page that shows it. The assertions are written one module after
+ * another, and split into chunks of a fixed number of rows so that the page only has to load the chunks it shows. A
+ * summary of the run and of every module is written last, once everything has been counted.
+ *
+ * Every file is JSON wrapped in a call to the page's QUnitReport object, so that the page can load it with a script tag
+ * when it is opened straight from the disk, where browsers don't allow it to read files any other way.
+ */
+class QUnitReportDataWriter implements Closeable {
+
+    static final int CHUNK_SIZE = 5000;
+
+    static final String SUMMARY_FILE = "summary.js";
+
+    private static final String VIEWER = "QUnitReport.html";
+
+    //The status of an assertion, as the page knows it
+    static final int PASSED = 0;
+    static final int FAILED = 1;
+    static final int SKIPPED = 2;
+
+    private final File directory;
+    private final int chunkSize;
+    private final Summary summary;
+
+    private Module module;
+    private Writer chunkWriter;
+    private JsonWriter chunk;
+
+    QUnitReportDataWriter(File directory, String title) throws IOException {
+        this(directory, title, CHUNK_SIZE);
+    }
+
+    /**
+     * Starts the report in the given directory. Whatever the directory holds is deleted first, so that no chunk of an
+     * earlier, larger report is left behind.
+     */
+    QUnitReportDataWriter(File directory, String title, int chunkSize) throws IOException {
+        if (directory.isDirectory()) {
+            FileUtils.cleanDirectory(directory);
+        } else if (!directory.mkdirs()) {
+            throw new IOException("Unable to create " + directory.getAbsolutePath());
+        }
+
+        this.directory = directory;
+        this.chunkSize = chunkSize;
+        this.summary = new Summary(title, chunkSize);
+    }
+
+    /**
+     * Starts a module. Every assertion that is written until the next module is started belongs to it.
+     */
+    void startModule(String name) {
+        module = new Module(name, summary.tests);
+        summary.modules.add(module);
+    }
+
+    void writeAssertion(String testName, long time, int status, String message, String source) throws IOException {
+        if (module == null) {
+            throw new IllegalStateException("An assertion can't be written before its module has been started");
+        }
+
+        if (chunk == null) {
+            File file = new File(directory, getChunkFileName(summary.chunks));
+            chunkWriter = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), "UTF-8"));
+            chunkWriter.write("QUnitReport.chunk(" + summary.chunks + ",");
+            chunk = new JsonWriter(chunkWriter);
+            chunk.beginArray();
+            summary.chunks++;
+        }
+
+        int code = toCode(status);
+
+        //Passing assertions are only ever shown by name, so they are written without a message
+        chunk.beginArray();
+        chunk.value(code);
+        chunk.value(testName);
+        chunk.value(time);
+        if (message != null || source != null) {
+            chunk.value(message);
+            chunk.value(source);
+        }
+        chunk.endArray();
+
+        module.add(code, time);
+        summary.add(code, time);
+
+        if (summary.tests % chunkSize == 0) {
+            closeChunk();
+        }
+    }
+
+    /**
+     * Writes the summary and the page, and closes the last chunk
+     */
+    @Override
+    public void close() throws IOException {
+        closeChunk();
+
+        FileUtils.writeStringToFile(new File(directory, SUMMARY_FILE), "QUnitReport.summary(" + new Gson().toJson(summary) + ");\n", "UTF-8");
+
+        InputStream viewer = QUnitReportDataWriter.class.getResourceAsStream("/qunit/" + VIEWER);
+        try {
+            FileUtils.copyInputStreamToFile(viewer, new File(directory, "index.html"));
+        } finally {
+            IOUtils.closeQuietly(viewer);
+        }
+    }
+
+    static String getChunkFileName(int index) {
+        return "chunk-" + index + ".js";
+    }
+
+    private void closeChunk() throws IOException {
+        if (chunk == null) {
+            return;
+        }
+
+        try {
+            chunk.endArray();
+            chunk.flush();
+            chunkWriter.write(");\n");
+        } finally {
+            chunkWriter.close();
+            chunk = null;
+            chunkWriter = null;
+        }
+    }
+
+    private static int toCode(int status) {
+        switch (status) {
+            case ITestResult.FAILURE:
+                return FAILED;
+            case ITestResult.SKIP:
+                return SKIPPED;
+            default:
+                return PASSED;
+        }
+    }
+
+    /**
+     * What the page needs to know before it loads any chunk. Serialized with Gson.
+     */
+    private static class Summary {
+
+        private final String title;
+        private final long generated = System.currentTimeMillis();
+        private final int chunkSize;
+        private int chunks;
+        private int tests;
+        private int failures;
+        private int skipped;
+        private long time;
+        private final List<Module> modules = new ArrayList<Module>();
+
+        Summary(String title, int chunkSize) {
+            this.title = title;
+            this.chunkSize = chunkSize;
+        }
+
+        void add(int code, long time) {
+            tests++;
+            failures += code == FAILED ? 1 : 0;
+            skipped += code == SKIPPED ? 1 : 0;
+            this.time += time;
+        }
+    }
+
+    /**
+     * A module, and where its assertions are among all of the rows of the report. Serialized with Gson.
+     */
+    private static class Module {
+
+        private final String name;
+        private final int first;
+        private int count;
+        private int failures;
+        private int skipped;
+        private long time;
+
+        Module(String name, int first) {
+            this.name = name;
+            this.first = first;
+        }
+
+        void add(int code, long time) {
+            count++;
+            failures += code == FAILED ? 1 : 0;
+            skipped += code == SKIPPED ? 1 : 0;
+            this.time += time;
+        }
+    }
+}
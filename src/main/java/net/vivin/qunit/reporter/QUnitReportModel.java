@@ -0,0 +1,225 @@
+package net.vivin.qunit.reporter;
+
+import net.vivin.qunit.QUnitTest;
+import net.vivin.qunit.QUnitTestSuite;
+import org.testng.*;
+import org.testng.xml.XmlClass;
+import org.testng.xml.XmlSuite;
+import org.testng.xml.XmlTest;
+
+import java.util.*;
+
+/**
+ * What the QUnit reporters know about a suite, indexed once so that every reporter can walk it in time linear in the
+ * number of results. Every result map of every test in the suite (passed, failed, and skipped tests and
+ * configurations) gets a {@link Section}, with its results in the order in which they ran, grouped by method and, for
+ * QUnit suites, by module.
+ *
+ * TestNG's own lookups don't scale to a run with a result per assertion: IResultMap.getResults(method) looks at every
+ * result in the map, and every QUnitTest that comes from a factory has a method with the same hash code. So results and
+ * methods are only ever looked up by identity here.
+ *
+ * The model is built the first time a reporter asks for it and kept with the suite, so the reporters of a run share it.
+ */
+class QUnitReportModel {
+
+    private static final String ATTRIBUTE = QUnitReportModel.class.getName();
+
+    private final boolean qUnitTestSuite;
+    private final Map<IResultMap, Section> sections = new IdentityHashMap<IResultMap, Section>();
+
+    private QUnitReportModel(ISuite suite) {
+        qUnitTestSuite = isQUnitTestSuite(suite);
+
+        //Invoked methods are recorded in the order in which they ran, one for every result
+        List<ITestResult> invokedResults = new ArrayList<ITestResult>();
+        for (IInvokedMethod invokedMethod : suite.getAllInvokedMethods()) {
+            if (invokedMethod.getTestResult() != null) {
+                invokedResults.add(invokedMethod.getTestResult());
+            }
+        }
+
+        for (ISuiteResult suiteResult : suite.getResults().values()) {
+            ITestContext testContext = suiteResult.getTestContext();
+
+            for (IResultMap tests : new IResultMap[]{testContext.getFailedConfigurations(), testContext.getFailedTests(), testContext.getSkippedConfigurations(),
+                    testContext.getSkippedTests(), testContext.getPassedTests()}) {
+                sections.put(tests, new Section(tests, invokedResults, qUnitTestSuite));
+            }
+        }
+    }
+
+    /**
+     * Returns the model of the suite, building it if no reporter has asked for it yet
+     */
+    static QUnitReportModel forSuite(ISuite suite) {
+        synchronized (suite) {
+            Object model = suite.getAttribute(ATTRIBUTE);
+            if (model instanceof QUnitReportModel) {
+                return (QUnitReportModel) model;
+            }
+
+            QUnitReportModel newModel = new QUnitReportModel(suite);
+            suite.setAttribute(ATTRIBUTE, newModel);
+
+            return newModel;
+        }
+    }
+
+    static boolean isQUnitTestSuite(ISuite suite) {
+        return getTestClass(suite).isAnnotationPresent(QUnitTestSuite.class);
+    }
+
+    static Class<?> getTestClass(ISuite suite) {
+        XmlSuite xmlSuite = suite.getXmlSuite();
+        XmlTest xmlTest = xmlSuite.getTests().get(0);
+        XmlClass xmlClass = xmlTest.getXmlClasses().get(0);
+
+        return xmlClass.getSupportClass();
+    }
+
+    boolean isQUnitTestSuite() {
+        return qUnitTestSuite;
+    }
+
+    /**
+     * Returns the section for one of the result maps of a test in the suite
+     */
+    Section getSection(IResultMap tests) {
+        Section section = sections.get(tests);
+        if (section == null) {
+            throw new IllegalArgumentException("The result map does not belong to this suite");
+        }
+
+        return section;
+    }
+
+    /**
+     * The results of one result map
+     */
+    static class Section {
+
+        private final List<Entry> entries = new ArrayList<Entry>();
+        private final Map<ITestNGMethod, List<ITestResult>> resultsByMethod = new IdentityHashMap<ITestNGMethod, List<ITestResult>>();
+        private final List<ITestNGMethod> methods = new ArrayList<ITestNGMethod>();
+        private final Map<String, List<Entry>> entriesByModule = new LinkedHashMap<String, List<Entry>>();
+        private int resultCount;
+
+        private Section(IResultMap tests, List<ITestResult> invokedResults, boolean qUnitTestSuite) {
+            Set<ITestResult> allResults = tests.getAllResults();
+            Set<ITestResult> remaining = Collections.newSetFromMap(new IdentityHashMap<ITestResult, Boolean>(allResults.size()));
+            remaining.addAll(allResults);
+
+            //Results in the order in which they ran, followed by anything that never ran (skipped tests, mostly)
+            for (ITestResult result : invokedResults) {
+                if (remaining.remove(result)) {
+                    add(result, qUnitTestSuite);
+                }
+            }
+
+            for (ITestResult result : allResults) {
+                if (remaining.remove(result)) {
+                    add(result, qUnitTestSuite);
+                }
+            }
+        }
+
+        private void add(ITestResult result, boolean qUnitTestSuite) {
+            List<ITestResult> methodResults = resultsByMethod.get(result.getMethod());
+            if (methodResults == null) {
+                methodResults = new ArrayList<ITestResult>();
+                resultsByMethod.put(result.getMethod(), methodResults);
+                methods.add(result.getMethod());
+            }
+
+            methodResults.add(result);
+            resultCount++;
+
+            if (qUnitTestSuite) {
+                Entry entry = new Entry(result);
+                entries.add(entry);
+
+                List<Entry> moduleEntries = entriesByModule.get(entry.getModuleName());
+                if (moduleEntries == null) {
+                    moduleEntries = new ArrayList<Entry>();
+                    entriesByModule.put(entry.getModuleName(), moduleEntries);
+                }
+
+                moduleEntries.add(entry);
+            }
+        }
+
+        int size() {
+            return resultCount;
+        }
+
+        /**
+         * Returns every QUnit assertion in the order in which it ran. Empty unless this is a QUnit suite.
+         */
+        List<Entry> getEntries() {
+            return entries;
+        }
+
+        /**
+         * Returns every QUnit assertion, grouped by module in the order in which the modules first ran
+         */
+        Map<String, List<Entry>> getEntriesByModule() {
+            return entriesByModule;
+        }
+
+        /**
+         * Returns every method that has a result, in the order in which they first ran
+         */
+        List<ITestNGMethod> getMethods() {
+            return methods;
+        }
+
+        List<ITestResult> getResults(ITestNGMethod method) {
+            List<ITestResult> results = resultsByMethod.get(method);
+            return results == null ? Collections.<ITestResult>emptyList() : results;
+        }
+    }
+
+    /**
+     * A single QUnit assertion
+     */
+    static class Entry {
+
+        private final ITestResult result;
+        private final QUnitTest test;
+        private final long time;
+
+        private Entry(ITestResult result) {
+            this.result = result;
+            this.test = QUnitTest.fromTestResult(result);
+            this.time = test.getReportedTime(result);
+        }
+
+        ITestResult getResult() {
+            return result;
+        }
+
+        QUnitTest getTest() {
+            return test;
+        }
+
+        String getModuleName() {
+            return test.getModuleName();
+        }
+
+        String getTestName() {
+            return test.getTestName();
+        }
+
+        int getStatus() {
+            return result.getStatus();
+        }
+
+        /**
+         * Returns the time to report for the assertion, in milliseconds (see {@link QUnitTest#getReportedTime})
+         */
+        long getTime() {
+            return time;
+        }
+    }
+}
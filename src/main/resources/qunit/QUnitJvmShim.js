@@ -0,0 +1,481 @@
+/**
+ * QUnitJvmShim.js: Just enough of a browser for QUnit suites that don't need a DOM to run inside the JVM. It provides a window, a document
+ * that has a head and a body but never finds any elements, timers that run on a virtual clock (so a suite never actually waits), a console,
+ * and a tiny stand-in for jQuery that covers what QUnitTestSuite.js needs: running a function once the page is ready.
+ *
+ * The JVM engine evaluates this before anything on the page, and talks to it through the __qunitBridge object, which has:
+ *
+ *  load(src):  evaluates the script at src (relative to the page) in the page
+ *  emit(line): hands an event to the runner, in exactly the form that QUnitTestDriver.js writes it to STDOUT
+ *  location:   the URL of the page
+ *
+ * Console messages are handled exactly as QUnitTestDriver.js handles them in PhantomJS, so a suite reports the same results here as it
+ * does there. Errors are left to propagate, and the engine reports them as a global failure, just as the driver does with page.onError.
+ *
+ * Author: Vivin Paliath
+ *
+ */
+
+var __qunitShim = (function (global) {
+
+    var bridge = global.__qunitBridge;
+
+    var PREFIX = "__qUnitTestDriver__:";
+
+    var clock = new Date().getTime();
+    var timers = [];
+    var nextTimerId = 1;
+    var sequence = 0;
+
+    var pendingScripts = [];
+    var listeners = {};
+    var readyCallbacks = [];
+    var ready = false;
+
+    var finished = false;
+    var failed = false;
+    var testNumber = 1;
+
+    //Every event goes out as a single line, exactly as the driver writes it
+    function emit(event) {
+        bridge.emit(JSON.stringify(event));
+    }
+
+    function finish(suiteFailed) {
+        if (finished) {
+            return;
+        }
+
+        finished = true;
+        timers = [];
+
+        emit({
+            type: "done",
+            failed: suiteFailed
+        });
+    }
+
+    //This is QUnitTestDriver.js's page.onConsoleMessage, minus the inactivity timeout; the runner enforces the suite's deadline instead
+    function receive(message) {
+        if (finished || typeof message !== "string" || message.indexOf(PREFIX) !== 0) {
+            return;
+        }
+
+        message = JSON.parse(message.substring(PREFIX.length));
+        var result = message.result;
+        var globalFailure = false;
+
+        if (message.type === "log") {
+
+            if (typeof result.module === "undefined") {
+                result.module = "global";
+            }
+
+            globalFailure = result.name === "global failure";
+
+            if (!result.result) {
+                failed = true;
+            }
+
+            var expected = result.expected;
+            var actual = result.actual;
+
+            if (typeof expected !== "undefined" && typeof actual !== "undefined" && typeof expected === "object" && typeof actual === "object") {
+                expected = JSON.stringify(expected);
+                actual = JSON.stringify(actual);
+            }
+
+            emit({
+                type: "log",
+                module: result.module,
+                name: result.name,
+                testNumber: testNumber++,
+                message: result.message,
+                expected: expected,
+                actual: actual,
+                source: result.source,
+                failure: !result.result
+            });
+        } else if (message.type === "testDone") {
+            emit({
+                type: "testDone",
+                module: typeof message.module === "undefined" ? "global" : message.module,
+                name: message.name,
+                duration: message.duration
+            });
+        } else if (message.type === "moduleDone") {
+            emit({
+                type: "moduleDone",
+                module: typeof message.module === "undefined" ? "global" : message.module,
+                duration: message.duration
+            });
+        }
+
+        if (message.type === "done" || globalFailure) {
+            finish(failed);
+        }
+    }
+
+    //Timers only ever run from the event loop, in order of when they are due and then of when they were set. Nothing actually waits: the
+    //clock simply jumps ahead to the next timer.
+    function setTimer(callback, delay, args, repeat) {
+        var timer = {
+            id: nextTimerId++,
+            due: clock + Math.max(Number(delay) || 0, 0),
+            sequence: sequence++,
+            callback: callback,
+            args: args,
+            interval: repeat ? Math.max(Number(delay) || 0, 1) : -1
+        };
+
+        timers.push(timer);
+        return timer.id;
+    }
+
+    function clearTimer(id) {
+        for (var i = 0; i < timers.length; i++) {
+            if (timers[i].id === id) {
+                timers.splice(i, 1);
+                return;
+            }
+        }
+    }
+
+    function nextTimer() {
+        var next = 0;
+        for (var i = 1; i < timers.length; i++) {
+            if (timers[i].due < timers[next].due || (timers[i].due === timers[next].due && timers[i].sequence < timers[next].sequence)) {
+                next = i;
+            }
+        }
+
+        return timers.splice(next, 1)[0];
+    }
+
+    function addEventListener(type, listener) {
+        (listeners[type] = listeners[type] || []).push(listener);
+    }
+
+    function removeEventListener(type, listener) {
+        var registered = listeners[type] || [];
+        for (var i = 0; i < registered.length; i++) {
+            if (registered[i] === listener) {
+                registered.splice(i, 1);
+                return;
+            }
+        }
+    }
+
+    function dispatch(target, type) {
+        var registered = (listeners[type] || []).slice();
+        for (var i = 0; i < registered.length; i++) {
+            registered[i].call(target, {type: type, target: target});
+        }
+
+        if (typeof target["on" + type] === "function") {
+            target["on" + type]({type: type, target: target});
+        }
+    }
+
+    //Scripts that are added to the page are loaded once the current script is done, as they would be in a browser
+    function flushScripts() {
+        while (pendingScripts.length > 0 && !finished) {
+            var script = pendingScripts.shift();
+
+            if (script.src) {
+                bridge.load(String(script.src));
+            } else if (script.text) {
+                (0, eval)(String(script.text));
+            }
+
+            if (typeof script.onload === "function") {
+                script.onload({type: "load", target: script});
+            }
+        }
+    }
+
+    function Element(tagName) {
+        this.tagName = String(tagName).toUpperCase();
+        this.nodeName = this.tagName;
+        this.nodeType = 1;
+        this.childNodes = [];
+        this.children = this.childNodes;
+        this.attributes = {};
+        this.style = {};
+        this.className = "";
+        this.innerHTML = "";
+        this.textContent = "";
+        this.parentNode = null;
+    }
+
+    Element.prototype.appendChild = function (child) {
+        this.childNodes.push(child);
+        child.parentNode = this;
+
+        if (child.tagName === "SCRIPT") {
+            pendingScripts.push(child);
+        }
+
+        return child;
+    };
+
+    Element.prototype.insertBefore = Element.prototype.appendChild;
+
+    Element.prototype.removeChild = function (child) {
+        for (var i = 0; i < this.childNodes.length; i++) {
+            if (this.childNodes[i] === child) {
+                this.childNodes.splice(i, 1);
+                child.parentNode = null;
+                break;
+            }
+        }
+
+        return child;
+    };
+
+    Element.prototype.setAttribute = function (name, value) {
+        this.attributes[name] = String(value);
+        if (name === "src" || name === "type" || name === "id") {
+            this[name] = String(value);
+        }
+    };
+
+    Element.prototype.getAttribute = function (name) {
+        return this.attributes.hasOwnProperty(name) ? this.attributes[name] : null;
+    };
+
+    Element.prototype.getElementsByTagName = function () {
+        return [];
+    };
+
+    Element.prototype.addEventListener = function () {
+    };
+
+    Element.prototype.removeEventListener = function () {
+    };
+
+    var html = new Element("html");
+    var head = html.appendChild(new Element("head"));
+    var body = html.appendChild(new Element("body"));
+
+    var document = {
+        nodeType: 9,
+        readyState: "loading",
+        title: "",
+        cookie: "",
+        documentElement: html,
+        head: head,
+        body: body,
+        createElement: function (tagName) {
+            return new Element(tagName);
+        },
+        createTextNode: function (text) {
+            return {nodeType: 3, nodeValue: String(text), textContent: String(text)};
+        },
+        createDocumentFragment: function () {
+            return new Element("#document-fragment");
+        },
+        getElementById: function () {
+            return null;
+        },
+        getElementsByTagName: function (tagName) {
+            tagName = String(tagName).toLowerCase();
+            return tagName === "head" ? [head] : tagName === "body" ? [body] : tagName === "html" ? [html] : [];
+        },
+        getElementsByClassName: function () {
+            return [];
+        },
+        querySelector: function () {
+            return null;
+        },
+        querySelectorAll: function () {
+            return [];
+        },
+        addEventListener: function (type, listener) {
+            addEventListener("document:" + type, listener);
+        },
+        removeEventListener: function (type, listener) {
+            removeEventListener("document:" + type, listener);
+        }
+    };
+
+    //Only what QUnitTestSuite.js and the simplest of suites use. Anything that needs the real thing needs a real browser.
+    function jQuery(selector) {
+        if (typeof selector === "function") {
+            if (ready) {
+                selector.call(document, jQuery);
+            } else {
+                readyCallbacks.push(selector);
+            }
+
+            return wrap([]);
+        }
+
+        return wrap([]);
+    }
+
+    function wrap(elements) {
+        var wrapped = {length: elements.length, jquery: "qunit-testng"};
+        var chained = ["addClass", "after", "append", "appendTo", "attr", "before", "bind", "click", "css", "data", "each", "empty", "filter",
+            "find", "hide", "html", "off", "on", "one", "prepend", "prop", "remove", "removeAttr", "removeClass", "show", "text", "toggle",
+            "toggleClass", "trigger", "unbind", "val"];
+
+        for (var i = 0; i < chained.length; i++) {
+            wrapped[chained[i]] = function () {
+                return wrapped;
+            };
+        }
+
+        return wrapped;
+    }
+
+    jQuery.fn = jQuery.prototype = {};
+    jQuery.noop = function () {
+    };
+    jQuery.isFunction = function (value) {
+        return typeof value === "function";
+    };
+    jQuery.isArray = function (value) {
+        return Object.prototype.toString.call(value) === "[object Array]";
+    };
+    jQuery.extend = function () {
+        var target = arguments[0] || {};
+        for (var i = 1; i < arguments.length; i++) {
+            for (var name in arguments[i]) {
+                if (arguments[i].hasOwnProperty(name)) {
+                    target[name] = arguments[i][name];
+                }
+            }
+        }
+
+        return target;
+    };
+    jQuery.each = function (collection, callback) {
+        var i;
+        if (jQuery.isArray(collection)) {
+            for (i = 0; i < collection.length; i++) {
+                if (callback.call(collection[i], i, collection[i]) === false) {
+                    break;
+                }
+            }
+        } else {
+            for (i in collection) {
+                if (collection.hasOwnProperty(i) && callback.call(collection[i], i, collection[i]) === false) {
+                    break;
+                }
+            }
+        }
+
+        return collection;
+    };
+    jQuery.proxy = function (fn, context) {
+        return function () {
+            return fn.apply(context, arguments);
+        };
+    };
+    jQuery.ajax = function () {
+        throw new Error("jQuery.ajax is not available when running in the JVM");
+    };
+
+    var location = {
+        href: String(bridge.location),
+        protocol: "file:",
+        host: "",
+        hostname: "",
+        pathname: String(bridge.location).replace(/^file:\/\//, "").replace(/[?#].*$/, ""),
+        search: (String(bridge.location).match(/\?[^#]*/) || [""])[0],
+        hash: (String(bridge.location).match(/#.*$/) || [""])[0]
+    };
+
+    global.window = global;
+    global.self = global;
+    global.top = global;
+    global.parent = global;
+    global.document = document;
+    global.location = location;
+    global.navigator = {userAgent: "qunit-testng JVM", language: "en-US", platform: ""};
+    global.jQuery = global.$ = jQuery;
+
+    global.setTimeout = function (callback, delay) {
+        return setTimer(callback, delay, Array.prototype.slice.call(arguments, 2), false);
+    };
+    global.setInterval = function (callback, delay) {
+        return setTimer(callback, delay, Array.prototype.slice.call(arguments, 2), true);
+    };
+    global.clearTimeout = global.clearInterval = clearTimer;
+
+    global.addEventListener = addEventListener;
+    global.removeEventListener = removeEventListener;
+
+    global.alert = global.confirm = global.prompt = function () {
+    };
+
+    global.console = {
+        log: receive,
+        info: function () {
+        },
+        warn: function () {
+        },
+        error: function () {
+        },
+        debug: function () {
+        }
+    };
+
+    return {
+
+        /**
+         * Called once every script on the page has been evaluated: runs the scripts they added, then jQuery's ready callbacks, and then
+         * fires the window's load event, which is when QUnit starts
+         */
+        pageLoaded: function () {
+            flushScripts();
+
+            document.readyState = "interactive";
+            dispatch(document, "document:DOMContentLoaded");
+
+            ready = true;
+            while (readyCallbacks.length > 0 && !finished) {
+                readyCallbacks.shift().call(document, jQuery);
+            }
+
+            flushScripts();
+
+            document.readyState = "complete";
+            if (!finished) {
+                dispatch(global, "load");
+            }
+        },
+
+        /**
+         * Runs timers until the suite is done or there is nothing left to run. Returns true if the suite is done.
+         */
+        run: function () {
+            while (!finished && (timers.length > 0 || pendingScripts.length > 0)) {
+                flushScripts();
+
+                if (timers.length === 0 || finished) {
+                    continue;
+                }
+
+                var timer = nextTimer();
+                clock = Math.max(clock, timer.due);
+
+                if (timer.interval > 0) {
+                    timer.due = clock + timer.interval;
+                    timer.sequence = sequence++;
+                    timers.push(timer);
+                }
+
+                if (typeof timer.callback === "function") {
+                    timer.callback.apply(global, timer.args);
+                } else {
+                    (0, eval)(String(timer.callback));
+                }
+            }
+
+            return finished;
+        }
+    };
+
+})(this);
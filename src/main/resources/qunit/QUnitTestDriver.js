@@ -1,6 +1,17 @@
 /**
  * QUnitTestDriver.js: A test-driver for QUnit tests. The PhantomJS script loads a QUnit HTML file and reports test results. The script does this by
- * looking for console messages that the QUnit test is expected to send. The result of the test suite is printed out to STDOUT in JSON.
+ * looking for console messages that the QUnit test is expected to send. Results are streamed to STDOUT as newline-delimited JSON: one
+ * {"type": "log", ...} line per assertion as soon as QUnit reports it, a {"type": "testDone", ...} or {"type": "moduleDone", ...} line with
+ * the duration in milliseconds whenever a test or module finishes, a {"type": "pageLoaded", ...} line with the time it took to load the page,
+ * and a single {"type": "done", ...} line once the suite is over. A suite that crashes or times out still leaves every assertion that was
+ * reported before it went away.
+ *
+ * When started with --select=<selection>, only the selected tests of the file are run; the selection is URL-encoded JSON that is handed
+ * to QUnitTestSelection.js, which is installed in the page before any of its scripts run.
+ *
+ * When started with --worker instead of a test file, the driver stays alive and reads absolute paths to QUnit HTML files from STDIN, one
+ * per line, each optionally followed by a tab and a selection. Each file is run in a fresh page and its events are streamed exactly as
+ * above, with the "done" line marking the end of each suite. The driver exits when STDIN is closed.
  *
  * Author: Vivin Paliath
  *
@@ -10,25 +21,12 @@ var QUnitTestDriver = (function () {
 
     //If we have any errors in our PhantomJS script, we want to fail
     phantom.onError = function(message, trace) {
-        var suite = {results: {}};
-        suite.results["global"] = {};
-        suite.results["global"]["global failure"] = [];
-
-        var source = "";
-        trace.forEach(function (item) {
-            source += "    at " + item.file + ":" + item.line + "\n";
-        });
-
-        suite.results["global"]["global failure"].push({
-            testNumber: 1,
-            message: message,
-            expected: null,
-            actual: null,
-            source: source,
-            failure: true
+        emitGlobalFailure(0, message, traceToSource(trace));
+        emit({
+            type: "done",
+            failed: true
         });
 
-        console.log(JSON.stringify(suite));
         phantom.exit(1);
     };
 
@@ -38,6 +36,10 @@ var QUnitTestDriver = (function () {
         TIMEOUT: 2
     };
 
+    var WORKER_FLAG = "--worker";
+    var SELECT_PREFIX = "--select=";
+    var SELECTION_SCRIPT = "QUnitTestSelection.js";
+
     var DEFAULT_TIMEOUT = 15;
     var MILLISECONDS_IN_A_SECOND = 1000;
 
@@ -47,105 +49,190 @@ var QUnitTestDriver = (function () {
         var system = require("system");
         var fs = require("fs");
 
-        if (system.args.length === 1) {
-            console.log("Syntax phantomjs", system.args[args.SCRIPT_NAME], "</path/to/qunit-test.html>", "[<timeout-in-seconds>]");
-            phantom.exit(1);
-        }
+        //The selection can go anywhere after the script, so we take it out before we look at the other arguments
+        var selection = null;
+        var positional = system.args.filter(function (arg) {
+            if (arg.indexOf(SELECT_PREFIX) === 0) {
+                selection = decodeSelection(arg.substring(SELECT_PREFIX.length));
+                return false;
+            }
 
-        //If we haven't been provided an absolute path, let's convert it
-        var path_to_test = system.args[args.QUNIT_TEST_FILE];
-        if ((!/^\//.test(path_to_test) && system.os.name !== "windows") ||
-            ((!/^[A-Z]:\\/.test(path_to_test) && !/\\\\/.test(path_to_test)) && system.os.name === "windows")) {
-            path_to_test = fs.workingDirectory + "/" + path_to_test
+            return true;
+        });
+
+        if (positional.length === 1) {
+            console.log("Syntax phantomjs", positional[args.SCRIPT_NAME],
+                "</path/to/qunit-test.html> [" + SELECT_PREFIX + "<selection>] | " + WORKER_FLAG, "[<timeout-in-seconds>]");
+            phantom.exit(1);
         }
 
-        if (typeof system.args[args.TIMEOUT] !== "undefined") {
-            if (!/^[0-9]+$/.test(system.args[args.TIMEOUT])) {
+        if (typeof positional[args.TIMEOUT] !== "undefined") {
+            if (!/^[0-9]+$/.test(positional[args.TIMEOUT])) {
                 console.log("Timeout value must be a number, if supplied!");
                 phantom.exit(1);
             } else {
-                timeout = system.args[args.TIMEOUT];
+                timeout = positional[args.TIMEOUT];
             }
         }
 
+        if (positional[args.QUNIT_TEST_FILE] === WORKER_FLAG) {
+            startWorker(system, fs);
+            return;
+        }
+
+        var path_to_test = toAbsolutePath(system, fs, positional[args.QUNIT_TEST_FILE]);
+
         if (!fs.exists(path_to_test)) {
-            console.log("Unable to open test at", path_to_test);
+            emitGlobalFailure(1, "Unable to open test at " + path_to_test, "    at " + path_to_test);
+            emit({
+                type: "done",
+                failed: true
+            });
+
             phantom.exit(1);
         }
 
-        runTest(path_to_test, function () {
-            if (this.message) {
-                console.log(this.message);
+        runTest(path_to_test, selection, function () {
+            phantom.exit(this.failed ? 1 : 0);
+        });
+    }
+
+    //Runs test files as they are handed to us on STDIN. Every test file gets a fresh page, so nothing leaks from one suite to the next
+    //except for the PhantomJS process itself, which is exactly what we want to reuse.
+    function startWorker(system, fs) {
+        var next = function () {
+            if (system.stdin.atEnd()) {
+                phantom.exit(0);
+                return;
             }
 
-            phantom.exit(this.failed ? 1 : 0);
+            var line = system.stdin.readLine();
+            if (!line || /^\s*$/.test(line)) {
+                setTimeout(next, 0);
+                return;
+            }
+
+            //A path may be followed by a tab and the selection of tests to run
+            var fields = line.replace(/^\s+|\s+$/g, "").split("\t");
+            var path_to_test = toAbsolutePath(system, fs, fields[0]);
+            var selection = fields.length > 1 ? decodeSelection(fields[1]) : null;
+
+            if (!fs.exists(path_to_test)) {
+                emitGlobalFailure(1, "Unable to open test at " + path_to_test, "    at " + path_to_test);
+                emit({
+                    type: "done",
+                    failed: true
+                });
+
+                setTimeout(next, 0);
+                return;
+            }
+
+            runTest(path_to_test, selection, function () {
+                //Let the page finish tearing down before we block on STDIN again
+                setTimeout(next, 0);
+            });
+        };
+
+        next();
+    }
+
+    //The runner URL-encodes the selection so that it survives any command line
+    function decodeSelection(encoded) {
+        return JSON.parse(decodeURIComponent(encoded.replace(/\+/g, " ")));
+    }
+
+    //If we haven't been provided an absolute path, let's convert it
+    function toAbsolutePath(system, fs, path_to_test) {
+        if ((!/^\//.test(path_to_test) && system.os.name !== "windows") ||
+            ((!/^[A-Z]:\\/.test(path_to_test) && !/\\\\/.test(path_to_test)) && system.os.name === "windows")) {
+            path_to_test = fs.workingDirectory + "/" + path_to_test
+        }
+
+        return path_to_test;
+    }
+
+    //Every event goes out as a single line, so the runner can parse each one as soon as it arrives
+    function emit(event) {
+        console.log(JSON.stringify(event));
+    }
+
+    function emitGlobalFailure(testNumber, message, source) {
+        emit({
+            type: "log",
+            module: "global",
+            name: "global failure",
+            testNumber: testNumber,
+            message: message,
+            expected: null,
+            actual: null,
+            source: source,
+            failure: true
+        });
+    }
+
+    function traceToSource(trace) {
+        var source = "";
+        trace.forEach(function (item) {
+            source += "    at " + item.file + ":" + item.line + "\n";
         });
+
+        return source;
     }
 
-    function runTest(path, callback) {
+    function runTest(path, selection, callback) {
         var page = require("webpage").create();
 
         var timeoutId;
         var failed = false;
+        var finished = false;
         var testNumber = 1;
-        var suite = {
-            results: {}
-        };
 
-        //Although we try to catch all sorts of errors on the page, including Javascript errors, it is possible for certain pages to stop responding.
-        //This usually means that something is wrong on the page. We don't want our testing process to hang indefinitely, so we start up a
-        //timeout that will stop the driver if the script hasn't responded for 15 seconds (this is the default).
-        var timeoutHandler = function () {
-            if (!suite.results["global"]) {
-                suite.results["global"] = {};
+        //A page can report more than once (an error after "done", or a timeout that fires while we are tearing down), but a suite must only
+        //ever be finished once. This matters when we are running as a worker, because the next suite's output follows right after.
+        var finish = function (failed) {
+            if (finished) {
+                return;
             }
 
-            if (!suite.results["global"]["global failure"]) {
-                suite.results["global"]["global failure"] = [];
-            }
+            finished = true;
+            clearTimeout(timeoutId);
+            page.close();
 
-            suite.results["global"]["global failure"].push({
-                testNumber: testNumber++,
-                message: "file://" + path + " timed out. No activity for " + timeout + " seconds.",
-                expected: null,
-                actual: null,
-                source: "    at " + path,
-                failure: true
+            emit({
+                type: "done",
+                failed: failed
             });
 
             callback.apply({
-                failed: true,
-                message: JSON.stringify(suite)
+                failed: failed
             });
         };
 
+        //Although we try to catch all sorts of errors on the page, including Javascript errors, it is possible for certain pages to stop responding.
+        //This usually means that something is wrong on the page. We don't want our testing process to hang indefinitely, so we start up a
+        //timeout that will stop the driver if the script hasn't responded for 15 seconds (this is the default).
+        var timeoutHandler = function () {
+            emitGlobalFailure(testNumber++, "file://" + path + " timed out. No activity for " + timeout + " seconds.", "    at " + path);
+            finish(true);
+        };
+
         //On error we need to record the error and exit immediately
         page.onError = function (message, trace) {
-            suite.results["global"] = {};
-            suite.results["global"]["global failure"] = [];
-
-            var source = "";
-            trace.forEach(function (item) {
-                source += "    at " + item.file + ":" + item.line + "\n";
-            });
-
-            suite.results["global"]["global failure"].push({
-                testNumber: testNumber++,
-                message: message,
-                expected: null,
-                actual: null,
-                source: source,
-                failure: true
-            });
+            if (finished) {
+                return;
+            }
 
-            callback.apply({
-                failed: true,
-                message: JSON.stringify(suite)
-            });
+            emitGlobalFailure(testNumber++, message, traceToSource(trace));
+            finish(true);
         };
 
         page.onConsoleMessage = function (message) {
 
+            if (finished) {
+                return;
+            }
+
             if (/^__qUnitTestDriver__:/.test(message)) {
 
                 //We got some activity, so let's clear the timeout! We don't want to erroneously timeout!
@@ -153,8 +240,7 @@ var QUnitTestDriver = (function () {
 
                 message = JSON.parse(message.replace(/^__qUnitTestDriver__:/, ""));
                 var result = message.result;
-
-                //log(JSON.stringify(result, null, 3));
+                var globalFailure = false;
 
                 if (message.type === "log") {
 
@@ -162,15 +248,7 @@ var QUnitTestDriver = (function () {
                         result.module = "global";
                     }
 
-                    var globalFailure = result.name === "global failure";
-
-                    if (!suite.results[result.module]) {
-                        suite.results[result.module] = {};
-                    }
-
-                    if (!suite.results[result.module][result.name]) {
-                        suite.results[result.module][result.name] = [];
-                    }
+                    globalFailure = result.name === "global failure";
 
                     if (!result.result) {
                         failed = true;
@@ -180,13 +258,16 @@ var QUnitTestDriver = (function () {
                     var actual = result.actual;
 
                     //If both actual and expected are objects, then deepEquals was used. We need to stringify these
-                    //objects, otherwise Gson will assume they are actual objects that need to be deserialized
+                    //objects, otherwise the runner will see actual objects instead of the values it reports
                     if (typeof expected !== "undefined" && typeof actual !== "undefined" && typeof expected === "object" && typeof actual === "object") {
                         expected = JSON.stringify(expected);
                         actual = JSON.stringify(actual);
                     }
 
-                    suite.results[result.module][result.name].push({
+                    emit({
+                        type: "log",
+                        module: result.module,
+                        name: result.name,
                         testNumber: testNumber++,
                         message: result.message,
                         expected: expected,
@@ -196,25 +277,54 @@ var QUnitTestDriver = (function () {
                     });
                 }
 
-                if (message.type === "done" || globalFailure) {
-                    callback.apply({
-                        failed: failed,
-                        message: JSON.stringify(suite)
+                if (message.type === "testDone") {
+                    emit({
+                        type: "testDone",
+                        module: typeof message.module === "undefined" ? "global" : message.module,
+                        name: message.name,
+                        duration: message.duration
+                    });
+                } else if (message.type === "moduleDone") {
+                    emit({
+                        type: "moduleDone",
+                        module: typeof message.module === "undefined" ? "global" : message.module,
+                        duration: message.duration
                     });
                 }
+
+                if (message.type === "done" || globalFailure) {
+                    finish(failed);
+                    return;
+                }
+
                 //Start up a new timeout
                 timeoutId = setTimeout(timeoutHandler, timeout * MILLISECONDS_IN_A_SECOND);
             }
         };
 
+        //Tests have to be left out as QUnit defines them, so the selection must be in place before the page runs any of its scripts
+        if (selection !== null) {
+            page.onInitialized = function () {
+                page.injectJs(SELECTION_SCRIPT);
+                page.evaluate(function (selection) {
+                    __qUnitTestSelection(window, selection);
+                }, selection);
+            };
+        }
+
+        var openedAt = Date.now();
         page.open("file://" + path, function (status) {
             if (status !== "success") {
-                callback.apply({
-                    failed: true,
-                    message: "Unable to run test at file://" + path
-                });
+                emitGlobalFailure(testNumber++, "Unable to run test at file://" + path, "    at " + path);
+                finish(true);
+                return;
             }
 
+            emit({
+                type: "pageLoaded",
+                duration: Date.now() - openedAt
+            });
+
             timeoutId = setTimeout(timeoutHandler, timeout * MILLISECONDS_IN_A_SECOND);
         });
     }
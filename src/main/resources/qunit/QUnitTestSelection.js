@@ -0,0 +1,125 @@
+/**
+ * QUnitTestSelection.js: Leaves out every QUnit test that the runner hasn't selected. The driver installs this in a page before any of its
+ * scripts run, so that a test that isn't selected is never even queued; its callback never runs, and nothing is reported for it.
+ *
+ * QUnit's own module and filter URL parameters only take a single value each (and older versions of QUnit have no testId at all), so
+ * instead we stand in for test and asyncTest: as soon as QUnit defines them, on window or on the QUnit object, they are wrapped with a
+ * check against the selection. A selection is an object with any of:
+ *
+ *   tests: [[module, test], ...]   only these tests
+ *   modules: [regexp, ...]         only tests in a module that matches one of these
+ *   names: [regexp, ...]           only tests with a name that matches one of these
+ *
+ * A test has to pass every one of these that is given.
+ *
+ * Tests outside of any module belong to the "global" module, just as the driver reports them. Global failures are always let through.
+ */
+
+var __qUnitTestSelection = function (global, selection) {
+
+    var SEPARATOR = "\u001c";
+
+    var tests = null;
+    if (selection.tests) {
+        tests = {};
+        for (var i = 0; i < selection.tests.length; i++) {
+            tests[selection.tests[i][0] + SEPARATOR + selection.tests[i][1]] = true;
+        }
+    }
+
+    function toRegExps(sources) {
+        return sources ? sources.map(function (source) {
+            return new RegExp(source);
+        }) : null;
+    }
+
+    var modules = toRegExps(selection.modules);
+    var names = toRegExps(selection.names);
+
+    function matchesAny(regExps, value) {
+        if (regExps === null) {
+            return true;
+        }
+
+        for (var i = 0; i < regExps.length; i++) {
+            if (regExps[i].test(value)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    function isSelected(moduleName, testName) {
+        if (testName === "global failure") {
+            return true;
+        }
+
+        return (tests === null || tests.hasOwnProperty(moduleName + SEPARATOR + testName)) &&
+            matchesAny(modules, moduleName) && matchesAny(names, testName);
+    }
+
+    //QUnit 1 keeps the name of the current module, QUnit 2 the module itself
+    function getCurrentModule() {
+        var module = global.QUnit && global.QUnit.config ? global.QUnit.config.currentModule : undefined;
+        if (module && typeof module === "object") {
+            module = module.name;
+        }
+
+        return typeof module === "undefined" || module === null || module === "" ? "global" : module;
+    }
+
+    function wrap(test) {
+        if (typeof test !== "function" || test.__qUnitTestSelection) {
+            return test;
+        }
+
+        var wrapped = function (testName) {
+            if (isSelected(getCurrentModule(), testName)) {
+                return test.apply(this, arguments);
+            }
+        };
+
+        //Keep anything QUnit hangs off of test, such as QUnit.test.skip
+        for (var property in test) {
+            if (test.hasOwnProperty(property)) {
+                wrapped[property] = test[property];
+            }
+        }
+
+        wrapped.__qUnitTestSelection = true;
+        return wrapped;
+    }
+
+    function trap(object, name, onSet) {
+        var value = onSet(object[name]);
+
+        Object.defineProperty(object, name, {
+            configurable: true,
+            enumerable: true,
+            get: function () {
+                return value;
+            },
+            set: function (newValue) {
+                value = onSet(newValue);
+            }
+        });
+    }
+
+    trap(global, "test", wrap);
+    trap(global, "asyncTest", wrap);
+    trap(global, "QUnit", function (QUnit) {
+        if (QUnit && typeof QUnit === "object") {
+            if (typeof QUnit.test === "function") {
+                QUnit.test = wrap(QUnit.test);
+            }
+
+            //Only QUnit 1 has asyncTest
+            if (typeof QUnit.asyncTest === "function") {
+                QUnit.asyncTest = wrap(QUnit.asyncTest);
+            }
+        }
+
+        return QUnit;
+    });
+};
@@ -84,6 +84,47 @@ var QUnitTestSuite = (function () {
                 }));
             });
 
+            //Time every test and every module as it runs in the browser. The driver forwards these so that the reports show how long the
+            //JavaScript actually took, instead of how long it took TestNG to replay the results. We measure the time ourselves because only
+            //newer versions of QUnit report a runtime for tests, and fewer still for modules.
+            var testStartTime = null;
+            var moduleStartTime = null;
+
+            function now() {
+                return new Date().getTime();
+            }
+
+            QUnit.moduleStart(function () {
+                moduleStartTime = now();
+            });
+
+            QUnit.testStart(function () {
+                testStartTime = now();
+            });
+
+            QUnit.testDone(function (details) {
+                //Newer QUnit versions report fractional milliseconds, but the runner reads whole ones
+                var duration = Math.round(typeof details.runtime === "number" ? details.runtime : now() - testStartTime);
+
+                console.log("__qUnitTestDriver__:" + JSON.stringify({
+                    type: "testDone",
+                    module: details.module,
+                    name: details.name,
+                    duration: duration
+                }));
+            });
+
+            QUnit.moduleDone(function (details) {
+                //Newer QUnit versions report fractional milliseconds, but the runner reads whole ones
+                var duration = Math.round(typeof details.runtime === "number" ? details.runtime : now() - moduleStartTime);
+
+                console.log("__qUnitTestDriver__:" + JSON.stringify({
+                    type: "moduleDone",
+                    module: details.name,
+                    duration: duration
+                }));
+            });
+
             //Run the suite-setup function. What this does is set up the test suite, but does NOT run it. The reason is that there are weird
             //timing issues when running the tests in PhantomJS, that causes the QUnit.done event to misfire (i.e., it fires early, after the
             //first test function has been defined). To prevent this from happening, we will set up the test suite, then set up the "done"
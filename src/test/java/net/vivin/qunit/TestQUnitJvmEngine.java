@@ -0,0 +1,212 @@
+package net.vivin.qunit;
+
+import org.apache.commons.io.FileUtils;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+import static org.testng.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Runs real QUnit suites inside the JVM. The configured browser doesn't exist, so any suite that isn't run by the JVM
+ * engine fails.
+ */
+
+@Test
+public class TestQUnitJvmEngine {
+
+    private static final String PAGE = "<html>\n" +
+            "<head>\n" +
+            "    %s\n" +
+            "    <script type=\"text/javascript\" src=\"../qunit/qunit.js\"></script>\n" +
+            "    <script type=\"text/javascript\" src=\"../qunit/jquery-1.10.2.min.js\"></script>\n" +
+            "    <script type=\"text/javascript\" src=\"../qunit/QUnitTestSuite.js\"></script>\n" +
+            "    <script type=\"text/javascript\">\n" +
+            "        QUnitTestSuite.run(\"./tests.js\");\n" +
+            "    </script>\n" +
+            "</head>\n" +
+            "<body></body>\n" +
+            "</html>\n";
+
+    private static final String MARKER = "<meta name=\"qunit-testng-engine\" content=\"jvm\">";
+
+    private File directory;
+
+    @BeforeMethod
+    public void createDirectory() throws IOException {
+        directory = Files.createTempDirectory("qunit-jvm-test").toFile();
+
+        FileUtils.copyURLToFile(getClass().getResource("/qunit/qunit.js"), new File(directory, "qunit/qunit.js"));
+        FileUtils.copyURLToFile(getClass().getResource("/qunit/QUnitTestSuite.js"), new File(directory, "qunit/QUnitTestSuite.js"));
+
+        System.setProperty(QUnitConfiguration.ROOT, directory.getPath());
+        System.setProperty(QUnitConfiguration.HISTORY_FILE, new File(directory, "history.json").getPath());
+        System.setProperty(QUnitConfiguration.PHANTOMJS_PATH, new File(directory, "no-such-browser").getPath());
+    }
+
+    @AfterMethod
+    public void deleteDirectory() {
+        System.clearProperty(QUnitConfiguration.ROOT);
+        System.clearProperty(QUnitConfiguration.HISTORY_FILE);
+        System.clearProperty(QUnitConfiguration.PHANTOMJS_PATH);
+        System.clearProperty(QUnitConfiguration.JVM_INCLUDES);
+        System.clearProperty(QUnitConfiguration.SUITE_TIMEOUT);
+        System.clearProperty(QUnitConfiguration.RERUN_FAILURES);
+        System.clearProperty(QUnitConfiguration.MODULES);
+        System.clearProperty(QUnitConfiguration.TESTS);
+        System.clearProperty(QUnitConfiguration.MODULE_INDEX_FILE);
+        System.clearProperty(QUnitConfiguration.FAIL_FAST);
+        System.clearProperty(QUnitConfiguration.THREADS);
+
+        FileUtils.deleteQuietly(directory);
+    }
+
+    @Test
+    public void testSuiteRunsInJvm() throws IOException {
+        createSuite("suite", MARKER,
+                "module(\"Math\");\n" +
+                "test(\"adds\", function () {\n" +
+                "    equal(1 + 1, 2, \"one and one\");\n" +
+                "    deepEqual({a: 1}, {a: 2}, \"objects\");\n" +
+                "});\n" +
+                "asyncTest(\"waits\", function () {\n" +
+                "    setTimeout(function () {\n" +
+                "        ok(true, \"later\");\n" +
+                "        start();\n" +
+                "    }, 60000);\n" +
+                "});\n");
+
+        long start = System.currentTimeMillis();
+        QUnitTestSuiteResult suiteResult = getOnlyResult();
+
+        assertTrue(System.currentTimeMillis() - start < 30000, "Timers should run on a virtual clock");
+        assertNull(suiteResult.getResults().get("global"), "Suite should have run to completion");
+
+        List<QUnitTestResult> adds = suiteResult.getResults().get("Math").get("adds");
+        assertEquals(adds.size(), 2, "Both assertions should be reported");
+        assertFalse(adds.get(0).isFailure(), "First assertion should pass");
+        assertTrue(adds.get(1).isFailure(), "Second assertion should fail");
+        assertEquals(adds.get(1).getExpected(), "{\"a\":2}", "Objects should be reported as JSON");
+
+        assertEquals(suiteResult.getResults().get("Math").get("waits").get(0).getMessage(), "later", "Asynchronous test should have run");
+        assertNotNull(suiteResult.getTestDuration("Math", "adds"), "Test duration should be reported");
+    }
+
+    @Test
+    public void testSuiteIsSelectedByInclude() throws IOException {
+        System.setProperty(QUnitConfiguration.JVM_INCLUDES, "**/suite/*.html");
+        createSuite("suite", "", "module(\"Included\");\ntest(\"passes\", function () { ok(true, \"yes\"); });\n");
+
+        QUnitTestSuiteResult suiteResult = getOnlyResult();
+
+        assertNull(suiteResult.getResults().get("global"), "Suite should have run in the JVM");
+        assertEquals(suiteResult.getResults().get("Included").get("passes").get(0).getMessage(), "yes", "Suite should have reported its assertion");
+    }
+
+    @Test
+    public void testErrorIsReportedAsGlobalFailure() throws IOException {
+        createSuite("suite", MARKER, "undefinedFunction();\n");
+
+        QUnitTestSuiteResult suiteResult = getOnlyResult();
+
+        QUnitTestResult globalFailure = suiteResult.getResults().get("global").get("global failure").get(0);
+        assertTrue(globalFailure.getMessage().contains("undefinedFunction"), "Failure should name what went wrong");
+        assertTrue(globalFailure.getSource().contains("tests.js"), "Failure should say where it went wrong");
+    }
+
+    @Test
+    public void testEndlessSuiteIsStoppedAtDeadline() throws IOException {
+        System.setProperty(QUnitConfiguration.SUITE_TIMEOUT, "1");
+        createSuite("suite", MARKER, "test(\"spins\", function () { while (true) {} });\n");
+
+        long start = System.currentTimeMillis();
+        QUnitTestSuiteResult suiteResult = getOnlyResult();
+
+        assertTrue(System.currentTimeMillis() - start < 20000, "Suite should have been stopped well before it finished");
+        assertTrue(suiteResult.getResults().get("global").get("global failure").get(0).getMessage().contains("did not finish within 1 seconds"), "Failure should give the timeout");
+    }
+
+    @Test
+    public void testRunningSuiteIsStoppedWhenRunIsAborted() throws IOException {
+        System.setProperty(QUnitConfiguration.FAIL_FAST, "true");
+        System.setProperty(QUnitConfiguration.THREADS, "2");
+        System.setProperty(QUnitConfiguration.SUITE_TIMEOUT, "60");
+        createSuite("a", MARKER, "test(\"spins\", function () { while (true) {} });\n");
+        createSuite("b", MARKER, "test(\"fails\", function () { ok(false, \"no\"); });\n");
+
+        long start = System.currentTimeMillis();
+        List<QUnitTestSuiteResult> suiteResults = QUnitTestSuiteRunner.getTestResults();
+
+        assertTrue(System.currentTimeMillis() - start < 30000, "The spinning suite should have been stopped long before its timeout");
+        assertTrue(suiteResults.get(0).getResults().get("global").get("global failure").get(0).getMessage().contains("was aborted after the first failure"), "The stopped suite should say why it was stopped");
+    }
+
+    @Test
+    public void testOnlyFailingTestsAreRerun() throws IOException {
+        System.setProperty(QUnitConfiguration.RERUN_FAILURES, "2");
+        createSuite("suite", MARKER,
+                "test(\"fails outside of a module\", function () { ok(false, \"no\"); });\n" +
+                "module(\"First\");\n" +
+                "test(\"same\", function () { ok(true, \"one\"); ok(true, \"two\"); });\n" +
+                "module(\"Second\");\n" +
+                "test(\"same\", function () { ok(true, \"yes\"); ok(false, \"no\"); });\n" +
+                "test(\"passes\", function () { ok(true, \"yes\"); });\n");
+
+        QUnitTestSuiteResult suiteResult = getOnlyResult();
+
+        assertEquals(suiteResult.getAttempts("global", "fails outside of a module"), 3, "Failing test outside of a module should have been run on every attempt");
+        assertEquals(suiteResult.getAttempts("Second", "same"), 3, "Failing test should have been run on every attempt");
+        assertEquals(suiteResult.getAttempts("First", "same"), 1, "Passing test of the same name in another module should only have been run once");
+        assertEquals(suiteResult.getAttempts("Second", "passes"), 1, "Passing test should only have been run once");
+
+        assertEquals(suiteResult.getResults().get("Second").get("same").size(), 2, "Only the assertions of the last attempt should be kept");
+        assertEquals(suiteResult.getResults().get("Second").get("same").get(1).getTestNumber(), 5, "Assertions should be numbered in order after merging");
+        assertEquals(suiteResult.getAssertionCount(), 6, "Reruns should not add to the assertions of the suite");
+
+        Object[] tests = QUnitTestSuiteRunner.toTests(Collections.singletonList(suiteResult));
+        assertEquals(((QUnitTest) tests[0]).getAttempts(), 3, "Tests should carry the number of attempts to the reporters");
+    }
+
+    @Test
+    public void testOnlySelectedModulesAndTestsAreRun() throws IOException {
+        System.setProperty(QUnitConfiguration.MODULES, "Math*");
+        System.setProperty(QUnitConfiguration.TESTS, "add?");
+        System.setProperty(QUnitConfiguration.MODULE_INDEX_FILE, new File(directory, "module-index.json").getPath());
+        createSuite("selected", MARKER,
+                "test(\"adds\", function () { ok(false, \"outside of a module\"); });\n" +
+                "module(\"Math: integers\");\n" +
+                "test(\"adds\", function () { ok(true, \"yes\"); });\n" +
+                "test(\"subtracts\", function () { ok(false, \"not selected\"); });\n" +
+                "module(\"Strings\");\n" +
+                "test(\"adds\", function () { ok(false, \"not selected\"); });\n");
+        createSuite("other", MARKER,
+                "module(\"Strings\");\n" +
+                "test(\"adds\", function () { ok(false, \"not selected\"); });\n");
+
+        QUnitTestSuiteResult suiteResult = getOnlyResult();
+
+        assertEquals(suiteResult.getPath(), "selected/Test.html", "The file without a selected module should not have been run");
+        assertEquals(suiteResult.getResults().keySet(), Collections.singleton("Math: integers"), "Only the selected module should have been run");
+        assertEquals(suiteResult.getResults().get("Math: integers").keySet(), Collections.singleton("adds"), "Only the selected test should have been run");
+        assertTrue(new File(directory, "module-index.json").isFile(), "The modules of every file should have been kept for the next run");
+        assertEquals(QUnitMetrics.get().getPhaseCount(QUnitMetrics.DISCOVERY), 1, "Discovery should have been timed once");
+        assertEquals(QUnitMetrics.get().getPhaseCount(QUnitMetrics.MODULE_INDEX), 1, "Looking up the modules should have been timed on its own");
+    }
+
+    private void createSuite(String name, String marker, String tests) throws IOException {
+        FileUtils.writeStringToFile(new File(directory, name + "/Test.html"), String.format(PAGE, marker), "UTF-8");
+        FileUtils.writeStringToFile(new File(directory, name + "/tests.js"), "QUnitTestSuite.create(function () {\n" + tests + "});\n", "UTF-8");
+    }
+
+    private QUnitTestSuiteResult getOnlyResult() {
+        List<QUnitTestSuiteResult> suiteResults = QUnitTestSuiteRunner.getTestResults();
+        assertEquals(suiteResults.size(), 1, "Only one suite should have run");
+
+        return suiteResults.get(0);
+    }
+}
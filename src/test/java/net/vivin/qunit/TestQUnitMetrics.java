@@ -0,0 +1,117 @@
+package net.vivin.qunit;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.apache.commons.io.FileUtils;
+import org.testng.annotations.Test;
+import static org.testng.Assert.*;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Tests that the metrics of a run add up, and that they (and the trace of the run) are written out the way they can be
+ * read back
+ */
+
+@Test
+public class TestQUnitMetrics {
+
+    @Test
+    public void testPhasesAreCountedAndBucketed() {
+        QUnitMetrics metrics = QUnitMetrics.get();
+        metrics.startRun(null, null);
+
+        //Ninety fast page loads and ten slow ones
+        for (int i = 0; i < 90; i++) {
+            metrics.record(QUnitMetrics.PAGE_LOAD, 3000000);
+        }
+
+        for (int i = 0; i < 10; i++) {
+            metrics.record(QUnitMetrics.PAGE_LOAD, 700000000);
+        }
+
+        metrics.record(QUnitMetrics.DISCOVERY, 90000000000L);
+
+        assertEquals(metrics.getPhaseCount(QUnitMetrics.PAGE_LOAD), 100, "Every page load should be counted");
+        assertEquals(metrics.getPhaseTotalMillis(QUnitMetrics.PAGE_LOAD), 7270.0, "Page loads should add up");
+        assertEquals(metrics.getPhaseMaxMillis(QUnitMetrics.PAGE_LOAD), 700.0, "The slowest page load should be kept");
+        assertEquals(metrics.getPhasePercentileMillis(QUnitMetrics.PAGE_LOAD, 50), 5.0, "The median should fall into the bucket of the fast page loads");
+        assertEquals(metrics.getPhasePercentileMillis(QUnitMetrics.PAGE_LOAD, 95), 1000.0, "The 95th percentile should fall into the bucket of the slow page loads");
+        assertEquals(metrics.getPhasePercentileMillis(QUnitMetrics.DISCOVERY, 50), -1.0, "Anything over a minute should fall into the unbounded bucket");
+        assertEquals(Arrays.asList(metrics.getPhaseNames()), Arrays.asList(QUnitMetrics.DISCOVERY, QUnitMetrics.PAGE_LOAD), "Phases should be listed in the order in which they happen");
+    }
+
+    @Test
+    public void testMetricsAreWrittenWithEverySuite() throws IOException {
+        File file = new File(Files.createTempDirectory("qunit-metrics").toFile(), "qunit-metrics.json");
+
+        QUnitMetrics metrics = QUnitMetrics.get();
+        metrics.startRun(file, null);
+
+        QUnitSuiteMetrics suiteMetrics = new QUnitSuiteMetrics();
+        suiteMetrics.spawned(20000000);
+        suiteMetrics.pageLoaded(15);
+        suiteMetrics.addOutput(1000, 512);
+        suiteMetrics.done();
+
+        metrics.recordSuite("a/aTest.html", 120, 4, false, suiteMetrics);
+        metrics.recordSuite("b/bTest.html", 80, 2, true, null);
+        metrics.recordReporter(TestQUnitMetrics.class, 5000000);
+
+        assertEquals(metrics.getSuiteCount(), 2, "Both suites should be counted");
+        assertEquals(metrics.getAssertionCount(), 6, "The assertions of both suites should be counted");
+        assertEquals(metrics.getPhaseCount(QUnitMetrics.PROCESS_SPAWN), 1, "Suites from the cache didn't start anything");
+
+        JsonObject written = new JsonParser().parse(FileUtils.readFileToString(file, "UTF-8")).getAsJsonObject();
+        assertTrue(written.getAsJsonObject("phases").has("reporter:TestQUnitMetrics"), "Reporters should be written as phases of their own");
+        assertEquals(written.getAsJsonObject("phases").getAsJsonObject(QUnitMetrics.PAGE_LOAD).get("totalMillis").getAsDouble(), 15.0, "The page load reported by the driver should be recorded");
+
+        JsonObject first = written.getAsJsonArray("suites").get(0).getAsJsonObject();
+        assertEquals(first.get("path").getAsString(), "a/aTest.html", "Suites should be written in the order in which they were done");
+        assertEquals(first.get("outputBytes").getAsLong(), 512, "What the driver wrote should be recorded");
+        assertTrue(written.getAsJsonArray("suites").get(1).getAsJsonObject().get("cached").getAsBoolean(), "Suites from the cache should be marked as such");
+    }
+
+    @Test
+    public void testSuitesAreTracedOnTracksOfTheirOwn() throws IOException {
+        File traceFile = new File(Files.createTempDirectory("qunit-trace").toFile(), "qunit-trace.json");
+
+        QUnitMetrics metrics = QUnitMetrics.get();
+        metrics.startRun(null, traceFile);
+        metrics.record(QUnitMetrics.DISCOVERY, 1000000);
+
+        QUnitTestSuiteResult suiteResult = new QUnitTestSuiteResult();
+        suiteResult.getMetrics().setTrack(metrics.newTrack("a/aTest.html"));
+        new QUnitResultStreamParser(new QUnitStringPool(), false).parse(new BufferedReader(new StringReader(
+                "{\"type\":\"pageLoaded\",\"duration\":30}\n" +
+                "{\"type\":\"log\",\"module\":\"Module\",\"name\":\"Test\",\"testNumber\":1,\"failure\":false}\n" +
+                "{\"type\":\"testDone\",\"module\":\"Module\",\"name\":\"Test\",\"duration\":12}\n" +
+                "{\"type\":\"moduleDone\",\"module\":\"Module\",\"duration\":14}\n" +
+                "{\"type\":\"done\",\"failed\":false}\n")), suiteResult);
+        metrics.recordSuite("a/aTest.html", 50, 1, false, suiteResult.getMetrics());
+        metrics.writeTrace();
+        metrics.startRun(null, null);
+
+        List<String> runner = new ArrayList<String>();
+        List<String> suite = new ArrayList<String>();
+        for (JsonElement element : new JsonParser().parse(FileUtils.readFileToString(traceFile, "UTF-8")).getAsJsonObject().getAsJsonArray("traceEvents")) {
+            JsonObject event = element.getAsJsonObject();
+            if (event.get("ph").getAsString().equals("X")) {
+                (event.get("tid").getAsInt() == 1 ? runner : suite).add(event.get("name").getAsString());
+            } else if (event.get("name").getAsString().equals("thread_name") && event.get("tid").getAsInt() == 2) {
+                assertEquals(event.getAsJsonObject("args").get("name").getAsString(), "a/aTest.html", "The track of a suite should be named after it");
+            }
+        }
+
+        assertEquals(runner, Arrays.asList(QUnitMetrics.DISCOVERY), "The phases of the runner should be on its own track");
+        assertEquals(suite, Arrays.asList("page load", "Test", "Module", "QUnit", "results"), "Everything the suite did should be on its track");
+    }
+}
@@ -0,0 +1,52 @@
+package net.vivin.qunit;
+
+import org.apache.commons.io.FileUtils;
+import org.testng.annotations.Test;
+import static org.testng.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Tests that the modules of an HTML test file are found in its scripts, and that a file is only scanned again once it
+ * changes
+ */
+
+@Test
+public class TestQUnitModuleIndex {
+
+    @Test
+    public void testModulesAreFoundByName() {
+        List<String> modules = new ArrayList<String>();
+
+        assertTrue(QUnitModuleIndex.addModules("module(\"Math\");\nQUnit.module('It\\'s', { setup: function () {} });\nQUnit.moduleStart(function () {});\nfunction module(name) {}\n", modules), "Modules named by literals should be known");
+        assertEquals(modules, Arrays.asList("Math", "It's"), "Every module should be found once, and nothing else");
+
+        assertFalse(QUnitModuleIndex.addModules("module(name);\n", modules), "A module named by a variable can't be known");
+        assertFalse(QUnitModuleIndex.addModules("QUnit.module(\"Outer\", function () { QUnit.module(\"Inner\"); });\n", modules), "Nested modules can't be known");
+    }
+
+    @Test
+    public void testIndexIsKeptUntilFilesChange() throws IOException {
+        File directory = Files.createTempDirectory("qunit-module-index").toFile();
+        File html = new File(directory, "Test.html");
+        File tests = new File(directory, "tests.js");
+        File indexFile = new File(directory, "module-index.json");
+
+        FileUtils.writeStringToFile(html, "<script>QUnitTestSuite.run(\"./tests.js\");</script>", "UTF-8");
+        FileUtils.writeStringToFile(tests, "module(\"Before\");", "UTF-8");
+
+        QUnitModuleIndex index = QUnitModuleIndex.load(indexFile);
+        assertEquals(index.getModules("Test.html", html), Arrays.asList("global", "Before"), "Modules of the suite loaded by QUnitTestSuite.run should be found");
+        index.save();
+
+        FileUtils.writeStringToFile(tests, "module(\"After, and longer\");", "UTF-8");
+        assertEquals(QUnitModuleIndex.load(indexFile).getModules("Test.html", html), Arrays.asList("global", "After, and longer"), "A file should be scanned again once a script changes");
+
+        FileUtils.deleteQuietly(directory);
+    }
+}
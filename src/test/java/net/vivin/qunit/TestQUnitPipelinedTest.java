@@ -0,0 +1,80 @@
+package net.vivin.qunit;
+
+import net.vivin.qunit.reporter.QUnitJUnitXMLReporter;
+import org.apache.commons.io.FileUtils;
+import org.testng.TestListenerAdapter;
+import org.testng.TestNG;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+import org.w3c.dom.Document;
+import static org.testng.Assert.*;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+/**
+ * Runs the lazy data provider of the pipelined mode through TestNG itself, against a shell script that stands in for
+ * PhantomJS, and checks what TestNG and the reporters make of it
+ */
+
+@Test
+public class TestQUnitPipelinedTest {
+
+    private File directory;
+
+    @BeforeMethod
+    public void createDirectory() throws IOException {
+        directory = Files.createTempDirectory("qunit-pipelined-test").toFile();
+        File root = new File(directory, "tests");
+
+        FileUtils.writeStringToFile(new File(root, "a/Test.html"), "<html></html>", "UTF-8");
+        FileUtils.writeStringToFile(new File(root, "b/Test.html"), "<html></html>", "UTF-8");
+
+        //Every suite makes two assertions in a test of its own
+        File browser = new File(directory, "browser");
+        FileUtils.writeStringToFile(browser, "#!/bin/sh\n" +
+                "name=$(basename $(dirname \"$2\"))\n" +
+                "echo '{\"type\":\"log\",\"module\":\"Module\",\"name\":\"'$name'\",\"testNumber\":1,\"message\":\"first\",\"failure\":false}'\n" +
+                "echo '{\"type\":\"log\",\"module\":\"Module\",\"name\":\"'$name'\",\"testNumber\":2,\"message\":\"second\",\"failure\":true}'\n" +
+                "echo '{\"type\":\"done\",\"failed\":true}'\n", "UTF-8");
+        assertTrue(browser.setExecutable(true), "Browser script should be executable");
+
+        System.setProperty(QUnitConfiguration.ROOT, root.getPath());
+        System.setProperty(QUnitConfiguration.HISTORY_FILE, new File(directory, "history.json").getPath());
+        System.setProperty(QUnitConfiguration.PHANTOMJS_PATH, browser.getPath());
+    }
+
+    @AfterMethod
+    public void deleteDirectory() {
+        System.clearProperty(QUnitConfiguration.ROOT);
+        System.clearProperty(QUnitConfiguration.HISTORY_FILE);
+        System.clearProperty(QUnitConfiguration.PHANTOMJS_PATH);
+
+        FileUtils.deleteQuietly(directory);
+    }
+
+    @Test
+    public void testEveryAssertionIsReportedOnce() throws Exception {
+        File outputDirectory = new File(directory, "output");
+        TestListenerAdapter results = new TestListenerAdapter();
+
+        TestNG testNG = new TestNG(false);
+        testNG.setVerbose(0);
+        testNG.setOutputDirectory(outputDirectory.getPath());
+        testNG.setTestClasses(new Class[]{QUnitPipelinedTest.class});
+        testNG.addListener(results);
+        testNG.addListener(new QUnitJUnitXMLReporter());
+        testNG.run();
+
+        assertEquals(results.getPassedTests().size(), 2, "Every passing assertion should have been run once");
+        assertEquals(results.getFailedTests().size(), 2, "Every failing assertion should have been run once");
+
+        Document report = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(new File(outputDirectory, "TEST-" + QUnitPipelinedTest.class.getName() + ".xml"));
+        assertEquals(report.getElementsByTagName("testcase").getLength(), 4, "Every assertion should have been reported once");
+        assertEquals(report.getElementsByTagName("failure").getLength(), 2, "Every failing assertion should have been reported once");
+        assertEquals(report.getDocumentElement().getAttribute("tests"), "4", "The totals should count every assertion once");
+    }
+}
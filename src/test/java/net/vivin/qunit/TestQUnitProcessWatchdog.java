@@ -0,0 +1,73 @@
+package net.vivin.qunit;
+
+import org.testng.annotations.Test;
+import static org.testng.Assert.*;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests that the watchdog kills processes that overrun their deadline, and leaves alone the ones that don't
+ */
+
+@Test
+public class TestQUnitProcessWatchdog {
+
+    @Test
+    public void testKillsProcessAfterDeadline() throws IOException, InterruptedException {
+        QUnitProcessWatchdog watchdog = new QUnitProcessWatchdog();
+        try {
+            Process process = new ProcessBuilder("sleep", "30").start();
+            QUnitProcessWatchdog.Watch watch = watchdog.watch(process, System.currentTimeMillis() + 200);
+
+            assertTrue(process.waitFor(10, TimeUnit.SECONDS), "Process should have been killed after its deadline");
+            assertTrue(watch.isExpired(), "Watch should be marked as expired");
+        } finally {
+            watchdog.close();
+        }
+    }
+
+    @Test
+    public void testCancelledWatchLeavesProcessAlone() throws IOException, InterruptedException {
+        QUnitProcessWatchdog watchdog = new QUnitProcessWatchdog();
+        Process process = new ProcessBuilder("sleep", "30").start();
+        try {
+            QUnitProcessWatchdog.Watch watch = watchdog.watch(process, System.currentTimeMillis() + 200);
+            watch.cancel();
+
+            assertFalse(process.waitFor(500, TimeUnit.MILLISECONDS), "Process should still be running");
+            assertFalse(watch.isExpired(), "Watch should not be marked as expired");
+        } finally {
+            watchdog.close();
+            process.destroyForcibly();
+        }
+    }
+
+    @Test
+    public void testCloseKillsWatchedProcesses() throws IOException, InterruptedException {
+        QUnitProcessWatchdog watchdog = new QUnitProcessWatchdog();
+        Process process = new ProcessBuilder("sleep", "30").start();
+        watchdog.watch(process, 0);
+
+        watchdog.close();
+
+        assertTrue(process.waitFor(10, TimeUnit.SECONDS), "Process should have been killed when the watchdog was closed");
+    }
+
+    @Test
+    public void testDrainKeepsTailOfOutput() throws IOException, InterruptedException {
+        Process process = new ProcessBuilder("sh", "-c", "i=0; while [ $i -lt 2000 ]; do echo line $i 1>&2; i=$((i+1)); done").start();
+        QUnitProcessWatchdog.StreamDrain drain = QUnitProcessWatchdog.drain(process.getErrorStream(), "test-stderr");
+
+        assertEquals(process.waitFor(), 0, "Process should not block on a full STDERR pipe");
+
+        //Give the drain a moment to read whatever is left in the pipe
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!drain.getTail().endsWith("line 1999") && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+
+        assertTrue(drain.getTail().endsWith("line 1999"), "Tail should end with the last line");
+        assertTrue(drain.getTail().length() <= 4096, "Tail should be bounded");
+    }
+}
@@ -0,0 +1,150 @@
+package net.vivin.qunit;
+
+import org.apache.commons.io.FileUtils;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+import static org.testng.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+/**
+ * Tests that the result cache replays results only while the suite and everything it references is unchanged
+ */
+
+@Test
+public class TestQUnitResultCache {
+
+    private File directory;
+
+    @BeforeMethod
+    public void createDirectory() throws IOException {
+        directory = Files.createTempDirectory("qunit-cache-test").toFile();
+    }
+
+    @AfterMethod
+    public void deleteDirectory() {
+        FileUtils.deleteQuietly(directory);
+    }
+
+    @Test
+    public void testKeyChangesWhenReferencedScriptChanges() throws IOException {
+        File html = write("suite/Test.html", "<html><head><script type=\"text/javascript\" src=\"js/code.js\"></script></head>" +
+                "<body><script>QUnitTestSuite.run(\"./tests.js\");</script></body></html>");
+        write("suite/js/code.js", "var one = 1;");
+        write("suite/tests.js", "test('one', function () {});");
+
+        QUnitResultCache cache = createCache(Long.MAX_VALUE);
+        String key = cache.key(html, "phantomjs");
+        assertEquals(cache.key(html, "phantomjs"), key, "The key must be stable");
+
+        write("suite/js/code.js", "var one = 2;");
+        String changedScriptKey = cache.key(html, "phantomjs");
+        assertNotEquals(changedScriptKey, key, "The key must change when a referenced script changes");
+
+        write("suite/tests.js", "test('two', function () {});");
+        assertNotEquals(cache.key(html, "phantomjs"), changedScriptKey, "The key must change when the suite loaded by QUnitTestSuite.run changes");
+    }
+
+    @Test
+    public void testKeyChangesWhenPassingValuesAreDropped() throws IOException {
+        File html = write("suite/Test.html", "<html></html>");
+
+        QUnitResultCache droppingCache = new QUnitResultCache(new File(directory, "cache"), Long.MAX_VALUE, false, new File(directory, "driver.js").getPath(), true);
+        assertNotEquals(droppingCache.key(html, "phantomjs"), createCache(Long.MAX_VALUE).key(html, "phantomjs"), "Results without passing values must not be replayed into a run that keeps them");
+    }
+
+    @Test
+    public void testBrowserIsIdentifiedByItsContents() throws IOException {
+        File phantomJS = write("one/phantomjs", "binary");
+        File copy = write("two/phantomjs", "binary");
+        File other = write("three/phantomjs", "BINARY");
+        copy.setLastModified(phantomJS.lastModified() - 60000);
+        other.setLastModified(phantomJS.lastModified());
+
+        try {
+            assertEquals(getIdentity(copy), getIdentity(phantomJS), "A fresh copy of the same binary must be the same browser");
+            assertNotEquals(getIdentity(other), getIdentity(phantomJS), "A different binary of the same size and age must be a different browser");
+        } finally {
+            System.clearProperty(QUnitConfiguration.PHANTOMJS_PATH);
+        }
+    }
+
+    @Test
+    public void testStoredResultIsReplayed() throws IOException {
+        QUnitResultCache cache = createCache(Long.MAX_VALUE);
+        cache.store("key", createResult("Module One"));
+
+        QUnitTestSuiteResult cachedResult = cache.lookup("key");
+        assertNotNull(cachedResult, "The stored result must be replayed");
+        assertEquals(cachedResult.getResults().get("Module One").get("Test case one").get(0).getMessage(), "message", "Message must match");
+
+        assertNull(cache.lookup("other key"), "Unknown keys must not be replayed");
+        assertNull(new QUnitResultCache(new File(directory, "cache"), Long.MAX_VALUE, true, new File(directory, "driver.js").getPath(), false).lookup("key"),
+                "Nothing must be replayed when the cache is being refreshed");
+    }
+
+    @Test
+    public void testGlobalFailuresAreNotStored() throws IOException {
+        QUnitResultCache cache = createCache(Long.MAX_VALUE);
+        cache.store("key", QUnitTestSuiteResult.createGlobalFailure("timed out", null));
+
+        assertNull(cache.lookup("key"), "Global failures must not be cached");
+    }
+
+    @Test
+    public void testTestsOutsideOfModulesAreStored() throws IOException {
+        QUnitResultCache cache = createCache(Long.MAX_VALUE);
+        cache.store("key", createResult("global"));
+
+        assertNotNull(cache.lookup("key"), "A passing test outside of any module must be cached");
+    }
+
+    @Test
+    public void testLeastRecentlyUsedEntriesAreEvicted() throws IOException {
+        QUnitResultCache cache = createCache(Long.MAX_VALUE);
+        cache.store("sizing", createResult("Module One"));
+        long entrySize = new File(directory, "cache/sizing.json").length();
+        new File(directory, "cache/sizing.json").delete();
+
+        cache = createCache(entrySize * 2);
+        cache.store("first", createResult("Module One"));
+        new File(directory, "cache/first.json").setLastModified(System.currentTimeMillis() - 60000);
+        cache.store("second", createResult("Module One"));
+        cache.store("third", createResult("Module One"));
+
+        assertNull(cache.lookup("first"), "The least recently used entry must be evicted");
+        assertNotNull(cache.lookup("third"), "The most recently used entry must be kept");
+    }
+
+    private QUnitResultCache createCache(long maxSizeInBytes) throws IOException {
+        return new QUnitResultCache(new File(directory, "cache"), maxSizeInBytes, false, new File(directory, "driver.js").getPath(), false);
+    }
+
+    private QUnitTestSuiteResult createResult(String moduleName) {
+        QUnitTestResult result = new QUnitTestResult();
+        result.setTestNumber(1);
+        result.setMessage("message");
+
+        QUnitTestSuiteResult suiteResult = new QUnitTestSuiteResult();
+        suiteResult.addResult(moduleName, "Test case one", result);
+        return suiteResult;
+    }
+
+    private static String getIdentity(File phantomJS) throws IOException {
+        System.setProperty(QUnitConfiguration.PHANTOMJS_PATH, phantomJS.getPath());
+
+        QUnitPhantomJSEngine engine = new QUnitPhantomJSEngine();
+        engine.start(null);
+
+        return engine.getIdentity();
+    }
+
+    private File write(String path, String content) throws IOException {
+        File file = new File(directory, path);
+        FileUtils.writeStringToFile(file, content, "UTF-8");
+        return file;
+    }
+}
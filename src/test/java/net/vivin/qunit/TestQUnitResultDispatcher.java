@@ -0,0 +1,126 @@
+package net.vivin.qunit;
+
+import org.testng.annotations.Test;
+import static org.testng.Assert.*;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Tests that results reach the result listeners as they are parsed
+ */
+
+@Test
+public class TestQUnitResultDispatcher {
+
+    @Test
+    public void testEventsAreDeliveredInOrder() throws IOException {
+        RecordingListener recorder = new RecordingListener();
+        QUnitResultDispatcher dispatcher = new QUnitResultDispatcher(Arrays.<QUnitResultListener>asList(new FailingListener(), recorder), 2);
+
+        QUnitTestSuiteResult suiteResult = new QUnitTestSuiteResult();
+        suiteResult.setPath("a/aTest.html");
+        suiteResult.setDispatcher(dispatcher);
+
+        dispatcher.runStarted(1);
+        dispatcher.suiteStarted("a/aTest.html");
+        new QUnitResultStreamParser(new QUnitStringPool(), false).parse(new BufferedReader(new StringReader(
+                "{\"type\":\"log\",\"module\":\"Module\",\"name\":\"Test\",\"testNumber\":1,\"failure\":false}\n" +
+                "{\"type\":\"log\",\"module\":\"Module\",\"name\":\"Test\",\"testNumber\":2,\"failure\":true}\n" +
+                "{\"type\":\"testDone\",\"module\":\"Module\",\"name\":\"Test\",\"duration\":12}\n" +
+                "{\"type\":\"done\",\"failed\":true}\n")), suiteResult);
+        dispatcher.suiteDone("a/aTest.html", suiteResult);
+        dispatcher.runDone();
+        dispatcher.close();
+
+        //The queue only holds two events, so the parser has to wait for the listeners along the way
+        assertEquals(recorder.events, Arrays.asList("runStarted 1", "suiteStarted a/aTest.html", "assertion a/aTest.html Module Test 1", "assertion a/aTest.html Module Test 2",
+                "testDone a/aTest.html Module Test 12", "suiteDone a/aTest.html", "runDone"), "Every listener should get every event, in order, even after another one fails");
+
+        dispatcher.suiteStarted("b/bTest.html");
+        assertEquals(recorder.events.size(), 7, "Events after the dispatcher is closed should be dropped");
+    }
+
+    @Test
+    public void testConsoleProgressNamesLongestRunningSuites() {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        QUnitConsoleProgressListener listener = new QUnitConsoleProgressListener(new PrintStream(output, true));
+
+        QUnitTestResult failure = new QUnitTestResult();
+        failure.setFailure(true);
+
+        listener.runStarted(4);
+        listener.suiteStarted("a/aTest.html");
+        listener.suiteStarted("b/bTest.html");
+        listener.assertion("a/aTest.html", "Module", "Test", failure);
+        listener.suiteDone("a/aTest.html", new QUnitTestSuiteResult());
+
+        String progress = listener.getProgress(System.currentTimeMillis());
+        assertTrue(progress.startsWith("QUnit: 1/4 suites"), "Progress should count the suites that are done: " + progress);
+        assertTrue(progress.contains("1 failed"), "Progress should count failures: " + progress);
+        assertTrue(progress.endsWith("running longest: b/bTest.html (0s)"), "Progress should name the suites that are still running: " + progress);
+
+        listener.runDone();
+        assertTrue(output.toString().contains("ran 1 suites with 1 assertions (1 failed)"), "The run should be summed up once it's done");
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testUnknownListenerIsRejected() {
+        QUnitResultDispatcher.createListeners(Collections.singletonList("net.vivin.qunit.NoSuchListener"));
+    }
+
+    private static class RecordingListener implements QUnitResultListener {
+
+        private final List<String> events = Collections.synchronizedList(new ArrayList<String>());
+
+        @Override
+        public void runStarted(int suiteCount) {
+            events.add("runStarted " + suiteCount);
+        }
+
+        @Override
+        public void suiteStarted(String path) {
+            events.add("suiteStarted " + path);
+        }
+
+        @Override
+        public void assertion(String path, String moduleName, String testName, QUnitTestResult result) {
+            events.add("assertion " + path + " " + moduleName + " " + testName + " " + result.getTestNumber());
+        }
+
+        @Override
+        public void testDone(String path, String moduleName, String testName, long duration) {
+            events.add("testDone " + path + " " + moduleName + " " + testName + " " + duration);
+        }
+
+        @Override
+        public void suiteDone(String path, QUnitTestSuiteResult suiteResult) {
+            events.add("suiteDone " + path);
+        }
+
+        @Override
+        public void suiteError(String path, Throwable error) {
+            events.add("suiteError " + path);
+        }
+
+        @Override
+        public void runDone() {
+            events.add("runDone");
+        }
+    }
+
+    private static class FailingListener extends RecordingListener {
+
+        @Override
+        public void assertion(String path, String moduleName, String testName, QUnitTestResult result) {
+            throw new IllegalStateException("Listeners can fail");
+        }
+    }
+}
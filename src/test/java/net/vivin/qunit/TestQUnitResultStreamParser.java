@@ -0,0 +1,125 @@
+package net.vivin.qunit;
+
+import org.testng.annotations.Test;
+import static org.testng.Assert.*;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.List;
+
+/**
+ * Tests the parsing of the newline-delimited JSON that QUnitTestDriver.js streams to the runner
+ */
+
+@Test
+public class TestQUnitResultStreamParser {
+
+    @Test
+    public void testCompleteSuiteIsParsedInOrder() throws IOException {
+        QUnitTestSuiteResult suiteResult = new QUnitTestSuiteResult();
+        boolean completed = new QUnitResultStreamParser(new QUnitStringPool(), true).parse(reader(
+                "{\"type\":\"log\",\"module\":\"Module One\",\"name\":\"Test case one\",\"testNumber\":1,\"message\":\"first\",\"expected\":\"1\",\"actual\":\"1\",\"failure\":false}",
+                "PhantomJS has crashed a little, but not enough to stop",
+                "{\"type\":\"log\",\"module\":\"Module One\",\"name\":\"Test case one\",\"testNumber\":2,\"message\":\"second\",\"expected\":2,\"actual\":{\"a\":true},\"failure\":true}",
+                "{\"type\":\"log\",\"module\":\"Module Two\",\"name\":\"Test case two\",\"testNumber\":3,\"message\":\"third\",\"expected\":null,\"actual\":false,\"failure\":false}",
+                "{\"type\":\"done\",\"failed\":true}",
+                "{\"type\":\"log\",\"module\":\"Next suite\",\"name\":\"Not ours\",\"testNumber\":1,\"failure\":false}"
+        ), suiteResult);
+
+        assertTrue(completed, "The suite must be reported as complete");
+        assertEquals(suiteResult.getResults().keySet().size(), 2, "There should be two modules");
+
+        List<QUnitTestResult> results = suiteResult.getResults().get("Module One").get("Test case one");
+        assertEquals(results.size(), 2, "There should be two results");
+        assertEquals(results.get(1).getTestNumber(), 2, "Test number must match");
+        assertEquals(results.get(1).getExpected(), "2", "Numbers must be reported as strings");
+        assertEquals(results.get(1).getActual(), "{\"a\":true}", "Objects must be reported as JSON");
+        assertTrue(results.get(1).isFailure(), "Failure value must match");
+
+        QUnitTestResult result = suiteResult.getResults().get("Module Two").get("Test case two").get(0);
+        assertNull(result.getExpected(), "Expected value must be null");
+        assertEquals(result.getActual(), "false", "Booleans must be reported as strings");
+    }
+
+    @Test
+    public void testPartialSuiteKeepsReportedResults() throws IOException {
+        QUnitTestSuiteResult suiteResult = new QUnitTestSuiteResult();
+        boolean completed = new QUnitResultStreamParser(new QUnitStringPool(), false).parse(reader(
+                "{\"type\":\"log\",\"module\":\"Module One\",\"name\":\"Test case one\",\"testNumber\":1,\"message\":\"first\",\"failure\":false}",
+                "{\"type\":\"log\",\"module\":\"Module One\",\"name\":\"Test case one\",\"testNu"
+        ), suiteResult);
+
+        assertFalse(completed, "The suite must be reported as incomplete");
+        assertEquals(suiteResult.getResults().get("Module One").get("Test case one").size(), 1, "The first result must be kept");
+
+        suiteResult.addGlobalFailure("crashed", null);
+        QUnitTestResult globalFailure = suiteResult.getResults().get("global").get("global failure").get(0);
+        assertEquals(globalFailure.getTestNumber(), 2, "The global failure must be numbered after the existing results");
+        assertTrue(globalFailure.isFailure(), "The global failure must be a failure");
+    }
+
+    @Test
+    public void testPassingValuesAreDroppedAndNamesAndSourcesShared() throws IOException {
+        QUnitTestSuiteResult suiteResult = new QUnitTestSuiteResult();
+        new QUnitResultStreamParser(new QUnitStringPool(), false).parse(reader(
+                "{\"type\":\"log\",\"module\":\"Module One\",\"name\":\"Test case one\",\"testNumber\":1,\"message\":\"first\",\"expected\":\"1\",\"actual\":\"1\",\"source\":\"at tests.js:1\",\"failure\":false}",
+                "{\"type\":\"log\",\"module\":\"Module One\",\"name\":\"Test case one\",\"testNumber\":2,\"message\":\"second\",\"expected\":\"1\",\"actual\":\"2\",\"source\":\"at tests.js:1\",\"failure\":true}",
+                "{\"type\":\"log\",\"module\":\"Module One\",\"name\":\"Test case one\",\"testNumber\":3,\"message\":\"third\",\"expected\":\"1\",\"actual\":\"3\",\"source\":\"at tests.js:1\",\"failure\":true}",
+                "{\"type\":\"done\",\"failed\":true}"
+        ), suiteResult);
+
+        List<QUnitTestResult> results = suiteResult.getResults().get("Module One").get("Test case one");
+        assertEquals(results.get(0).getTestNumber(), 1, "Test number must match");
+        assertFalse(results.get(0).isFailure(), "Failure value must match");
+        assertEquals(results.get(0).getMessage(), "first", "Message must be kept for passing assertions");
+        assertNull(results.get(0).getExpected(), "Expected value must be dropped for passing assertions");
+        assertNull(results.get(0).getActual(), "Actual value must be dropped for passing assertions");
+
+        assertEquals(results.get(2).getTestNumber(), 3, "Test number must match");
+        assertTrue(results.get(2).isFailure(), "Failure value must match");
+        assertEquals(results.get(2).getExpected(), "1", "Expected value must be kept for failing assertions");
+        assertEquals(results.get(2).getActual(), "3", "Actual value must be kept for failing assertions");
+        assertSame(results.get(1).getSource(), results.get(2).getSource(), "Identical sources must be shared");
+    }
+
+    @Test
+    public void testDurationsAreRecorded() throws IOException {
+        QUnitTestSuiteResult suiteResult = new QUnitTestSuiteResult();
+        new QUnitResultStreamParser(new QUnitStringPool(), false).parse(reader(
+                "{\"type\":\"log\",\"module\":\"Module One\",\"name\":\"Test case one\",\"testNumber\":1,\"message\":\"first\",\"failure\":false}",
+                "{\"type\":\"log\",\"module\":\"Module One\",\"name\":\"Test case one\",\"testNumber\":2,\"message\":\"second\",\"failure\":false}",
+                "{\"type\":\"testDone\",\"module\":\"Module One\",\"name\":\"Test case one\",\"duration\":120}",
+                "{\"type\":\"moduleDone\",\"module\":\"Module One\",\"duration\":135}",
+                "{\"type\":\"done\",\"failed\":false}"
+        ), suiteResult);
+
+        assertEquals(suiteResult.getTestDuration("Module One", "Test case one"), Long.valueOf(120), "Test duration must be recorded");
+        assertEquals(suiteResult.getModuleDuration("Module One"), Long.valueOf(135), "Module duration must be recorded");
+        assertNull(suiteResult.getTestDuration("Module One", "Test case two"), "Unreported tests must have no duration");
+        assertEquals(suiteResult.getResults().get("Module One").get("Test case one").size(), 2, "Timing events must not be added as results");
+    }
+
+    @Test
+    public void testFractionalDurationsAreRounded() throws IOException {
+        QUnitTestSuiteResult suiteResult = new QUnitTestSuiteResult();
+        new QUnitResultStreamParser(new QUnitStringPool(), false).parse(reader(
+                "{\"type\":\"log\",\"module\":\"Module One\",\"name\":\"Test case one\",\"testNumber\":1,\"message\":\"first\",\"failure\":false}",
+                "{\"type\":\"testDone\",\"module\":\"Module One\",\"name\":\"Test case one\",\"duration\":12.6}",
+                "{\"type\":\"moduleDone\",\"module\":\"Module One\",\"duration\":13.2}",
+                "{\"type\":\"done\",\"failed\":false}"
+        ), suiteResult);
+
+        assertEquals(suiteResult.getTestDuration("Module One", "Test case one"), Long.valueOf(13), "Test duration must be rounded");
+        assertEquals(suiteResult.getModuleDuration("Module One"), Long.valueOf(13), "Module duration must be rounded");
+    }
+
+    private BufferedReader reader(String... lines) {
+        StringBuilder output = new StringBuilder();
+        for (String line : lines) {
+            output.append(line).append("\n");
+        }
+
+        return new BufferedReader(new StringReader(output.toString()));
+    }
+}
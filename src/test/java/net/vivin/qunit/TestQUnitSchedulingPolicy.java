@@ -0,0 +1,68 @@
+package net.vivin.qunit;
+
+import org.apache.commons.io.FileUtils;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+import static org.testng.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Tests the order in which each scheduling policy starts suites
+ */
+
+@Test
+public class TestQUnitSchedulingPolicy {
+
+    private static final List<String> PATHS = Arrays.asList("a/ATest.html", "b/BTest.html", "c/CTest.html", "d/DTest.html");
+
+    private File directory;
+    private QUnitSuiteHistory history;
+
+    @BeforeMethod
+    public void createHistory() throws IOException {
+        directory = Files.createTempDirectory("qunit-schedule-test").toFile();
+
+        history = QUnitSuiteHistory.load(new File(directory, "history.json"));
+        history.record("b/BTest.html", 500, false);
+        history.record("c/CTest.html", 100, true);
+        history.record("d/DTest.html", 900, true);
+    }
+
+    @AfterMethod
+    public void deleteDirectory() {
+        FileUtils.deleteQuietly(directory);
+    }
+
+    @Test
+    public void testDiscoveryKeepsOrder() {
+        assertEquals(QUnitSchedulingPolicy.DISCOVERY.order(PATHS, history), PATHS, "Discovery order should be unchanged");
+    }
+
+    @Test
+    public void testLongestFirst() {
+        //a/ATest.html has never run, so it is expected to take the average of 500, 100 and 900
+        assertEquals(QUnitSchedulingPolicy.LONGEST_FIRST.order(PATHS, history), Arrays.asList("d/DTest.html", "a/ATest.html", "b/BTest.html", "c/CTest.html"), "Suites should be ordered by expected duration");
+    }
+
+    @Test
+    public void testFailedFirst() {
+        assertEquals(QUnitSchedulingPolicy.FAILED_FIRST.order(PATHS, history), Arrays.asList("c/CTest.html", "d/DTest.html", "a/ATest.html", "b/BTest.html"), "Failed suites should come first, each group in discovery order");
+    }
+
+    @Test
+    public void testForName() {
+        assertEquals(QUnitSchedulingPolicy.forName("longest-first"), QUnitSchedulingPolicy.LONGEST_FIRST, "Policy should be found by name");
+        assertEquals(QUnitSchedulingPolicy.FAILED_FIRST.getName(), "failed-first", "Name should be lower case with dashes");
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testForUnknownName() {
+        QUnitSchedulingPolicy.forName("random");
+    }
+}
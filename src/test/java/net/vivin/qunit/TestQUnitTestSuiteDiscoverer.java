@@ -0,0 +1,85 @@
+package net.vivin.qunit;
+
+import org.apache.commons.io.FileUtils;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+import static org.testng.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Tests that the discoverer finds the right HTML files, prunes excluded directories, and reuses its manifest
+ */
+
+@Test
+public class TestQUnitTestSuiteDiscoverer {
+
+    private File directory;
+
+    @BeforeMethod
+    public void createDirectory() throws IOException {
+        directory = Files.createTempDirectory("qunit-discovery-test").toFile();
+
+        touch("TopLevelTest.html");
+        touch("b/BTest.html");
+        touch("a/ATest.html");
+        touch("a/notATest.js");
+        touch("a/vendor/VendorTest.html");
+        touch("node_modules/library/LibraryTest.html");
+    }
+
+    @AfterMethod
+    public void deleteDirectory() {
+        FileUtils.deleteQuietly(directory);
+    }
+
+    @Test
+    public void testIncludesAndExcludes() throws IOException {
+        List<File> files = new QUnitTestSuiteDiscoverer(directory, Arrays.asList("**/*Test.html"), Arrays.asList("**/vendor/**", "**/node_modules"), null).discover();
+
+        assertEquals(relativePaths(files), Arrays.asList("TopLevelTest.html", "a/ATest.html", "b/BTest.html"), "Only included files outside excluded directories must be found, in path order");
+    }
+
+    @Test
+    public void testManifestIsReusedUntilADirectoryChanges() throws IOException {
+        File manifest = new File(directory, "manifest.json");
+        List<String> includes = Arrays.asList("a/**/*Test.html");
+        List<String> excludes = Collections.emptyList();
+
+        List<File> files = new QUnitTestSuiteDiscoverer(directory, includes, excludes, manifest).discover();
+        assertEquals(relativePaths(files), Arrays.asList("a/ATest.html", "a/vendor/VendorTest.html"), "Included files must be found");
+        assertTrue(manifest.isFile(), "The manifest must be written");
+
+        //Nothing has changed, so the manifest is used as it is; we can tell because it lists a file we've just made up
+        String contents = FileUtils.readFileToString(manifest, "UTF-8");
+        FileUtils.writeStringToFile(manifest, contents.replace("a/ATest.html", "a/FromManifestTest.html"), "UTF-8");
+        files = new QUnitTestSuiteDiscoverer(directory, includes, excludes, manifest).discover();
+        assertEquals(relativePaths(files), Arrays.asList("a/FromManifestTest.html", "a/vendor/VendorTest.html"), "The manifest must be reused");
+
+        File vendor = new File(directory, "a/vendor");
+        touch("a/vendor/AnotherTest.html");
+        vendor.setLastModified(vendor.lastModified() + 2000);
+        files = new QUnitTestSuiteDiscoverer(directory, includes, excludes, manifest).discover();
+        assertEquals(relativePaths(files), Arrays.asList("a/ATest.html", "a/vendor/AnotherTest.html", "a/vendor/VendorTest.html"), "The tree must be walked again once a directory has changed");
+    }
+
+    private List<String> relativePaths(List<File> files) {
+        List<String> relativePaths = new ArrayList<String>();
+        for (File file : files) {
+            relativePaths.add(directory.toPath().toAbsolutePath().normalize().relativize(file.toPath()).toString().replace(File.separatorChar, '/'));
+        }
+
+        return relativePaths;
+    }
+
+    private void touch(String path) throws IOException {
+        FileUtils.touch(new File(directory, path));
+    }
+}
@@ -0,0 +1,322 @@
+package net.vivin.qunit;
+
+import org.apache.commons.io.FileUtils;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+import static org.testng.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs whole executions against a shell script that stands in for PhantomJS, so that the runner can be tested without
+ * a browser
+ */
+
+@Test
+public class TestQUnitTestSuiteExecution {
+
+    private File directory;
+    private File root;
+
+    @BeforeMethod
+    public void createDirectory() throws IOException {
+        directory = Files.createTempDirectory("qunit-execution-test").toFile();
+        root = new File(directory, "tests");
+
+        FileUtils.writeStringToFile(new File(root, "a/Test.html"), "<html></html>", "UTF-8");
+        FileUtils.writeStringToFile(new File(root, "b/Test.html"), "<html></html>", "UTF-8");
+
+        System.setProperty(QUnitConfiguration.ROOT, root.getPath());
+        System.setProperty(QUnitConfiguration.HISTORY_FILE, new File(directory, "history.json").getPath());
+    }
+
+    @AfterMethod
+    public void deleteDirectory() {
+        System.clearProperty(QUnitConfiguration.ROOT);
+        System.clearProperty(QUnitConfiguration.HISTORY_FILE);
+        System.clearProperty(QUnitConfiguration.PHANTOMJS_PATH);
+        System.clearProperty(QUnitConfiguration.SUITE_TIMEOUT);
+        System.clearProperty(QUnitConfiguration.ENGINE);
+        System.clearProperty(QUnitConfiguration.FAIL_FAST);
+        System.clearProperty(QUnitConfiguration.THREADS);
+        System.clearProperty(QUnitConfiguration.DROP_PASSING_VALUES);
+        System.clearProperty(QUnitConfiguration.RERUN_FAILURES);
+        System.clearProperty(QUnitConfiguration.SCHEDULE);
+        System.clearProperty(QUnitConfiguration.SHARD_COUNT);
+        System.clearProperty(QUnitConfiguration.SHARD_INDEX);
+
+        FileUtils.deleteQuietly(directory);
+    }
+
+    @Test
+    public void testSuitesAreRunWithConfiguredBrowser() throws IOException {
+        useBrowser("echo '{\"type\":\"log\",\"module\":\"Module\",\"name\":\"Test\",\"testNumber\":1,\"message\":\"'\"$2\"'\",\"failure\":false}'\n" +
+                "echo '{\"type\":\"done\",\"failed\":false}'\n");
+
+        List<QUnitTestSuiteResult> suiteResults = QUnitTestSuiteRunner.getTestResults();
+
+        assertEquals(suiteResults.size(), 2, "Both suites should have run");
+        assertEquals(suiteResults.get(0).getPath(), "a/Test.html", "Suites should be reported by relative path");
+        assertEquals(suiteResults.get(1).getPath(), "b/Test.html", "Suites should be reported in discovery order");
+        assertEquals(suiteResults.get(0).getResults().get("Module").get("Test").get(0).getMessage(), new File(root, "a/Test.html").getAbsolutePath(), "Browser should be given the suite's path");
+        assertTrue(new File(directory, "history.json").isFile(), "Suite history should have been written");
+    }
+
+    @Test
+    public void testCrashIsReportedWithStandardError() throws IOException {
+        useBrowser("echo '{\"type\":\"log\",\"module\":\"Module\",\"name\":\"Test\",\"testNumber\":1,\"message\":\"first\",\"failure\":false}'\n" +
+                "echo 'Segmentation fault' >&2\n" +
+                "exit 139\n");
+
+        QUnitTestSuiteResult suiteResult = QUnitTestSuiteRunner.getTestResults().get(0);
+
+        assertEquals(suiteResult.getResults().get("Module").get("Test").size(), 1, "Results before the crash should be kept");
+
+        QUnitTestResult globalFailure = suiteResult.getResults().get("global").get("global failure").get(0);
+        assertTrue(globalFailure.getMessage().contains("exited with 139"), "Failure should give the exit code");
+        assertTrue(globalFailure.getMessage().contains("Segmentation fault"), "Failure should include STDERR");
+    }
+
+    @Test
+    public void testSuiteIsKilledAfterTimeout() throws IOException {
+        System.setProperty(QUnitConfiguration.SUITE_TIMEOUT, "1");
+        useBrowser("exec sleep 30\n");
+
+        long start = System.currentTimeMillis();
+        QUnitTestSuiteResult suiteResult = QUnitTestSuiteRunner.getTestResults().get(0);
+
+        assertTrue(System.currentTimeMillis() - start < 20000, "Suite should have been killed well before it finished");
+        assertTrue(suiteResult.getResults().get("global").get("global failure").get(0).getMessage().contains("did not finish within 1 seconds"), "Failure should give the timeout");
+    }
+
+    @Test
+    public void testPooledEngineRunsSuitesOnWorkers() throws IOException {
+        System.setProperty(QUnitConfiguration.ENGINE, "pooled");
+
+        //A worker reads one path per line and writes the events for each, and is only started once
+        useBrowser("[ \"$2\" = \"--worker\" ] || exit 1\n" +
+                "while read path; do\n" +
+                "  echo '{\"type\":\"log\",\"module\":\"Module\",\"name\":\"Test\",\"testNumber\":1,\"message\":\"'$$'\",\"failure\":false}'\n" +
+                "  echo '{\"type\":\"done\",\"failed\":false}'\n" +
+                "done\n");
+        System.setProperty(QUnitConfiguration.THREADS, "1");
+
+        try {
+            List<QUnitTestSuiteResult> suiteResults = QUnitTestSuiteRunner.getTestResults();
+
+            assertEquals(suiteResults.size(), 2, "Both suites should have run");
+            assertEquals(suiteResults.get(1).getResults().get("Module").get("Test").get(0).getMessage(),
+                    suiteResults.get(0).getResults().get("Module").get("Test").get(0).getMessage(), "Both suites should have run on the same worker");
+        } finally {
+            System.clearProperty(QUnitConfiguration.THREADS);
+        }
+    }
+
+    @Test
+    public void testSuiteIsMovedOffWorkerThatDied() throws IOException {
+        System.setProperty(QUnitConfiguration.ENGINE, "pooled");
+        System.setProperty(QUnitConfiguration.THREADS, "1");
+
+        //Every worker finishes one suite and then dies, as the driver does after an error in its own script, but only
+        //once it has been handed back to the pool
+        useBrowser("[ \"$2\" = \"--worker\" ] || exit 1\n" +
+                "read path\n" +
+                "echo '{\"type\":\"log\",\"module\":\"Module\",\"name\":\"Test\",\"testNumber\":1,\"message\":\"'$$'\",\"failure\":false}'\n" +
+                "echo '{\"type\":\"done\",\"failed\":true}'\n" +
+                "sleep 1\n" +
+                "exit 1\n");
+
+        List<QUnitTestSuiteResult> suiteResults = QUnitTestSuiteRunner.getTestResults();
+
+        assertEquals(suiteResults.size(), 2, "Both suites should have run");
+        assertNull(suiteResults.get(1).getResults().get("global"), "The second suite should not have failed because its worker was gone");
+        assertNotEquals(suiteResults.get(1).getResults().get("Module").get("Test").get(0).getMessage(),
+                suiteResults.get(0).getResults().get("Module").get("Test").get(0).getMessage(), "The second suite should have run on a fresh worker");
+    }
+
+    @Test
+    public void testFirstFailureAbortsRun() throws IOException {
+        FileUtils.writeStringToFile(new File(root, "c/Test.html"), "<html></html>", "UTF-8");
+        System.setProperty(QUnitConfiguration.FAIL_FAST, "true");
+        System.setProperty(QUnitConfiguration.THREADS, "1");
+
+        //Every suite fails and then hangs, so only fail-fast can end the run quickly
+        useBrowser("echo '{\"type\":\"log\",\"module\":\"Module\",\"name\":\"Test\",\"testNumber\":1,\"message\":\"broken\",\"failure\":true}'\n" +
+                "exec sleep 30\n");
+
+        long start = System.currentTimeMillis();
+        List<QUnitTestSuiteResult> suiteResults = QUnitTestSuiteRunner.getTestResults();
+
+        assertTrue(System.currentTimeMillis() - start < 20000, "The failing suite should have been killed");
+        assertEquals(suiteResults.get(0).getResults().get("Module").get("Test").get(0).getMessage(), "broken", "Results gathered before the abort should be kept");
+        assertTrue(suiteResults.get(0).getResults().get("global").get("global failure").get(0).getMessage().contains("was aborted after the first failure"), "The killed suite should say why it was killed");
+        assertEquals(suiteResults.size(), 4, "The abort should be reported after the suites");
+        assertTrue(suiteResults.get(1).getResults().isEmpty() && suiteResults.get(2).getResults().isEmpty(), "Suites that were scheduled before the abort should not have been run");
+
+        QUnitTestResult aborted = suiteResults.get(3).getResults().get("global").get("run aborted").get(0);
+        assertEquals(aborted.getMessage(), "The run was aborted after the first failure, in a/Test.html; 2 of 3 suites were not run", "The abort should say where the run failed and how much of it was left out");
+    }
+
+    @Test
+    public void testResultsAreInDiscoveryOrderWhateverTheSchedule() throws IOException {
+        QUnitSuiteHistory history = QUnitSuiteHistory.load(new File(directory, "history.json"));
+        history.record("a/Test.html", 10, false);
+        history.record("b/Test.html", 1000, false);
+        history.save();
+
+        System.setProperty(QUnitConfiguration.SCHEDULE, "longest-first");
+        System.setProperty(QUnitConfiguration.THREADS, "1");
+        File started = new File(directory, "started");
+        useBrowser("basename $(dirname \"$2\") >> '" + started.getPath() + "'\n" +
+                "echo '{\"type\":\"done\",\"failed\":false}'\n");
+
+        List<QUnitTestSuiteResult> suiteResults = QUnitTestSuiteRunner.getTestResults();
+
+        assertEquals(FileUtils.readLines(started, "UTF-8"), Arrays.asList("b", "a"), "The longest suite should have been started first");
+        assertEquals(suiteResults.get(0).getPath(), "a/Test.html", "Results should be in discovery order");
+        assertEquals(suiteResults.get(1).getPath(), "b/Test.html", "Results should be in discovery order");
+    }
+
+    @Test
+    public void testFailFastWaitsForReruns() throws IOException {
+        System.setProperty(QUnitConfiguration.FAIL_FAST, "true");
+        System.setProperty(QUnitConfiguration.RERUN_FAILURES, "1");
+        System.setProperty(QUnitConfiguration.THREADS, "1");
+
+        //The first suite fails only the first time it runs; the second one fails every time
+        useBrowser("dir=$(dirname \"$2\")\n" +
+                "if [ \"$(basename \"$dir\")\" = a ] && [ -f \"$dir/ran\" ]; then failure=false; else failure=true; fi\n" +
+                "touch \"$dir/ran\"\n" +
+                "echo '{\"type\":\"log\",\"module\":\"Module\",\"name\":\"Test\",\"testNumber\":1,\"message\":\"flaky\",\"failure\":'$failure'}'\n" +
+                "echo '{\"type\":\"done\",\"failed\":'$failure'}'\n");
+
+        List<QUnitTestSuiteResult> suiteResults = QUnitTestSuiteRunner.getTestResults();
+
+        assertFalse(suiteResults.get(0).hasFailures(), "A suite that passes on a rerun should not have aborted the run");
+        assertEquals(suiteResults.get(0).getAttempts("Module", "Test"), 2, "The failing test should have been run again");
+        assertEquals(suiteResults.get(1).getAttempts("Module", "Test"), 2, "A suite should get all of its attempts before it aborts the run");
+        assertEquals(suiteResults.size(), 3, "The abort should be reported after the suites");
+        assertTrue(suiteResults.get(2).getResults().get("global").get("run aborted").get(0).getMessage().contains("in b/Test.html"), "The suite that failed on every attempt should have aborted the run");
+    }
+
+    @Test
+    public void testPassingValuesAreDroppedOnlyWhenAskedTo() throws IOException {
+        useBrowser("echo '{\"type\":\"log\",\"module\":\"Module\",\"name\":\"Test\",\"testNumber\":1,\"message\":\"passes\",\"expected\":\"1\",\"actual\":\"1\",\"failure\":false}'\n" +
+                "echo '{\"type\":\"log\",\"module\":\"Module\",\"name\":\"Test\",\"testNumber\":2,\"message\":\"fails\",\"expected\":\"1\",\"actual\":\"2\",\"failure\":true}'\n" +
+                "echo '{\"type\":\"done\",\"failed\":true}'\n");
+
+        List<QUnitTestResult> results = QUnitTestSuiteRunner.getTestResults().get(0).getResults().get("Module").get("Test");
+        assertEquals(results.get(0).getExpected(), "1", "Passing values should be kept by default");
+        assertEquals(results.get(0).getActual(), "1", "Passing values should be kept by default");
+
+        System.setProperty(QUnitConfiguration.DROP_PASSING_VALUES, "true");
+
+        results = QUnitTestSuiteRunner.getTestResults().get(0).getResults().get("Module").get("Test");
+        assertNull(results.get(0).getExpected(), "Passing values should be dropped when asked to");
+        assertNull(results.get(0).getActual(), "Passing values should be dropped when asked to");
+        assertEquals(results.get(1).getExpected(), "1", "Failing values should always be kept");
+        assertEquals(results.get(1).getActual(), "2", "Failing values should always be kept");
+    }
+
+    @Test
+    public void testShardIsBalancedWithSharedHistoryAndNeverWritesToIt() throws IOException {
+        File sharedHistory = new File(directory, "history.json");
+        QUnitSuiteHistory history = QUnitSuiteHistory.load(sharedHistory);
+        history.record("a/Test.html", 10, false);
+        history.record("b/Test.html", 1000, false);
+        history.save();
+        String sharedTimings = FileUtils.readFileToString(sharedHistory, "UTF-8");
+
+        System.setProperty(QUnitConfiguration.SHARD_COUNT, "2");
+        System.setProperty(QUnitConfiguration.SHARD_INDEX, "0");
+        useBrowser("echo '{\"type\":\"done\",\"failed\":false}'\n");
+
+        List<QUnitTestSuiteResult> suiteResults = QUnitTestSuiteRunner.getTestResults();
+
+        assertEquals(suiteResults.size(), 1, "The shard should run one suite");
+        assertEquals(suiteResults.get(0).getPath(), "b/Test.html", "The longest suite should go to the first shard");
+        assertEquals(FileUtils.readFileToString(sharedHistory, "UTF-8"), sharedTimings, "The shared history should not be written by a shard");
+        assertNotNull(QUnitSuiteHistory.load(new File(directory, "history-shard-0-of-2.json")).getDuration("b/Test.html"), "The shard should write its timings to a file of its own");
+    }
+
+    @Test
+    public void testShardIgnoresHistoryThatWasNotShared() throws IOException {
+        System.clearProperty(QUnitConfiguration.HISTORY_FILE);
+
+        //This node's own history would send the longest suite to the first shard, but other nodes can't see it
+        QUnitSuiteHistory history = QUnitSuiteHistory.load(new File(directory, "qunit-history.json"));
+        history.record("a/Test.html", 10, false);
+        history.record("b/Test.html", 1000, false);
+        history.save();
+
+        System.setProperty(QUnitConfiguration.SHARD_COUNT, "2");
+        System.setProperty(QUnitConfiguration.SHARD_INDEX, "0");
+        useBrowser("echo '{\"type\":\"done\",\"failed\":false}'\n");
+
+        List<QUnitTestSuiteResult> suiteResults = QUnitTestSuiteRunner.getTestResults();
+
+        assertEquals(suiteResults.size(), 1, "The shard should run one suite");
+        assertEquals(suiteResults.get(0).getPath(), "a/Test.html", "Suites should be dealt out round-robin");
+        assertTrue(new File(directory, "qunit-history-shard-0-of-2.json").isFile(), "The shard should write its timings to a file of its own");
+    }
+
+    @Test
+    public void testEngineIsNotLeftRunningWhenRunCannotStart() {
+        System.setProperty(QUnitConfiguration.ENGINE, RecordingEngine.class.getName());
+        System.setProperty(QUnitConfiguration.SCHEDULE, "no-such-schedule");
+        RecordingEngine.running.set(0);
+
+        try {
+            QUnitTestSuiteRunner.getTestResults();
+            fail("The run should not have started with an unknown schedule");
+        } catch (IllegalArgumentException e) {
+            assertEquals(RecordingEngine.running.get(), 0, "No engine should have been left running");
+        }
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testUnknownEngine() {
+        QUnitTestSuiteExecution.createEngine("net.vivin.qunit.NoSuchEngine");
+    }
+
+    private void useBrowser(String script) throws IOException {
+        File browser = new File(directory, "browser");
+        FileUtils.writeStringToFile(browser, "#!/bin/sh\n" + script, "UTF-8");
+        assertTrue(browser.setExecutable(true), "Browser script should be executable");
+
+        System.setProperty(QUnitConfiguration.PHANTOMJS_PATH, browser.getPath());
+    }
+
+    /**
+     * An engine that runs nothing, but keeps count of how many instances have been started and not closed
+     */
+    public static class RecordingEngine implements QUnitBrowserEngine {
+
+        static final AtomicInteger running = new AtomicInteger();
+
+        @Override
+        public void start(QUnitBrowserEngineContext context) {
+            running.incrementAndGet();
+        }
+
+        @Override
+        public String getIdentity() {
+            return "recording";
+        }
+
+        @Override
+        public void runTestSuite(String absolutePath, long deadline, QUnitTestSuiteResult suiteResult) {
+        }
+
+        @Override
+        public void close() {
+            running.decrementAndGet();
+        }
+    }
+}
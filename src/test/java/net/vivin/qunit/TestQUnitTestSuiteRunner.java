@@ -3,6 +3,7 @@ package net.vivin.qunit;
 import org.testng.annotations.Test;
 import static org.testng.Assert.*;
 
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 
@@ -274,6 +275,26 @@ public class TestQUnitTestSuiteRunner {
         assertEquals(totalFailures + totalPasses, 13, "There must be 13 results in total");
     }
 
+    @Test
+    public void testReportedTimesAddUpToTestDuration() {
+        QUnitTestSuiteResult suiteResult = new QUnitTestSuiteResult();
+        for (int i = 1; i <= 10; i++) {
+            QUnitTestResult result = new QUnitTestResult();
+            result.setTestNumber(i);
+            suiteResult.addResult("Module One", "Test case one", result);
+        }
+        suiteResult.setTestDuration("Module One", "Test case one", 5);
+
+        long total = 0;
+        for (Object test : QUnitTestSuiteRunner.toTests(Collections.singletonList(suiteResult))) {
+            long time = ((QUnitTest) test).getReportedTime(null);
+            assertTrue(time == 0 || time == 1, "Every assertion should get an equal share of the test, to the millisecond");
+            total += time;
+        }
+
+        assertEquals(total, 5, "The times of the assertions should add up to how long the test took");
+    }
+
     private void testTestResult(QUnitTestResult result, ExpectedQUnitTestResult expectedResult) {
         assertEquals(result.getTestNumber(), expectedResult.testNumber, "Test number must match");
         assertEquals(result.getMessage(), expectedResult.message, "Message must match");
@@ -0,0 +1,96 @@
+package net.vivin.qunit;
+
+import org.apache.commons.io.FileUtils;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+import static org.testng.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.*;
+
+/**
+ * Tests that shards are stable, cover every suite exactly once, and are balanced by duration when there is a history
+ */
+
+@Test
+public class TestQUnitTestSuiteSharder {
+
+    private File directory;
+
+    @BeforeMethod
+    public void createDirectory() throws IOException {
+        directory = Files.createTempDirectory("qunit-shard-test").toFile();
+    }
+
+    @AfterMethod
+    public void deleteDirectory() {
+        FileUtils.deleteQuietly(directory);
+    }
+
+    @Test
+    public void testShardsWithoutHistoryAreRoundRobin() {
+        List<String> paths = Arrays.asList("a/ATest.html", "b/BTest.html", "c/CTest.html", "d/DTest.html", "e/ETest.html");
+
+        assertEquals(new QUnitTestSuiteSharder(0, 2, null).select(paths), Arrays.asList("a/ATest.html", "c/CTest.html", "e/ETest.html"), "First shard");
+        assertEquals(new QUnitTestSuiteSharder(1, 2, null).select(paths), Arrays.asList("b/BTest.html", "d/DTest.html"), "Second shard");
+    }
+
+    @Test
+    public void testShardsAreBalancedByDuration() {
+        QUnitSuiteHistory history = QUnitSuiteHistory.load(new File(directory, "history.json"));
+        history.record("a/ATest.html", 1000, false);
+        history.record("b/BTest.html", 100, false);
+        history.record("c/CTest.html", 100, false);
+        history.record("d/DTest.html", 100, false);
+        history.record("e/ETest.html", 600, false);
+
+        List<String> paths = Arrays.asList("a/ATest.html", "b/BTest.html", "c/CTest.html", "d/DTest.html", "e/ETest.html");
+
+        List<String> first = new QUnitTestSuiteSharder(0, 2, history).select(paths);
+        List<String> second = new QUnitTestSuiteSharder(1, 2, history).select(paths);
+
+        assertEquals(first, Arrays.asList("a/ATest.html"), "Longest suite should get a shard of its own");
+        assertEquals(second, Arrays.asList("b/BTest.html", "c/CTest.html", "d/DTest.html", "e/ETest.html"), "Other suites should be kept in discovery order");
+    }
+
+    @Test
+    public void testEverySuiteIsInExactlyOneShard() {
+        QUnitSuiteHistory history = QUnitSuiteHistory.load(new File(directory, "history.json"));
+
+        List<String> paths = new ArrayList<String>();
+        for (int i = 0; i < 50; i++) {
+            paths.add(String.format("suite%02d/Test.html", i));
+            if (i % 3 == 0) {
+                history.record(paths.get(i), i * 10, false);
+            }
+        }
+
+        Set<String> seen = new HashSet<String>();
+        for (int shard = 0; shard < 8; shard++) {
+            List<String> selected = new QUnitTestSuiteSharder(shard, 8, history).select(paths);
+            assertEquals(new QUnitTestSuiteSharder(shard, 8, history).select(paths), selected, "Shard " + shard + " should be stable");
+
+            for (String path : selected) {
+                assertTrue(seen.add(path), path + " should only be in one shard");
+            }
+        }
+
+        assertEquals(seen.size(), paths.size(), "Every suite should be in a shard");
+    }
+
+    @Test
+    public void testHistoryIsSavedAndLoaded() {
+        File file = new File(directory, "history.json");
+
+        QUnitSuiteHistory history = QUnitSuiteHistory.load(file);
+        history.record("a/ATest.html", 1234, false);
+        history.save();
+
+        QUnitSuiteHistory loaded = QUnitSuiteHistory.load(file);
+        assertEquals(loaded.getDuration("a/ATest.html"), Long.valueOf(1234), "Duration should survive a round trip");
+        assertNull(loaded.getDuration("b/BTest.html"), "Unknown suites should have no duration");
+    }
+}
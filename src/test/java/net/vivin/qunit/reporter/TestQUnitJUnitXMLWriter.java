@@ -0,0 +1,102 @@
+package net.vivin.qunit.reporter;
+
+import net.vivin.qunit.QUnitPipelinedTest;
+import org.apache.commons.io.FileUtils;
+import org.testng.ITestResult;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import static org.testng.Assert.*;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.HashSet;
+import java.util.Set;
+
+@Test
+public class TestQUnitJUnitXMLWriter {
+
+    private File directory;
+    private File report;
+
+    @BeforeMethod
+    public void createDirectory() throws IOException {
+        directory = Files.createTempDirectory("qunit-junit-test").toFile();
+        report = new File(directory, "TEST-" + QUnitPipelinedTest.class.getName() + ".xml");
+    }
+
+    @AfterMethod
+    public void deleteDirectory() {
+        FileUtils.deleteQuietly(directory);
+    }
+
+    @Test
+    public void testReportIsWellFormedAfterEveryCheckpoint() throws Exception {
+        QUnitJUnitXMLWriter writer = new QUnitJUnitXMLWriter(directory, QUnitPipelinedTest.class, null);
+        assertEquals(parse().getElementsByTagName("testcase").getLength(), 0, "An empty report should be well-formed");
+
+        writer.writeTestCase("Module", "passes", 1500, ITestResult.SUCCESS, null, null, null, 1);
+        writer.writeTestCase("Module", "fails", 500, ITestResult.FAILURE, new AssertionError("expected <1>"), "at tests.js:3", null, 1);
+        writer.checkpoint();
+
+        //This is what a killed run leaves behind
+        Element testSuite = parse().getDocumentElement();
+        assertEquals(testSuite.getElementsByTagName("testcase").getLength(), 2, "Test cases up to the checkpoint should be in the report");
+        assertEquals(Integer.parseInt(testSuite.getAttribute("tests")), 2, "Tests should be counted up to the checkpoint");
+        assertEquals(Integer.parseInt(testSuite.getAttribute("failures")), 1, "Failures should be counted up to the checkpoint");
+        assertEquals(Double.parseDouble(testSuite.getAttribute("time")), 2.0, "Time should be added up to the checkpoint");
+
+        writer.writeTestCase("Module", "skipped", 0, ITestResult.SKIP, null, null, null, 1);
+        writer.close();
+
+        testSuite = parse().getDocumentElement();
+        assertEquals(testSuite.getElementsByTagName("testcase").getLength(), 3, "Every test case should be in the report");
+        assertEquals(Integer.parseInt(testSuite.getAttribute("tests")), 3, "Tests should be counted");
+        assertEquals(Integer.parseInt(testSuite.getAttribute("skipped")), 1, "Skipped tests should be counted");
+
+        Element failure = (Element) testSuite.getElementsByTagName("failure").item(0);
+        assertEquals(failure.getAttribute("message"), "expected <1>", "Failure should carry the message");
+        assertEquals(failure.getTextContent(), "at tests.js:3", "Failure should carry the source");
+        assertTrue(FileUtils.readFileToString(report, "UTF-8").trim().endsWith("</testsuite>"), "Report should end with the suite");
+    }
+
+    @Test
+    public void testKnownTotalsAreWrittenAsIs() throws Exception {
+        QUnitJUnitXMLWriter.Totals totals = new QUnitJUnitXMLWriter.Totals();
+        totals.add(ITestResult.SUCCESS, 1234);
+
+        QUnitJUnitXMLWriter writer = new QUnitJUnitXMLWriter(directory, QUnitPipelinedTest.class, totals);
+        writer.writeTestCase("Module", "passes", 1234, ITestResult.SUCCESS, null, null, null, 1);
+        writer.close();
+
+        Element testSuite = parse().getDocumentElement();
+        assertEquals(testSuite.getAttribute("tests"), "1", "Known totals should not be padded");
+        assertEquals(testSuite.getAttribute("time"), "1.234", "Known time should not be padded");
+        assertEquals(testSuite.getAttribute("name"), "Q Unit Pipelined Test", "Suite should be named after the words of the class name");
+    }
+
+    @Test
+    public void testSplitReportsAreNamedAfterTheirSource() throws Exception {
+        Set<String> fileNames = new HashSet<String>();
+        assertEquals(QUnitJUnitXMLReporter.getFileName("complex/complexTest.html", true, fileNames), "TEST-complex.complexTest.xml", "A file's report should be named after its path");
+        assertEquals(QUnitJUnitXMLReporter.getFileName("Math: add", false, fileNames), "TEST-Math__add.xml", "A module's report should be named after the module");
+        assertEquals(QUnitJUnitXMLReporter.getFileName("Math? add", false, fileNames), "TEST-Math__add-2.xml", "Reports should never share a file");
+
+        report = new File(directory, "TEST-complex.complexTest.xml");
+        QUnitJUnitXMLWriter writer = new QUnitJUnitXMLWriter(report, "complex/complexTest.html", null);
+        writer.writeTestCase("Module", "passes", 10, ITestResult.SUCCESS, null, null, "complex/complexTest.html", 1);
+        writer.close();
+
+        Element testSuite = parse().getDocumentElement();
+        assertEquals(testSuite.getAttribute("name"), "complex/complexTest.html", "Suite should be named as given");
+        assertEquals(((Element) testSuite.getElementsByTagName("testcase").item(0)).getAttribute("file"), "complex/complexTest.html", "Test case should record its file");
+    }
+
+    private Document parse() throws Exception {
+        return DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(report);
+    }
+}
@@ -0,0 +1,82 @@
+package net.vivin.qunit.reporter;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.apache.commons.io.FileUtils;
+import org.testng.ITestResult;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+import static org.testng.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+@Test
+public class TestQUnitReportDataWriter {
+
+    private File directory;
+
+    @BeforeMethod
+    public void createDirectory() throws IOException {
+        directory = Files.createTempDirectory("qunit-report-test").toFile();
+    }
+
+    @AfterMethod
+    public void deleteDirectory() {
+        FileUtils.deleteQuietly(directory);
+    }
+
+    @Test
+    public void testAssertionsAreSplitIntoChunks() throws Exception {
+        QUnitReportDataWriter writer = new QUnitReportDataWriter(directory, "QUnit Test Suite", 2);
+        writer.startModule("Failing");
+        writer.writeAssertion("fails", 500, ITestResult.FAILURE, "expected <1>", "at tests.js:3");
+        writer.writeAssertion("passes", 1500, ITestResult.SUCCESS, null, null);
+        writer.startModule("Passing");
+        writer.writeAssertion("passes", 250, ITestResult.SUCCESS, null, null);
+        writer.close();
+
+        JsonObject summary = read(QUnitReportDataWriter.SUMMARY_FILE, "QUnitReport.summary(").getAsJsonObject();
+        assertEquals(summary.get("tests").getAsInt(), 3, "Every assertion should be counted");
+        assertEquals(summary.get("failures").getAsInt(), 1, "Failures should be counted");
+        assertEquals(summary.get("time").getAsLong(), 2250L, "Time should be added up");
+        assertEquals(summary.get("chunks").getAsInt(), 2, "Assertions should be split into chunks of the given size");
+
+        JsonArray modules = summary.getAsJsonArray("modules");
+        assertEquals(modules.size(), 2, "Every module should be in the summary");
+        assertEquals(modules.get(1).getAsJsonObject().get("name").getAsString(), "Passing", "Modules should be in the order in which they were written");
+        assertEquals(modules.get(1).getAsJsonObject().get("first").getAsInt(), 2, "A module should know where its assertions start");
+        assertEquals(modules.get(1).getAsJsonObject().get("failures").getAsInt(), 0, "Failures should be counted by module");
+
+        JsonArray first = read(QUnitReportDataWriter.getChunkFileName(0), "QUnitReport.chunk(0,").getAsJsonArray();
+        assertEquals(first.size(), 2, "A chunk should be full before the next one is started");
+        assertEquals(first.get(0).getAsJsonArray().get(0).getAsInt(), QUnitReportDataWriter.FAILED, "A failed assertion should be marked as such");
+        assertEquals(first.get(0).getAsJsonArray().get(3).getAsString(), "expected <1>", "A failed assertion should carry its message");
+        assertEquals(first.get(1).getAsJsonArray().size(), 3, "A passed assertion should be written without a message");
+
+        assertEquals(read(QUnitReportDataWriter.getChunkFileName(1), "QUnitReport.chunk(1,").getAsJsonArray().size(), 1, "The last chunk should hold the rest");
+        assertTrue(new File(directory, "index.html").isFile(), "The page should be written next to the data");
+    }
+
+    @Test
+    public void testEarlierReportIsReplaced() throws Exception {
+        File stale = new File(directory, QUnitReportDataWriter.getChunkFileName(7));
+        FileUtils.writeStringToFile(stale, "QUnitReport.chunk(7,[]);", "UTF-8");
+
+        new QUnitReportDataWriter(directory, "QUnit Test Suite").close();
+
+        assertFalse(stale.exists(), "Chunks of an earlier report should be deleted");
+        assertEquals(read(QUnitReportDataWriter.SUMMARY_FILE, "QUnitReport.summary(").getAsJsonObject().get("tests").getAsInt(), 0, "An empty report should have a summary");
+    }
+
+    private JsonElement read(String fileName, String prefix) throws IOException {
+        String script = FileUtils.readFileToString(new File(directory, fileName), "UTF-8").trim();
+        assertTrue(script.startsWith(prefix) && script.endsWith(");"), fileName + " should be wrapped in a call to the page");
+
+        return new JsonParser().parse(script.substring(prefix.length(), script.length() - 2));
+    }
+}
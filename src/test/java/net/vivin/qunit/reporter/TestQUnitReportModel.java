@@ -0,0 +1,131 @@
+package net.vivin.qunit.reporter;
+
+import net.vivin.qunit.QUnitConfiguration;
+import net.vivin.qunit.QUnitPipelinedTest;
+import org.apache.commons.io.FileUtils;
+import org.testng.IReporter;
+import org.testng.ISuite;
+import org.testng.ITestContext;
+import org.testng.TestNG;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+import org.testng.internal.ResultMap;
+import org.testng.xml.XmlSuite;
+import static org.testng.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Builds the report model from what TestNG hands to reporters after a real run of two suites, against a shell script
+ * that stands in for PhantomJS
+ */
+
+@Test
+public class TestQUnitReportModel {
+
+    private File directory;
+
+    @BeforeMethod
+    public void createDirectory() throws IOException {
+        directory = Files.createTempDirectory("qunit-model-test").toFile();
+        File root = new File(directory, "tests");
+
+        FileUtils.writeStringToFile(new File(root, "a/Test.html"), "<html></html>", "UTF-8");
+        FileUtils.writeStringToFile(new File(root, "b/Test.html"), "<html></html>", "UTF-8");
+
+        //Every suite passes once in each of two modules and then fails once in the second, in a test named after it
+        File browser = new File(directory, "browser");
+        FileUtils.writeStringToFile(browser, "#!/bin/sh\n" +
+                "name=$(basename $(dirname \"$2\"))\n" +
+                "echo '{\"type\":\"log\",\"module\":\"Module One\",\"name\":\"'$name'\",\"testNumber\":1,\"message\":\"first\",\"failure\":false}'\n" +
+                "echo '{\"type\":\"log\",\"module\":\"Module Two\",\"name\":\"'$name'\",\"testNumber\":2,\"message\":\"second\",\"failure\":false}'\n" +
+                "echo '{\"type\":\"log\",\"module\":\"Module Two\",\"name\":\"'$name'\",\"testNumber\":3,\"message\":\"third\",\"failure\":true}'\n" +
+                "echo '{\"type\":\"done\",\"failed\":true}'\n", "UTF-8");
+        assertTrue(browser.setExecutable(true), "Browser script should be executable");
+
+        System.setProperty(QUnitConfiguration.ROOT, root.getPath());
+        System.setProperty(QUnitConfiguration.HISTORY_FILE, new File(directory, "history.json").getPath());
+        System.setProperty(QUnitConfiguration.PHANTOMJS_PATH, browser.getPath());
+    }
+
+    @AfterMethod
+    public void deleteDirectory() {
+        System.clearProperty(QUnitConfiguration.ROOT);
+        System.clearProperty(QUnitConfiguration.HISTORY_FILE);
+        System.clearProperty(QUnitConfiguration.PHANTOMJS_PATH);
+
+        FileUtils.deleteQuietly(directory);
+    }
+
+    @Test
+    public void testModelFollowsRunOrderAndGroupsByModule() {
+        ISuite suite = run();
+        ITestContext testContext = suite.getResults().values().iterator().next().getTestContext();
+
+        QUnitReportModel model = QUnitReportModel.forSuite(suite);
+        assertTrue(model.isQUnitTestSuite(), "The pipelined test should be recognized as a QUnit suite");
+        assertSame(QUnitReportModel.forSuite(suite), model, "Reporters should share the model of a suite");
+
+        QUnitReportModel.Section passed = model.getSection(testContext.getPassedTests());
+        assertEquals(passed.size(), 4, "Every passing assertion should be counted");
+        assertEquals(passed.getMethods().size(), 1, "Every assertion comes from the same method");
+        assertEquals(passed.getResults(passed.getMethods().get(0)).size(), 4, "Every passing assertion should belong to the method");
+        assertEquals(describe(passed.getEntries()), Arrays.asList("Module One: a", "Module Two: a", "Module One: b", "Module Two: b"), "Passing assertions should be in the order in which they ran");
+
+        Map<String, List<QUnitReportModel.Entry>> passedByModule = passed.getEntriesByModule();
+        assertEquals(new ArrayList<String>(passedByModule.keySet()), Arrays.asList("Module One", "Module Two"), "Modules should be in the order in which they first ran");
+        assertEquals(describe(passedByModule.get("Module One")), Arrays.asList("Module One: a", "Module One: b"), "Assertions should be grouped by module");
+        assertEquals(describe(passedByModule.get("Module Two")), Arrays.asList("Module Two: a", "Module Two: b"), "Assertions should be grouped by module");
+
+        QUnitReportModel.Section failed = model.getSection(testContext.getFailedTests());
+        assertEquals(failed.size(), 2, "Every failing assertion should be counted");
+        assertEquals(describe(failed.getEntries()), Arrays.asList("Module Two: a", "Module Two: b"), "Failing assertions should be in the order in which they ran");
+        assertEquals(failed.getEntriesByModule().keySet().size(), 1, "Only the second module has failures");
+
+        assertEquals(model.getSection(testContext.getSkippedTests()).size(), 0, "Nothing should have been skipped");
+        assertEquals(model.getSection(testContext.getFailedConfigurations()).size(), 0, "No configuration should have failed");
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testResultMapOfAnotherSuiteIsRejected() {
+        QUnitReportModel.forSuite(run()).getSection(new ResultMap());
+    }
+
+    /**
+     * Runs the pipelined test through TestNG, and returns the suite that TestNG hands to reporters
+     */
+    private ISuite run() {
+        final List<ISuite> suites = new ArrayList<ISuite>();
+
+        TestNG testNG = new TestNG(false);
+        testNG.setVerbose(0);
+        testNG.setOutputDirectory(new File(directory, "output").getPath());
+        testNG.setTestClasses(new Class[]{QUnitPipelinedTest.class});
+        testNG.addListener(new IReporter() {
+            @Override
+            public void generateReport(List<XmlSuite> xmlSuites, List<ISuite> reportedSuites, String outputDirectory) {
+                suites.addAll(reportedSuites);
+            }
+        });
+        testNG.run();
+
+        assertEquals(suites.size(), 1, "TestNG should have run one suite");
+        return suites.get(0);
+    }
+
+    private static List<String> describe(List<QUnitReportModel.Entry> entries) {
+        List<String> descriptions = new ArrayList<String>();
+        for (QUnitReportModel.Entry entry : entries) {
+            descriptions.add(entry.getModuleName() + ": " + entry.getTestName());
+        }
+
+        return descriptions;
+    }
+}